@@ -0,0 +1,15 @@
+import acromusashi.stream.tools.StormBatchTool;
+import acromusashi.stream.tools.StormConfigValueCache;
+import acromusashi.stream.tools.StormToolsCommandExecutor;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Execute commands(one command each argument) by StormBatchTool, same as resident storm tools server.
+// All commands share one config load and pooled nimbus connections.
+PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), true);
+StormToolsCommandExecutor commandExecutor = new StormToolsCommandExecutor(new StormConfigValueCache());
+int batchResult = StormBatchTool.execute(commandExecutor, args, false, out);
+out.flush();
+
+System.exit(batchResult);
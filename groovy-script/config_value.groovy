@@ -1,5 +1,10 @@
 import backtype.storm.utils.Utils;
 import java.util.Map;
 
-String result = Utils.readStormConfig().get(args[0]).toString();
-System.out.println("VALUE: " + result);
+// Print "VALUE: " line of each config name in same order. Not exist value is printed as empty string.
+Map config = Utils.readStormConfig();
+for (String name : args)
+{
+    Object value = config.get(name);
+    System.out.println("VALUE: " + (value == null ? "" : value.toString()));
+}
@@ -6,4 +6,16 @@ Map config = Utils.readStormConfig();
 NimbusClient nimbusClient = NimbusClient.getConfiguredClient(config);
 nimbusClient.getClient().deactivate(args[0]);
 
+// Remove cluster summary snapshot file, because topology state is changed.
+// Snapshot is used only with acromusashi-stream-tools, so skip it if tools classes are not in classpath.
+try
+{
+    Class cacheClass = this.class.classLoader.loadClass("acromusashi.stream.tools.ClusterSummaryCache");
+    cacheClass.getMethod("invalidateSnapshot", Map.class).invoke(null, config);
+}
+catch (ClassNotFoundException | LinkageError ex)
+{
+    // Snapshot is not used.
+}
+
 System.out.println("Deactivated topology: " + args[0]);
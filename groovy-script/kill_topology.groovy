@@ -23,4 +23,16 @@ else
     nimbusClient.getClient().killTopology(args[0]);
 }
 
+// Remove cluster summary snapshot file, because topology state is changed.
+// Snapshot is used only with acromusashi-stream-tools, so skip it if tools classes are not in classpath.
+try
+{
+    Class cacheClass = this.class.classLoader.loadClass("acromusashi.stream.tools.ClusterSummaryCache");
+    cacheClass.getMethod("invalidateSnapshot", Map.class).invoke(null, config);
+}
+catch (ClassNotFoundException | LinkageError ex)
+{
+    // Snapshot is not used.
+}
+
 System.out.println("Killed topology: " + args[0]);
@@ -5,8 +5,27 @@ import backtype.storm.utils.Utils;
 import java.util.Map;
 
 Map config = Utils.readStormConfig();
-NimbusClient nimbusClient = NimbusClient.getConfiguredClient(config);
-ClusterSummary clusterSummary = nimbusClient.getClient().getClusterInfo();
+
+// Read snapshot file shared with ClusterSummaryCache while it is newer than ttl.
+// If acromusashi-stream-tools classes are not in classpath, get cluster summary from nimbus directly.
+ClusterSummary clusterSummary;
+try
+{
+    ClassLoader loader = this.class.classLoader;
+    Class poolClass = loader.loadClass("acromusashi.stream.tools.NimbusClientPool");
+    Class cacheClass = loader.loadClass("acromusashi.stream.tools.ClusterSummaryCache");
+
+    String nimbusHost = (String) config.get("nimbus.host");
+    int nimbusPort = ((Number) config.get("nimbus.thrift.port")).intValue();
+    Object pool = poolClass.getMethod("getShared", String.class, int.class).invoke(null, nimbusHost, nimbusPort);
+    Object cache = cacheClass.getMethod("getShared", Map.class, poolClass).invoke(null, config, pool);
+    clusterSummary = (ClusterSummary) cacheClass.getMethod("get").invoke(cache);
+}
+catch (ClassNotFoundException | LinkageError ex)
+{
+    NimbusClient nimbusClient = NimbusClient.getConfiguredClient(config);
+    clusterSummary = nimbusClient.getClient().getClusterInfo();
+}
 
 if (clusterSummary.get_topologies().isEmpty())
 {
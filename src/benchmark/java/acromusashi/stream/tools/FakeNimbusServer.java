@@ -0,0 +1,496 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.thrift7.TException;
+import org.apache.thrift7.protocol.TBinaryProtocol;
+import org.apache.thrift7.server.TServer;
+import org.apache.thrift7.server.TThreadPoolServer;
+import org.apache.thrift7.transport.TFramedTransport;
+import org.apache.thrift7.transport.TServerSocket;
+
+import backtype.storm.generated.AlreadyAliveException;
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.ErrorInfo;
+import backtype.storm.generated.ExecutorInfo;
+import backtype.storm.generated.ExecutorSpecificStats;
+import backtype.storm.generated.ExecutorStats;
+import backtype.storm.generated.ExecutorSummary;
+import backtype.storm.generated.InvalidTopologyException;
+import backtype.storm.generated.KillOptions;
+import backtype.storm.generated.Nimbus;
+import backtype.storm.generated.NotAliveException;
+import backtype.storm.generated.RebalanceOptions;
+import backtype.storm.generated.SpoutStats;
+import backtype.storm.generated.StormTopology;
+import backtype.storm.generated.SubmitOptions;
+import backtype.storm.generated.SupervisorSummary;
+import backtype.storm.generated.TopologyInfo;
+import backtype.storm.generated.TopologySummary;
+
+/**
+ * In-process nimbus thrift server which stands in for nimbus in benchmarks.<br>
+ * Server speaks framed binary protocol same as nimbus, so tools connect to it by {@link NimbusClientPool} without change.<br>
+ * Topology counters move at each getTopologyInfo until configured drain polls are consumed, and stay unchanged after that.
+ * Kill removes topology immediately, and uploaded jar is counted but not stored.<br>
+ * getClusterInfo and getTopologyInfo are delayed by configured latency to simulate busy nimbus.
+ * Delay is outside of lock, so concurrent calls are delayed in parallel.
+ *
+ * @author kimura
+ */
+public class FakeNimbusServer implements Nimbus.Iface
+{
+    /** Statistics window of all time */
+    private static final String             ALL_TIME_WINDOW = ":all-time";
+
+    /** Default stream */
+    private static final String             DEFAULT_STREAM  = "default";
+
+    /** Supervisor hosts */
+    private final List<String>              supervisorHosts = new ArrayList<>();
+
+    /** Alive topologies */
+    private final Map<String, FakeTopology> topologies      = new LinkedHashMap<>();
+
+    /** Thrift call count */
+    private final AtomicInteger             callCount       = new AtomicInteger();
+
+    /** Uploaded jar bytes */
+    private final AtomicLong                uploadedBytes   = new AtomicLong();
+
+    /** Topology id sequence */
+    private final AtomicInteger             idSequence      = new AtomicInteger();
+
+    /** Latency(millisecond) of cluster and topology info */
+    private final long                      latencyMillis;
+
+    /** Thrift server */
+    private TServer                         server;
+
+    /** Listen port */
+    private int                             port;
+
+    /**
+     * Constructor without latency.
+     */
+    public FakeNimbusServer()
+    {
+        this(0L);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param latencyMillis Latency(millisecond) of cluster and topology info
+     */
+    public FakeNimbusServer(long latencyMillis)
+    {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Start server on loopback address with free port.
+     *
+     * @throws TException Start failed
+     */
+    public void start() throws TException
+    {
+        TServerSocket serverSocket = new TServerSocket(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+        this.port = serverSocket.getServerSocket().getLocalPort();
+
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(serverSocket);
+        args.processor(new Nimbus.Processor<Nimbus.Iface>(this));
+        args.transportFactory(new TFramedTransport.Factory());
+        args.protocolFactory(new TBinaryProtocol.Factory());
+        args.minWorkerThreads(4);
+        this.server = new TThreadPoolServer(args);
+
+        Thread serveThread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                FakeNimbusServer.this.server.serve();
+            }
+        }, "FakeNimbusServer");
+        serveThread.setDaemon(true);
+        serveThread.start();
+    }
+
+    /**
+     * Stop server.
+     */
+    public void stop()
+    {
+        if (this.server != null)
+        {
+            this.server.stop();
+        }
+    }
+
+    /**
+     * Add supervisor.
+     *
+     * @param host Supervisor host
+     */
+    public synchronized void addSupervisor(String host)
+    {
+        this.supervisorHosts.add(host);
+    }
+
+    /**
+     * Add alive topology.
+     *
+     * @param name Topology name
+     * @param executorCount Executor count
+     * @param drainPolls Count of getTopologyInfo which returns moved counters
+     */
+    public synchronized void addTopology(String name, int executorCount, int drainPolls)
+    {
+        String id = name + "-" + this.idSequence.incrementAndGet();
+        this.topologies.put(name, new FakeTopology(id, executorCount, drainPolls));
+    }
+
+    /**
+     * @return Thrift call count
+     */
+    public int getCallCount()
+    {
+        return this.callCount.get();
+    }
+
+    /**
+     * @return Uploaded jar bytes
+     */
+    public long getUploadedBytes()
+    {
+        return this.uploadedBytes.get();
+    }
+
+    /**
+     * @return the port
+     */
+    public int getPort()
+    {
+        return this.port;
+    }
+
+    @Override
+    public synchronized void submitTopology(String name, String uploadedJarLocation,
+            String jsonConf, StormTopology topology) throws AlreadyAliveException,
+            InvalidTopologyException, TException
+    {
+        this.callCount.incrementAndGet();
+        if (this.topologies.containsKey(name))
+        {
+            throw new AlreadyAliveException(name + " is alive");
+        }
+
+        addTopology(name, topology.get_spouts_size() + topology.get_bolts_size(), 0);
+    }
+
+    @Override
+    public void submitTopologyWithOpts(String name, String uploadedJarLocation,
+            String jsonConf, StormTopology topology, SubmitOptions options)
+            throws AlreadyAliveException, InvalidTopologyException, TException
+    {
+        submitTopology(name, uploadedJarLocation, jsonConf, topology);
+    }
+
+    @Override
+    public void killTopology(String name) throws NotAliveException, TException
+    {
+        killTopologyWithOpts(name, new KillOptions());
+    }
+
+    @Override
+    public synchronized void killTopologyWithOpts(String name, KillOptions options)
+            throws NotAliveException, TException
+    {
+        this.callCount.incrementAndGet();
+        if (this.topologies.remove(name) == null)
+        {
+            throw new NotAliveException(name);
+        }
+    }
+
+    @Override
+    public synchronized void activate(String name) throws NotAliveException, TException
+    {
+        this.callCount.incrementAndGet();
+        findTopology(name).active = true;
+    }
+
+    @Override
+    public synchronized void deactivate(String name) throws NotAliveException, TException
+    {
+        this.callCount.incrementAndGet();
+        findTopology(name).active = false;
+    }
+
+    @Override
+    public void rebalance(String name, RebalanceOptions options) throws NotAliveException,
+            InvalidTopologyException, TException
+    {
+        this.callCount.incrementAndGet();
+        throw new InvalidTopologyException("Rebalance is not supported");
+    }
+
+    @Override
+    public String beginFileUpload() throws TException
+    {
+        this.callCount.incrementAndGet();
+        return "/fake/inbox/stormjar-" + this.idSequence.incrementAndGet() + ".jar";
+    }
+
+    @Override
+    public void uploadChunk(String location, ByteBuffer chunk) throws TException
+    {
+        this.callCount.incrementAndGet();
+        this.uploadedBytes.addAndGet(chunk.remaining());
+    }
+
+    @Override
+    public void finishFileUpload(String location) throws TException
+    {
+        this.callCount.incrementAndGet();
+    }
+
+    @Override
+    public String beginFileDownload(String file) throws TException
+    {
+        throw new TException("Download is not supported");
+    }
+
+    @Override
+    public ByteBuffer downloadChunk(String id) throws TException
+    {
+        throw new TException("Download is not supported");
+    }
+
+    @Override
+    public String getNimbusConf() throws TException
+    {
+        this.callCount.incrementAndGet();
+        return "{}";
+    }
+
+    @Override
+    public ClusterSummary getClusterInfo() throws TException
+    {
+        this.callCount.incrementAndGet();
+        delay();
+        synchronized (this)
+        {
+            return createClusterSummary();
+        }
+    }
+
+    /**
+     * Create cluster summary of supervisors and alive topologies.
+     *
+     * @return Cluster summary
+     */
+    private ClusterSummary createClusterSummary()
+    {
+        List<SupervisorSummary> supervisors = new ArrayList<>();
+        for (String host : this.supervisorHosts)
+        {
+            supervisors.add(new SupervisorSummary(host, 0, 4, 0, host + "-id"));
+        }
+
+        List<TopologySummary> summaries = new ArrayList<>();
+        for (Map.Entry<String, FakeTopology> entry : this.topologies.entrySet())
+        {
+            FakeTopology topology = entry.getValue();
+            summaries.add(new TopologySummary(topology.id, entry.getKey(),
+                    topology.executorCount, topology.executorCount, 1, 0, topology.active
+                            ? "ACTIVE" : "INACTIVE"));
+        }
+
+        return new ClusterSummary(supervisors, 0, summaries);
+    }
+
+    @Override
+    public TopologyInfo getTopologyInfo(String id) throws NotAliveException, TException
+    {
+        this.callCount.incrementAndGet();
+        delay();
+        synchronized (this)
+        {
+            return createTopologyInfo(id);
+        }
+    }
+
+    /**
+     * Create topology info, and move counters while drain polls remain.
+     *
+     * @param id Topology id
+     * @return Topology info
+     * @throws NotAliveException Topology is not alive
+     */
+    private TopologyInfo createTopologyInfo(String id) throws NotAliveException
+    {
+        for (Map.Entry<String, FakeTopology> entry : this.topologies.entrySet())
+        {
+            FakeTopology topology = entry.getValue();
+            if (topology.id.equals(id) == false)
+            {
+                continue;
+            }
+
+            if (topology.drainPolls > 0)
+            {
+                topology.drainPolls--;
+                topology.counter++;
+            }
+
+            List<ExecutorSummary> executors = new ArrayList<>();
+            for (int index = 0; index < topology.executorCount; index++)
+            {
+                ExecutorSummary executor = new ExecutorSummary(new ExecutorInfo(index, index),
+                        "spout", "127.0.0.1", 6700, 0);
+                executor.set_stats(createSpoutStats(topology.counter));
+                executors.add(executor);
+            }
+
+            return new TopologyInfo(id, entry.getKey(), 0, executors, topology.active
+                    ? "ACTIVE" : "INACTIVE", new HashMap<String, List<ErrorInfo>>());
+        }
+
+        throw new NotAliveException(id);
+    }
+
+    @Override
+    public String getTopologyConf(String id) throws NotAliveException, TException
+    {
+        this.callCount.incrementAndGet();
+        return "{}";
+    }
+
+    @Override
+    public StormTopology getTopology(String id) throws NotAliveException, TException
+    {
+        throw new TException("Topology definition is not supported");
+    }
+
+    @Override
+    public StormTopology getUserTopology(String id) throws NotAliveException, TException
+    {
+        throw new TException("Topology definition is not supported");
+    }
+
+    /**
+     * Wait configured latency.
+     *
+     * @throws TException Interrupted while waiting
+     */
+    private void delay() throws TException
+    {
+        if (this.latencyMillis <= 0)
+        {
+            return;
+        }
+
+        try
+        {
+            TimeUnit.MILLISECONDS.sleep(this.latencyMillis);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new TException("Interrupted while waiting latency", ex);
+        }
+    }
+
+    /**
+     * Find alive topology.
+     *
+     * @param name Topology name
+     * @return Topology
+     * @throws NotAliveException Topology is not alive
+     */
+    private FakeTopology findTopology(String name) throws NotAliveException
+    {
+        FakeTopology topology = this.topologies.get(name);
+        if (topology == null)
+        {
+            throw new NotAliveException(name);
+        }
+
+        return topology;
+    }
+
+    /**
+     * Create spout stats whose all-time counters are same value.
+     *
+     * @param counter Counter value
+     * @return Executor stats
+     */
+    private static ExecutorStats createSpoutStats(long counter)
+    {
+        Map<String, Map<String, Long>> counters = new HashMap<>();
+        counters.put(ALL_TIME_WINDOW, Collections.singletonMap(DEFAULT_STREAM, counter));
+        SpoutStats spoutStats = new SpoutStats(counters, counters,
+                new HashMap<String, Map<String, Double>>());
+        return new ExecutorStats(counters, counters, ExecutorSpecificStats.spout(spoutStats));
+    }
+
+    /**
+     * Topology state kept by fake nimbus.
+     */
+    private static class FakeTopology
+    {
+        /** Topology id */
+        final String id;
+
+        /** Executor count */
+        final int    executorCount;
+
+        /** Remaining count of getTopologyInfo which returns moved counters */
+        int          drainPolls;
+
+        /** Counter value of each executor */
+        long         counter;
+
+        /** true if active */
+        boolean      active = true;
+
+        /**
+         * Constructor
+         *
+         * @param id Topology id
+         * @param executorCount Executor count
+         * @param drainPolls Count of getTopologyInfo which returns moved counters
+         */
+        FakeTopology(String id, int executorCount, int drainPolls)
+        {
+            this.id = id;
+            this.executorCount = executorCount;
+            this.drainPolls = drainPolls;
+        }
+    }
+}
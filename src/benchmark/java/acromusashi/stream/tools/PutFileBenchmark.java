@@ -0,0 +1,168 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmark of copy path of put file in {@link RemoteFilePutter}.<br>
+ * Put file entry is written through host transfer context(unlimited bandwidth) to output which only copies bytes,
+ * so scp and network are excluded and buffer and stream overhead of each source mode is measured.
+ * <ul>
+ * <li>heap : source file is read to heap buffer shared by hosts.</li>
+ * <li>mapped : source file is memory mapped.</li>
+ * <li>stream : source file is read from file at each put(file larger than 2GB).</li>
+ * </ul>
+ *
+ * @author kimura
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PutFileBenchmark
+{
+    /** Source file size(byte) */
+    @Param({ "4096", "1048576", "67108864" })
+    public int           fileSize;
+
+    /** Source mode */
+    @Param({ "heap", "mapped", "stream" })
+    public String        source;
+
+    /** Source file */
+    private File         srcFile;
+
+    /** Put file entry */
+    private PutFileEntry entry;
+
+    /**
+     * Create source file and load buffer by source mode.
+     *
+     * @throws IOException Create failed
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        byte[] content = new byte[this.fileSize];
+        new Random(this.fileSize).nextBytes(content);
+        this.srcFile = File.createTempFile("put-benchmark-", ".bin");
+        FileUtils.writeByteArrayToFile(this.srcFile, content);
+
+        this.entry = new PutFileEntry(this.srcFile, "/opt/storm/conf/put-benchmark.bin");
+        if ("heap".equals(this.source))
+        {
+            this.entry.loadBuffer(Long.MAX_VALUE);
+        }
+        else if ("mapped".equals(this.source))
+        {
+            this.entry.loadBuffer(0);
+        }
+    }
+
+    /**
+     * Delete source file.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        FileUtils.deleteQuietly(this.srcFile);
+    }
+
+    /**
+     * Write entry to one host same as put file.
+     *
+     * @param blackhole Blackhole
+     * @return Transferred bytes
+     * @throws IOException Write failed
+     */
+    @Benchmark
+    public long putFile(Blackhole blackhole) throws IOException
+    {
+        HostTransferContext context = new HostTransferContext(null, 0);
+        try (OutputStream out = context.wrap(new BlackholeOutputStream(blackhole)))
+        {
+            this.entry.writeTo(out, 0, this.fileSize);
+        }
+
+        context.addFile();
+        return context.getTransferredBytes();
+    }
+
+    /**
+     * Output stream which copies written bytes to scratch buffer like channel buffer of scp, and consumes them.
+     */
+    private static class BlackholeOutputStream extends OutputStream
+    {
+        /** Scratch buffer size. Same as write chunk of mapped buffer. */
+        private static final int SCRATCH_SIZE = 64 * 1024;
+
+        /** Blackhole */
+        private final Blackhole  blackhole;
+
+        /** Scratch buffer */
+        private final byte[]     scratch      = new byte[SCRATCH_SIZE];
+
+        /**
+         * Constructor
+         *
+         * @param blackhole Blackhole
+         */
+        BlackholeOutputStream(Blackhole blackhole)
+        {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            this.blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            int position = off;
+            int remaining = len;
+            while (remaining > 0)
+            {
+                int copyLength = Math.min(remaining, this.scratch.length);
+                System.arraycopy(b, position, this.scratch, 0, copyLength);
+                this.blackhole.consume(this.scratch);
+                position += copyLength;
+                remaining -= copyLength;
+            }
+        }
+    }
+}
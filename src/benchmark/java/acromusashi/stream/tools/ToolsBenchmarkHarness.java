@@ -0,0 +1,214 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * End-to-end benchmark harness of config put tool and topology wait tool.<br>
+ * Harness starts {@link FakeNimbusServer} and N {@link LocalSshServer}(127.0.0.2, 127.0.0.3, ...) registered as supervisors,
+ * and executes tools against them with storm config which points to fake nimbus.
+ * Elapsed time, return code and nimbus call count of each iteration are logged.
+ * Config put is executed with run report, and pushes/sec, bytes/sec and coverage time of the report are also logged.<br>
+ * Stand-ins share local file system, so all hosts write same destination file.<br>
+ * Settings are read from system properties.
+ * <ul>
+ * <li>benchmark.hosts : Stand-in host count(default 10)</li>
+ * <li>benchmark.fileSize : Put file size(byte, default 1MB)</li>
+ * <li>benchmark.iterations : Iteration count of each tool(default 5)</li>
+ * <li>benchmark.drainPolls : Polls until fake topology stops(default 5)</li>
+ * <li>benchmark.nimbusLatencyMs : Latency(millisecond) of cluster and topology info of fake nimbus(default 0)</li>
+ * </ul>
+ *
+ * @author kimura
+ */
+public class ToolsBenchmarkHarness
+{
+    /** Logger */
+    private static final Logger logger              = LoggerFactory.getLogger(ToolsBenchmarkHarness.class);
+
+    /** Default stand-in host count */
+    private static final int    DEFAULT_HOSTS       = 10;
+
+    /** Default put file size(byte) */
+    private static final int    DEFAULT_FILE_SIZE   = 1024 * 1024;
+
+    /** Default iteration count */
+    private static final int    DEFAULT_ITERATIONS  = 5;
+
+    /** Default polls until fake topology stops */
+    private static final int    DEFAULT_DRAIN_POLLS = 5;
+
+    /** Executor count of fake topology */
+    private static final int    EXECUTOR_COUNT      = 16;
+
+    /**
+     * Constructor
+     */
+    private ToolsBenchmarkHarness()
+    {}
+
+    /**
+     * Program entry point.
+     *
+     * @param args Not used. Settings are read from system properties.
+     * @throws Exception Harness failed
+     */
+    public static void main(String... args) throws Exception
+    {
+        int hostCount = Integer.getInteger("benchmark.hosts", DEFAULT_HOSTS);
+        int fileSize = Integer.getInteger("benchmark.fileSize", DEFAULT_FILE_SIZE);
+        int iterations = Integer.getInteger("benchmark.iterations", DEFAULT_ITERATIONS);
+        int drainPolls = Integer.getInteger("benchmark.drainPolls", DEFAULT_DRAIN_POLLS);
+        long nimbusLatency = Long.getLong("benchmark.nimbusLatencyMs", 0L);
+
+        File workDir = Files.createTempDirectory("tools-benchmark-").toFile();
+        FakeNimbusServer nimbus = new FakeNimbusServer(nimbusLatency);
+        List<LocalSshServer> servers = null;
+        try
+        {
+            nimbus.start();
+            servers = LocalSshServer.startServers(hostCount);
+            for (LocalSshServer server : servers)
+            {
+                nimbus.addSupervisor(server.getHost());
+            }
+
+            File configFile = new File(workDir, "storm.yaml");
+            FileUtils.writeStringToFile(configFile, "nimbus.host: \"127.0.0.1\"\n"
+                    + "nimbus.thrift.port: " + nimbus.getPort() + "\n", "UTF-8");
+
+            runConfigPut(nimbus, servers, configFile, workDir, fileSize, iterations);
+            runTopologyWait(nimbus, configFile, drainPolls, iterations);
+        }
+        finally
+        {
+            if (servers != null)
+            {
+                LocalSshServer.stopServers(servers);
+            }
+
+            nimbus.stop();
+            FileUtils.deleteQuietly(workDir);
+        }
+
+        // Shared resources of tools(ex. nimbus client pools) keep threads, so exit explicitly.
+        Runtime.getRuntime().exit(0);
+    }
+
+    /**
+     * Put file to all stand-ins by config put tool.
+     *
+     * @param nimbus Fake nimbus
+     * @param servers Stand-ins
+     * @param configFile Storm config
+     * @param workDir Work directory
+     * @param fileSize Put file size(byte)
+     * @param iterations Iteration count
+     * @throws IOException Put file create failed
+     */
+    private static void runConfigPut(FakeNimbusServer nimbus, List<LocalSshServer> servers,
+            File configFile, File workDir, int fileSize, int iterations) throws IOException
+    {
+        byte[] content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+        File srcFile = new File(workDir, "put-source.bin");
+        FileUtils.writeByteArrayToFile(srcFile, content);
+        File dstFile = new File(new File(workDir, "dst"), "put-source.bin");
+        FileUtils.forceMkdir(dstFile.getParentFile());
+        File reportFile = new File(workDir, "put-report.json");
+
+        for (int iteration = 0; iteration < iterations; iteration++)
+        {
+            int callStart = nimbus.getCallCount();
+            long start = System.nanoTime();
+            int returnCode = ConfigPutTool.execute("-c", configFile.getAbsolutePath(), "-s",
+                    srcFile.getAbsolutePath(), "-d", dstFile.getAbsolutePath(), "-ua",
+                    LocalSshServer.USER_ACCOUNT, "-up", LocalSshServer.USER_PASSWORD, "-sp",
+                    String.valueOf(servers.get(0).getPort()), "-pl",
+                    String.valueOf(servers.size()), "-rp", reportFile.getAbsolutePath());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Map<?, ?> report = readReport(reportFile);
+            String logFormat = "Config put finished. : Iteration={0}, Hosts={1}, FileSize={2}, ReturnCode={3}, Elapsed={4}ms, NimbusCalls={5}, PushesPerSec={6}, BytesPerSec={7}, Coverage={8}ms";
+            logger.info(MessageFormat.format(logFormat, iteration, servers.size(),
+                    String.valueOf(fileSize), returnCode, String.valueOf(elapsedMillis),
+                    nimbus.getCallCount() - callStart,
+                    String.valueOf(report.get("pushesPerSec")),
+                    String.valueOf(report.get("bytesPerSec")),
+                    String.valueOf(report.get("coverageMillis"))));
+            FileUtils.deleteQuietly(reportFile);
+        }
+    }
+
+    /**
+     * Read run report written by config put tool.
+     *
+     * @param reportFile Report file
+     * @return Report(empty if report is not written)
+     * @throws IOException Read failed
+     */
+    private static Map<?, ?> readReport(File reportFile) throws IOException
+    {
+        if (reportFile.exists() == false)
+        {
+            return Collections.emptyMap();
+        }
+
+        return (Map<?, ?>) JSONValue.parse(FileUtils.readFileToString(reportFile,
+                StandardCharsets.UTF_8.name()));
+    }
+
+    /**
+     * Wait fake topology stop by topology wait tool.
+     *
+     * @param nimbus Fake nimbus
+     * @param configFile Storm config
+     * @param drainPolls Polls until fake topology stops
+     * @param iterations Iteration count
+     */
+    private static void runTopologyWait(FakeNimbusServer nimbus, File configFile,
+            int drainPolls, int iterations)
+    {
+        for (int iteration = 0; iteration < iterations; iteration++)
+        {
+            String topologyName = "BenchmarkTopology" + iteration;
+            nimbus.addTopology(topologyName, EXECUTOR_COUNT, drainPolls);
+
+            int callStart = nimbus.getCallCount();
+            long start = System.nanoTime();
+            int returnCode = TopologyExecutionWaitTool.execute("-c",
+                    configFile.getAbsolutePath(), "-t", topologyName, "-i", "1", "-w", "60",
+                    "-mi", "100", "-sw", "1");
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            String logFormat = "Topology wait finished. : Iteration={0}, DrainPolls={1}, ReturnCode={2}, Elapsed={3}ms, NimbusCalls={4}";
+            logger.info(MessageFormat.format(logFormat, iteration, drainPolls, returnCode,
+                    String.valueOf(elapsedMillis), nimbus.getCallCount() - callStart));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift7.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmark of one iteration of wait loop in {@link TopologyExecutionWaitTool}, excluding sleep between polls.<br>
+ * <ul>
+ * <li>pollIteration : poll counters from {@link FakeNimbusServer} by thrift, and update wait state and poll scheduler.</li>
+ * <li>updateIteration : aggregate executor counters to sample, and update wait state and poll scheduler(no thrift).</li>
+ * </ul>
+ * Counters of fake topologies always move, so wait state never judges stop.
+ *
+ * @author kimura
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WaitLoopBenchmark
+{
+    /** Waited topology count */
+    @Param({ "1", "10" })
+    public int                             topologyCount;
+
+    /** Executor count of each topology */
+    @Param({ "8", "256" })
+    public int                             executorCount;
+
+    /** Fake nimbus */
+    private FakeNimbusServer               nimbus;
+
+    /** Nimbus client pool */
+    private NimbusClientPool               pool;
+
+    /** Poller */
+    private TopologyExecutionPoller        poller;
+
+    /** Waited topology names */
+    private List<String>                   topologyNames;
+
+    /** Wait states of topologies */
+    private Map<String, TopologyWaitState> states;
+
+    /** Poll scheduler */
+    private AdaptivePollScheduler          scheduler;
+
+    /** Counter of updateIteration */
+    private long                           counter;
+
+    /**
+     * Start fake nimbus and create wait loop components.
+     *
+     * @throws TException Start failed
+     */
+    @Setup
+    public void setUp() throws TException
+    {
+        this.nimbus = new FakeNimbusServer();
+        this.nimbus.start();
+        this.pool = new NimbusClientPool("127.0.0.1", this.nimbus.getPort(), 4, 10000, 10000);
+        this.poller = new TopologyExecutionPoller(this.pool);
+
+        this.topologyNames = new ArrayList<>();
+        this.states = new LinkedHashMap<>();
+        for (int index = 0; index < this.topologyCount; index++)
+        {
+            String topologyName = "BenchmarkTopology" + index;
+            this.nimbus.addTopology(topologyName, this.executorCount, Integer.MAX_VALUE);
+            this.topologyNames.add(topologyName);
+            this.states.put(topologyName, new TopologyWaitState(topologyName, 1000));
+        }
+
+        this.scheduler = new AdaptivePollScheduler(100, 1000, 10000, Long.MAX_VALUE / 2);
+    }
+
+    /**
+     * Stop fake nimbus.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        this.pool.close();
+        this.nimbus.stop();
+    }
+
+    /**
+     * Poll counters by thrift and update wait state.
+     *
+     * @param blackhole Blackhole
+     * @throws TException Poll failed
+     */
+    @Benchmark
+    public void pollIteration(Blackhole blackhole) throws TException
+    {
+        Map<String, TopologyExecutionSample> samples = this.poller.poll(this.topologyNames);
+        boolean moving = false;
+        for (TopologyExecutionSample sample : samples.values())
+        {
+            TopologyWaitState state = this.states.get(sample.getTopologyName());
+            blackhole.consume(state.update(sample));
+            moving |= state.isMoving();
+        }
+
+        this.scheduler.update(moving);
+        blackhole.consume(this.scheduler.getCurrentInterval());
+    }
+
+    /**
+     * Aggregate counters to sample and update wait state.
+     *
+     * @param blackhole Blackhole
+     */
+    @Benchmark
+    public void updateIteration(Blackhole blackhole)
+    {
+        this.counter++;
+        boolean moving = false;
+        for (String topologyName : this.topologyNames)
+        {
+            TopologyExecutionSample sample = new TopologyExecutionSample(topologyName, true);
+            for (int index = 0; index < this.executorCount; index++)
+            {
+                sample.addSpoutCounters(this.counter, this.counter, 0);
+            }
+
+            TopologyWaitState state = this.states.get(topologyName);
+            blackhole.consume(state.update(sample));
+            moving |= state.isMoving();
+        }
+
+        this.scheduler.update(moving);
+        blackhole.consume(this.scheduler.getCurrentInterval());
+    }
+}
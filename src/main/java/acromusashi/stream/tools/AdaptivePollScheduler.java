@@ -0,0 +1,122 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide polling interval adaptively, and enforce hard deadline.<br>
+ * <ul>
+ * <li>First poll is executed at minimum interval.</li>
+ * <li>While counters are moving, interval is doubled up to maximum interval, because stop is not expected soon.</li>
+ * <li>While counters are unchanged, interval is reset to base interval to confirm stop.</li>
+ * <li>Wait before next poll never exceeds deadline.</li>
+ * <li>Intervals are at least 1 millisecond, so doubled interval always grows.</li>
+ * </ul>
+ *
+ * @author kimura
+ */
+public class AdaptivePollScheduler
+{
+    /** Lower limit of intervals(millisecond) */
+    private static final long MIN_INTERVAL_FLOOR = 1L;
+
+    /** Minimum interval(millisecond) */
+    private final long        minInterval;
+
+    /** Base interval(millisecond) used while counters are unchanged */
+    private final long        baseInterval;
+
+    /** Maximum interval(millisecond) */
+    private final long        maxInterval;
+
+    /** Deadline(System.nanoTime base) */
+    private final long        deadlineNanos;
+
+    /** Current interval(millisecond) */
+    private long              currentInterval;
+
+    /**
+     * Constructor
+     *
+     * @param minInterval Minimum interval(millisecond)
+     * @param baseInterval Base interval(millisecond) used while counters are unchanged
+     * @param maxInterval Maximum interval(millisecond)
+     * @param timeout Timeout(millisecond) from now
+     */
+    public AdaptivePollScheduler(long minInterval, long baseInterval, long maxInterval,
+            long timeout)
+    {
+        this.minInterval = Math.max(MIN_INTERVAL_FLOOR, minInterval);
+        this.baseInterval = Math.max(this.minInterval, baseInterval);
+        this.maxInterval = Math.max(this.baseInterval, maxInterval);
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.currentInterval = this.minInterval;
+    }
+
+    /**
+     * Update interval by last poll result.
+     *
+     * @param moving true if counters moved at last poll
+     */
+    public void update(boolean moving)
+    {
+        if (moving)
+        {
+            this.currentInterval = Math.min(Math.max(this.currentInterval * 2, this.minInterval),
+                    this.maxInterval);
+        }
+        else
+        {
+            this.currentInterval = this.baseInterval;
+        }
+    }
+
+    /**
+     * Wait until next poll. Wait never exceeds deadline.
+     *
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public void waitNextPoll() throws InterruptedException
+    {
+        long wait = Math.min(this.currentInterval, getRemainingMillis());
+        if (wait > 0)
+        {
+            TimeUnit.MILLISECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * @return true if deadline is passed
+     */
+    public boolean isExpired()
+    {
+        return System.nanoTime() - this.deadlineNanos >= 0;
+    }
+
+    /**
+     * @return Remaining time(millisecond) to deadline. 0 if deadline is passed.
+     */
+    public long getRemainingMillis()
+    {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(this.deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return the currentInterval
+     */
+    public long getCurrentInterval()
+    {
+        return this.currentInterval;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import ch.ethz.ssh2.Connection;
+import ch.ethz.ssh2.SCPClient;
+import ch.ethz.ssh2.SCPOutputStream;
+
+/**
+ * Put large file to remote host by fixed size chunks.<br>
+ * This putter execute following procedure.<br>
+ * <ol>
+ * <li>Get digests of chunks already put to remote chunk directory by previous run.</li>
+ * <li>Put only chunks which are not exist or digest is different.</li>
+ * <li>Concatenate chunks to temporary file, and verify whole file digest.</li>
+ * <li>Rename temporary file to destination path atomically, and remove chunk directory.</li>
+ * </ol>
+ * If transfer is cut off, destination file is not changed and next run resumes from verified chunks.
+ *
+ * @author kimura
+ */
+public class ChunkedFilePutter
+{
+    /** Chunk directory suffix. Chunk directory is created at same directory as destination. */
+    private static final String CHUNK_DIR_SUFFIX  = ".chunks";
+
+    /** Temporary file suffix */
+    private static final String TEMP_FILE_SUFFIX  = ".tmp";
+
+    /** Chunk file name format */
+    private static final String CHUNK_NAME_FORMAT = "%08d";
+
+    /** Put file mode */
+    private static final String FILE_MODE         = "0664";
+
+    /** Remote command timeout(millisecond) */
+    private final long          commandTimeout;
+
+    /**
+     * Constructor
+     *
+     * @param commandTimeout Remote command timeout(millisecond)
+     */
+    public ChunkedFilePutter(long commandTimeout)
+    {
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * Put file to remote host by chunks.
+     *
+     * @param connection Ssh Connection
+     * @param client Scp client
+     * @param entry Put file entry(chunk digests must be calculated)
+     * @param context Host transfer context
+     * @throws IOException Put failed
+     */
+    public void put(Connection connection, SCPClient client, PutFileEntry entry,
+            HostTransferContext context) throws IOException
+    {
+        FileChunkDigests digests = entry.getChunkDigests();
+        String chunkDir = entry.getDstDir() + "/." + entry.getDstFileName() + CHUNK_DIR_SUFFIX;
+
+        Map<String, String> remoteDigests = getRemoteChunkDigests(connection, chunkDir);
+
+        for (int index = 0; index < digests.getChunkCount(); index++)
+        {
+            String chunkName = String.format(CHUNK_NAME_FORMAT, index);
+            if (digests.getChunkDigest(index).equals(remoteDigests.get(chunkName)))
+            {
+                // Verified chunk already exists. Resume from next chunk.
+                continue;
+            }
+
+            long length = digests.getChunkLength(index);
+            try (SCPOutputStream out = client.put(chunkName, length, chunkDir, FILE_MODE))
+            {
+                entry.writeTo(context.wrap(out), digests.getChunkOffset(index), length);
+            }
+        }
+
+        commitChunks(connection, entry, chunkDir);
+        context.addFile();
+    }
+
+    /**
+     * Get digests of chunks already put to remote chunk directory.<br>
+     * If chunk directory not exist, create it.
+     *
+     * @param connection Ssh Connection
+     * @param chunkDir Remote chunk directory
+     * @return Map of chunk file name and digest
+     * @throws IOException Remote command execute failed
+     */
+    private Map<String, String> getRemoteChunkDigests(Connection connection, String chunkDir)
+            throws IOException
+    {
+        String quotedDir = SshCommandExecutor.quote(chunkDir);
+        String command = "mkdir -p " + quotedDir + " && cd " + quotedDir
+                + " && find . -maxdepth 1 -type f -name '[0-9]*' -exec md5sum {} +";
+        SshCommandResult result = SshCommandExecutor.execute(connection, command,
+                this.commandTimeout);
+        if (result.isSuccess() == false)
+        {
+            String errFormat = "Chunk directory prepare failed. : ChunkDir={0}, Message={1}";
+            throw new IOException(MessageFormat.format(errFormat, chunkDir, result.getStderr()));
+        }
+
+        // Output format is "<digest>  ./<chunk name>" each line.
+        Map<String, String> digests = new HashMap<>();
+        for (String line : StringUtils.split(result.getStdout(), "\n"))
+        {
+            String digest = StringUtils.substringBefore(line, " ");
+            String name = StringUtils.substringAfterLast(line, "/");
+            if (StringUtils.isNotBlank(digest) && StringUtils.isNotBlank(name))
+            {
+                digests.put(name.trim(), StringUtils.lowerCase(digest));
+            }
+        }
+
+        return digests;
+    }
+
+    /**
+     * Concatenate chunks to temporary file, verify it and rename to destination path.
+     *
+     * @param connection Ssh Connection
+     * @param entry Put file entry
+     * @param chunkDir Remote chunk directory
+     * @throws IOException Verify failed or remote command execute failed
+     */
+    private void commitChunks(Connection connection, PutFileEntry entry, String chunkDir)
+            throws IOException
+    {
+        FileChunkDigests digests = entry.getChunkDigests();
+        String tempPath = entry.getDstDir() + "/." + entry.getDstFileName() + TEMP_FILE_SUFFIX;
+        String quotedDir = SshCommandExecutor.quote(chunkDir);
+        String quotedTemp = SshCommandExecutor.quote(tempPath);
+
+        StringBuilder command = new StringBuilder();
+        command.append("(cd ").append(quotedDir).append(" && cat");
+        for (int index = 0; index < digests.getChunkCount(); index++)
+        {
+            command.append(' ').append(String.format(CHUNK_NAME_FORMAT, index));
+        }
+        command.append(") > ").append(quotedTemp);
+        command.append(" && [ \"$(md5sum < ").append(quotedTemp).append(" | cut -d ' ' -f 1)\" = ");
+        command.append(SshCommandExecutor.quote(digests.getFileDigest())).append(" ]");
+        command.append(" && chmod ").append(FILE_MODE).append(' ').append(quotedTemp);
+        command.append(" && mv -f ").append(quotedTemp).append(' ');
+        command.append(SshCommandExecutor.quote(entry.getDstPath()));
+        command.append(" && rm -rf ").append(quotedDir);
+
+        SshCommandResult result = SshCommandExecutor.execute(connection, command.toString(),
+                this.commandTimeout);
+        if (result.isSuccess() == false)
+        {
+            // Remove only temporary file. Chunks are kept to resume next time.
+            SshCommandExecutor.execute(connection, "rm -f " + quotedTemp, this.commandTimeout);
+            String errFormat = "Chunked file commit failed. : DstPath={0}, Message={1}";
+            throw new IOException(MessageFormat.format(errFormat, entry.getDstPath(),
+                    result.getStderr()));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.PrintWriter;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Logback appender which sends log of command to client of {@link StormToolsServer}.<br>
+ * Tools log their progress by slf4j, so log events of thread which executes command are written to output of the client.
+ * Client output is bound to the thread by inheritable thread local, so threads started by the command(ex. put parallelism) are included.<br>
+ * After command finished, client output is closed and log events of remaining threads are not written.
+ *
+ * @author kimura
+ */
+public class ClientLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+{
+    /** Appender name */
+    private static final String                               APPENDER_NAME = "StormToolsClient";
+
+    /** Client output bound to command thread */
+    private static final InheritableThreadLocal<ClientOutput> OUTPUT        = new InheritableThreadLocal<>();
+
+    /**
+     * Attach appender to root logger. If logger is not logback, client does not receive log.
+     *
+     * @return true if attached
+     */
+    public static boolean install()
+    {
+        ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+        if ((factory instanceof LoggerContext) == false)
+        {
+            return false;
+        }
+
+        LoggerContext context = (LoggerContext) factory;
+        ch.qos.logback.classic.Logger rootLogger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        if (rootLogger.getAppender(APPENDER_NAME) != null)
+        {
+            return true;
+        }
+
+        ClientLogAppender appender = new ClientLogAppender();
+        appender.setName(APPENDER_NAME);
+        appender.setContext(context);
+        appender.start();
+        rootLogger.addAppender(appender);
+        return true;
+    }
+
+    /**
+     * Bind client output to current thread.
+     *
+     * @param writer Client output
+     * @return Bound output. Close it after command finished.
+     */
+    public static ClientOutput bind(PrintWriter writer)
+    {
+        ClientOutput output = new ClientOutput(writer);
+        OUTPUT.set(output);
+        return output;
+    }
+
+    /**
+     * Write log event to client output bound to current thread.
+     *
+     * @param event Log event
+     */
+    @Override
+    protected void append(ILoggingEvent event)
+    {
+        ClientOutput output = OUTPUT.get();
+        if (output == null || output.closed)
+        {
+            return;
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append(event.getLevel()).append(' ').append(event.getFormattedMessage());
+        IThrowableProxy throwable = event.getThrowableProxy();
+        if (throwable != null)
+        {
+            line.append(" : ").append(throwable.getClassName());
+            if (throwable.getMessage() != null)
+            {
+                line.append(": ").append(throwable.getMessage());
+            }
+        }
+
+        output.writer.println(line.toString());
+        output.writer.flush();
+    }
+
+    /**
+     * Client output of one command.
+     */
+    public static class ClientOutput
+    {
+        /** Client output */
+        private final PrintWriter writer;
+
+        /** true if command finished */
+        private volatile boolean  closed;
+
+        /**
+         * Constructor
+         *
+         * @param writer Client output
+         */
+        ClientOutput(PrintWriter writer)
+        {
+            this.writer = writer;
+        }
+
+        /**
+         * Stop writing log to client, and unbind from current thread.
+         */
+        public void close()
+        {
+            this.closed = true;
+            OUTPUT.remove();
+        }
+    }
+}
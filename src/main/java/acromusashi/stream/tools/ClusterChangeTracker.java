@@ -0,0 +1,334 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.SupervisorSummary;
+import backtype.storm.generated.TopologySummary;
+
+/**
+ * Keep previous cluster state, and write changes of cluster summary as line-delimited JSON.<br>
+ * Following events are written.
+ * <ul>
+ * <li>topologyAdded, topologyRemoved</li>
+ * <li>topologyChanged(status, worker count, task count or executor count is changed. Previous values are written as prevXxx.)</li>
+ * <li>supervisorJoined, supervisorLeft</li>
+ * <li>pollFailed(first failure of consecutive failures), pollRecovered</li>
+ * </ul>
+ * State objects and event map are reused between polls, so memory is allocated only when cluster is changed.
+ *
+ * @author kimura
+ */
+public class ClusterChangeTracker
+{
+    /** Topology states(key is topology id) */
+    private final Map<String, TopologyState>   topologies  = new HashMap<>();
+
+    /** Supervisor states(key is supervisor id) */
+    private final Map<String, SupervisorState> supervisors = new HashMap<>();
+
+    /** Event map reused for each event */
+    private final Map<String, Object>          event       = new LinkedHashMap<>();
+
+    /** Event output */
+    private final Writer                       out;
+
+    /** Update generation. State not updated in current generation is removed. */
+    private long                               generation;
+
+    /** Last poll failed */
+    private boolean                            failing;
+
+    /**
+     * Constructor
+     *
+     * @param out Event output
+     */
+    public ClusterChangeTracker(Writer out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Compare cluster summary with previous state, and write changes.
+     *
+     * @param summary Cluster summary
+     * @throws IOException Write failed
+     */
+    public void update(ClusterSummary summary) throws IOException
+    {
+        this.generation++;
+        if (this.failing)
+        {
+            this.failing = false;
+            beginEvent("pollRecovered");
+            writeEvent();
+        }
+
+        for (TopologySummary topology : summary.get_topologies())
+        {
+            updateTopology(topology);
+        }
+
+        Iterator<TopologyState> topologyIterator = this.topologies.values().iterator();
+        while (topologyIterator.hasNext())
+        {
+            TopologyState state = topologyIterator.next();
+            if (state.generation != this.generation)
+            {
+                beginEvent("topologyRemoved");
+                this.event.put("id", state.id);
+                this.event.put("name", state.name);
+                writeEvent();
+                topologyIterator.remove();
+            }
+        }
+
+        for (SupervisorSummary supervisor : summary.get_supervisors())
+        {
+            SupervisorState state = this.supervisors.get(supervisor.get_supervisor_id());
+            if (state == null)
+            {
+                state = new SupervisorState(supervisor.get_supervisor_id(), supervisor.get_host());
+                this.supervisors.put(state.id, state);
+                beginEvent("supervisorJoined");
+                this.event.put("id", state.id);
+                this.event.put("host", state.host);
+                this.event.put("slots", supervisor.get_num_workers());
+                writeEvent();
+            }
+            state.generation = this.generation;
+        }
+
+        Iterator<SupervisorState> supervisorIterator = this.supervisors.values().iterator();
+        while (supervisorIterator.hasNext())
+        {
+            SupervisorState state = supervisorIterator.next();
+            if (state.generation != this.generation)
+            {
+                beginEvent("supervisorLeft");
+                this.event.put("id", state.id);
+                this.event.put("host", state.host);
+                writeEvent();
+                supervisorIterator.remove();
+            }
+        }
+
+        this.out.flush();
+    }
+
+    /**
+     * Write poll failure. Only first failure of consecutive failures is written.
+     *
+     * @param cause Failure cause
+     * @throws IOException Write failed
+     */
+    public void pollFailed(Throwable cause) throws IOException
+    {
+        if (this.failing)
+        {
+            return;
+        }
+
+        this.failing = true;
+        beginEvent("pollFailed");
+        this.event.put("cause", cause.toString());
+        writeEvent();
+        this.out.flush();
+    }
+
+    /**
+     * Compare topology summary with previous state, and write added or changed event.
+     *
+     * @param topology Topology summary
+     * @throws IOException Write failed
+     */
+    private void updateTopology(TopologySummary topology) throws IOException
+    {
+        TopologyState state = this.topologies.get(topology.get_id());
+        if (state == null)
+        {
+            state = new TopologyState(topology.get_id(), topology.get_name());
+            state.update(topology);
+            this.topologies.put(state.id, state);
+            beginEvent("topologyAdded");
+            putTopology(state);
+            writeEvent();
+        }
+        else if (state.isChanged(topology))
+        {
+            beginEvent("topologyChanged");
+            if (state.status.equals(topology.get_status()) == false)
+            {
+                this.event.put("prevStatus", state.status);
+            }
+            if (state.workers != topology.get_num_workers())
+            {
+                this.event.put("prevWorkers", state.workers);
+            }
+            if (state.tasks != topology.get_num_tasks())
+            {
+                this.event.put("prevTasks", state.tasks);
+            }
+            if (state.executors != topology.get_num_executors())
+            {
+                this.event.put("prevExecutors", state.executors);
+            }
+            state.update(topology);
+            putTopology(state);
+            writeEvent();
+        }
+
+        state.generation = this.generation;
+    }
+
+    /**
+     * Put topology state to event.
+     *
+     * @param state Topology state
+     */
+    private void putTopology(TopologyState state)
+    {
+        this.event.put("id", state.id);
+        this.event.put("name", state.name);
+        this.event.put("status", state.status);
+        this.event.put("workers", state.workers);
+        this.event.put("tasks", state.tasks);
+        this.event.put("executors", state.executors);
+    }
+
+    /**
+     * Clear event map, and put event type and time.
+     *
+     * @param eventType Event type
+     */
+    private void beginEvent(String eventType)
+    {
+        this.event.clear();
+        this.event.put("time", System.currentTimeMillis());
+        this.event.put("event", eventType);
+    }
+
+    /**
+     * Write event as one line.
+     *
+     * @throws IOException Write failed
+     */
+    private void writeEvent() throws IOException
+    {
+        JSONValue.writeJSONString(this.event, this.out);
+        this.out.write('\n');
+    }
+
+    /**
+     * Previous state of topology.
+     */
+    private static class TopologyState
+    {
+        /** Topology id */
+        final String id;
+
+        /** Topology name */
+        final String name;
+
+        /** Status */
+        String       status;
+
+        /** Worker count */
+        int          workers;
+
+        /** Task count */
+        int          tasks;
+
+        /** Executor count */
+        int          executors;
+
+        /** Last updated generation */
+        long         generation;
+
+        /**
+         * Constructor
+         *
+         * @param id Topology id
+         * @param name Topology name
+         */
+        TopologyState(String id, String name)
+        {
+            this.id = id;
+            this.name = name;
+        }
+
+        /**
+         * Check topology summary is changed from this state.
+         *
+         * @param topology Topology summary
+         * @return true if changed
+         */
+        boolean isChanged(TopologySummary topology)
+        {
+            return this.status.equals(topology.get_status()) == false
+                    || this.workers != topology.get_num_workers()
+                    || this.tasks != topology.get_num_tasks()
+                    || this.executors != topology.get_num_executors();
+        }
+
+        /**
+         * Update state by topology summary.
+         *
+         * @param topology Topology summary
+         */
+        void update(TopologySummary topology)
+        {
+            this.status = topology.get_status();
+            this.workers = topology.get_num_workers();
+            this.tasks = topology.get_num_tasks();
+            this.executors = topology.get_num_executors();
+        }
+    }
+
+    /**
+     * Previous state of supervisor.
+     */
+    private static class SupervisorState
+    {
+        /** Supervisor id */
+        final String id;
+
+        /** Supervisor host */
+        final String host;
+
+        /** Last updated generation */
+        long         generation;
+
+        /**
+         * Constructor
+         *
+         * @param id Supervisor id
+         * @param host Supervisor host
+         */
+        SupervisorState(String id, String host)
+        {
+            this.id = id;
+            this.host = host;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift7.TDeserializer;
+import org.apache.thrift7.TException;
+import org.apache.thrift7.TSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.stream.config.StormConfigUtil;
+import backtype.storm.Config;
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.Nimbus;
+
+import com.google.common.io.Files;
+
+/**
+ * Cache of cluster summary got from nimbus.<br>
+ * <ul>
+ * <li>Cluster summary is kept in process until ttl expired, so repeated reads do not access nimbus.</li>
+ * <li>Cluster summary is also written to local snapshot file by thrift binary protocol.
+ * Other invocations read it while file is newer than ttl.</li>
+ * <li>After topology is killed, activated or deactivated, call {@link #invalidate()} or {@link #invalidateSnapshot(Map)}
+ * to discard cache and snapshot file. Cluster summary got from nimbus before invalidation is not kept.</li>
+ * </ul>
+ * Ttl and snapshot file path can be set by storm config.
+ * Same snapshot file is read and written by list.groovy and removed by kill_topology.groovy, activate.groovy, deactivate.groovy and batch.groovy.
+ *
+ * @author kimura
+ */
+public class ClusterSummaryCache
+{
+    /** Config key of cache ttl(millisecond) */
+    public static final String                                      CONFIG_TTL                 = "storm.tools.cluster.cache.ttl.ms";
+
+    /** Config key of snapshot file path */
+    public static final String                                      CONFIG_SNAPSHOT            = "storm.tools.cluster.cache.snapshot";
+
+    /** Default cache ttl(millisecond) */
+    public static final int                                         DEFAULT_TTL                = 2000;
+
+    /** Snapshot file name format. Nimbus host and port is inserted. */
+    private static final String                                     SNAPSHOT_NAME_FORMAT       = "cluster-summary-{0}-{1}.thrift";
+
+    /** Default nimbus thrift port */
+    private static final int                                        DEFAULT_NIMBUS_THRIFT_PORT = 6627;
+
+    /** Shared caches of each nimbus address */
+    private static final ConcurrentMap<String, ClusterSummaryCache> SHARED_CACHES              = new ConcurrentHashMap<>();
+
+    /** Logger */
+    private static final Logger                                     logger                     = LoggerFactory.getLogger(ClusterSummaryCache.class);
+
+    /** Nimbus client pool */
+    private final NimbusClientPool                                  pool;
+
+    /** Cache ttl(millisecond) */
+    private final long                                              ttl;
+
+    /** Snapshot file(null if not use snapshot file) */
+    private final File                                              snapshotFile;
+
+    /** Cached cluster summary(null if not cached) */
+    private ClusterSummary                                          summary;
+
+    /** Time cluster summary was got from nimbus(System.nanoTime base) */
+    private long                                                    summaryNanos;
+
+    /** Generation incremented by each invalidation */
+    private long                                                    generation;
+
+    /**
+     * Constructor
+     *
+     * @param pool Nimbus client pool
+     * @param ttl Cache ttl(millisecond)
+     * @param snapshotFile Snapshot file(null if not use snapshot file)
+     */
+    public ClusterSummaryCache(NimbusClientPool pool, long ttl, File snapshotFile)
+    {
+        this.pool = pool;
+        this.ttl = ttl;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Get cache shared in this process for nimbus address of pool. If not exist, create cache with ttl and snapshot file in config.<br>
+     * Default snapshot file is "~/.storm/cluster-summary-[NimbusHost]-[NimbusPort].thrift".
+     *
+     * @param config Storm config
+     * @param pool Nimbus client pool
+     * @return Shared cache
+     */
+    public static ClusterSummaryCache getShared(Map<?, ?> config, NimbusClientPool pool)
+    {
+        String key = pool.getNimbusHost() + ":" + pool.getNimbusPort();
+        ClusterSummaryCache cache = SHARED_CACHES.get(key);
+        if (cache != null)
+        {
+            return cache;
+        }
+
+        int ttl = StormConfigUtil.getIntValue(config, CONFIG_TTL, DEFAULT_TTL);
+        File snapshotFile = getSnapshotFile(config, pool.getNimbusHost(), pool.getNimbusPort());
+
+        ClusterSummaryCache created = new ClusterSummaryCache(pool, ttl, snapshotFile);
+        cache = SHARED_CACHES.putIfAbsent(key, created);
+        if (cache == null)
+        {
+            cache = created;
+        }
+
+        return cache;
+    }
+
+    /**
+     * Discard cached cluster summary and snapshot file of nimbus address in config.<br>
+     * Call this method after topology state is changed by other than {@link ClusterSummaryCache} user(ex. groovy script).
+     *
+     * @param config Storm config
+     */
+    public static void invalidateSnapshot(Map<?, ?> config)
+    {
+        String nimbusHost = StormConfigUtil.getStringValue(config, Config.NIMBUS_HOST, "");
+        int nimbusPort = StormConfigUtil.getIntValue(config, Config.NIMBUS_THRIFT_PORT,
+                DEFAULT_NIMBUS_THRIFT_PORT);
+        ClusterSummaryCache cache = SHARED_CACHES.get(nimbusHost + ":" + nimbusPort);
+        if (cache != null)
+        {
+            cache.invalidate();
+            return;
+        }
+
+        deleteSnapshot(getSnapshotFile(config, nimbusHost, nimbusPort));
+    }
+
+    /**
+     * Get cluster summary. If cache and snapshot file are expired, get it from nimbus.<br>
+     * If cache is invalidated while getting from nimbus, got cluster summary is returned but not kept,
+     * because it may be older than invalidation.
+     *
+     * @return Cluster summary
+     * @throws TException Nimbus access failed
+     */
+    public ClusterSummary get() throws TException
+    {
+        long startGeneration;
+        synchronized (this)
+        {
+            if (this.summary != null
+                    && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.summaryNanos) < this.ttl)
+            {
+                return this.summary;
+            }
+
+            ClusterSummary snapshot = readSnapshot();
+            if (snapshot != null)
+            {
+                // Keep snapshot only until snapshot file expires.
+                long snapshotAge = System.currentTimeMillis() - this.snapshotFile.lastModified();
+                this.summary = snapshot;
+                this.summaryNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(snapshotAge);
+                return this.summary;
+            }
+
+            startGeneration = this.generation;
+        }
+
+        ClusterSummary clusterSummary = this.pool.executeReadOnly(new NimbusCall<ClusterSummary, TException>() {
+            @Override
+            public ClusterSummary call(Nimbus.Client client) throws TException
+            {
+                return client.getClusterInfo();
+            }
+        });
+
+        synchronized (this)
+        {
+            if (this.generation == startGeneration)
+            {
+                this.summary = clusterSummary;
+                this.summaryNanos = System.nanoTime();
+                writeSnapshot(clusterSummary);
+            }
+        }
+
+        return clusterSummary;
+    }
+
+    /**
+     * Discard cached cluster summary and snapshot file.<br>
+     * Call this method after topology state is changed.
+     */
+    public synchronized void invalidate()
+    {
+        this.generation++;
+        this.summary = null;
+        deleteSnapshot(this.snapshotFile);
+    }
+
+    /**
+     * Get snapshot file path of nimbus address.<br>
+     * Default snapshot file is "~/.storm/cluster-summary-[NimbusHost]-[NimbusPort].thrift".
+     *
+     * @param config Storm config
+     * @param nimbusHost Nimbus host
+     * @param nimbusPort Nimbus port
+     * @return Snapshot file
+     */
+    private static File getSnapshotFile(Map<?, ?> config, String nimbusHost, int nimbusPort)
+    {
+        String snapshotName = MessageFormat.format(SNAPSHOT_NAME_FORMAT, nimbusHost,
+                String.valueOf(nimbusPort));
+        String defaultPath = new File(new File(System.getProperty("user.home"), ".storm"),
+                snapshotName).getPath();
+        String snapshotPath = StormConfigUtil.getStringValue(config, CONFIG_SNAPSHOT, defaultPath);
+        return new File(snapshotPath);
+    }
+
+    /**
+     * Delete snapshot file.
+     *
+     * @param snapshotFile Snapshot file(null if not use snapshot file)
+     */
+    private static void deleteSnapshot(File snapshotFile)
+    {
+        if (snapshotFile != null && snapshotFile.exists() && snapshotFile.delete() == false)
+        {
+            String logFormat = "Snapshot file delete failed. : SnapshotFile={0}";
+            logger.warn(MessageFormat.format(logFormat, snapshotFile.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Read snapshot file if it is newer than ttl.
+     *
+     * @return Cluster summary(null if snapshot file not exist, expired or broken)
+     */
+    private ClusterSummary readSnapshot()
+    {
+        if (this.snapshotFile == null || this.snapshotFile.isFile() == false)
+        {
+            return null;
+        }
+
+        long snapshotAge = System.currentTimeMillis() - this.snapshotFile.lastModified();
+        if (snapshotAge < 0 || snapshotAge >= this.ttl)
+        {
+            return null;
+        }
+
+        try
+        {
+            // Snapshot is read as thrift struct, not java serialized object, so file content never creates other classes.
+            ClusterSummary snapshot = new ClusterSummary();
+            new TDeserializer().deserialize(snapshot, Files.toByteArray(this.snapshotFile));
+            return snapshot;
+        }
+        catch (IOException | TException | RuntimeException ex)
+        {
+            String logFormat = "Snapshot file read failed. Ignore snapshot. : SnapshotFile={0}";
+            logger.debug(MessageFormat.format(logFormat, this.snapshotFile.getAbsolutePath()), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Write snapshot file. File is written to temporary file and renamed, so other invocation never read partial file.
+     *
+     * @param clusterSummary Cluster summary
+     */
+    private void writeSnapshot(ClusterSummary clusterSummary)
+    {
+        if (this.snapshotFile == null)
+        {
+            return;
+        }
+
+        File snapshotDir = this.snapshotFile.getAbsoluteFile().getParentFile();
+        File tempFile = null;
+        try
+        {
+            Files.createParentDirs(this.snapshotFile.getAbsoluteFile());
+            tempFile = File.createTempFile(this.snapshotFile.getName(), ".tmp", snapshotDir);
+            Files.write(new TSerializer().serialize(clusterSummary), tempFile);
+            java.nio.file.Files.move(tempFile.toPath(), this.snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | TException | RuntimeException ex)
+        {
+            String logFormat = "Snapshot file write failed. : SnapshotFile={0}";
+            logger.warn(MessageFormat.format(logFormat, this.snapshotFile.getAbsolutePath()), ex);
+            if (tempFile != null && tempFile.exists())
+            {
+                tempFile.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+/**
+ * Task executed for each storm cluster by {@link MultiClusterRunner}.
+ *
+ * @author kimura
+ * @param <T> Task result type
+ */
+public interface ClusterTask<T>
+{
+    /**
+     * Execute task for one cluster.<br>
+     * Failure of the cluster should be returned as result, so it does not stop tasks of other clusters.
+     *
+     * @param configPath Storm config path of the cluster
+     * @return Task result
+     */
+    T execute(String configPath);
+}
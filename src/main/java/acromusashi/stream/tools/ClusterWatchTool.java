@@ -0,0 +1,296 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.thrift7.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.stream.config.StormConfigGenerator;
+import acromusashi.stream.config.StormConfigUtil;
+import backtype.storm.Config;
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.Nimbus;
+
+/**
+ * Cluster watch tool's main class.<br>
+ * This tool polls cluster summary from nimbus at fixed rate, and writes only changes(topology added/removed/changed, supervisor joined/left)
+ * as line-delimited JSON by {@link ClusterChangeTracker}. First poll writes all topologies and supervisors as added.<br>
+ * Tool runs until it is stopped. If nimbus access failed, tool continues polling and writes pollFailed and pollRecovered events.
+ *
+ * @author kimura
+ */
+public class ClusterWatchTool
+{
+    /** Default config path */
+    private static final String DEFAULT_CONFIG_PATH        = "/opt/storm/conf/storm.yaml";
+
+    /** Default poll interval */
+    private static final int    DEFAULT_INTERVAL           = 5;
+
+    /** Default nimbus thrift port */
+    private static final int    DEFAULT_NIMBUS_THRIFT_PORT = 6627;
+
+    /** Return code Watch failed. */
+    private static final int    RETURN_FAILURE             = 1;
+
+    /** Logger */
+    private static final Logger logger                     = LoggerFactory.getLogger(ClusterWatchTool.class);
+
+    /**
+     * Constructor
+     */
+    private ClusterWatchTool()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * Program Entry Point<br>
+     * <br>
+     * Use following arguments.<br>
+     * <ul>
+     * <li>-c Storm config path(optional, default /opt/storm/conf/storm.yaml)</li>
+     * <li>-i Poll interval(optional, default 5sec, at least 1sec)</li>
+     * <li>-o Output file path(optional, default standard output. Events are appended.)</li>
+     * <li>-sh Show help</li>
+     * </ul>
+     *
+     * @param args Argments
+     */
+    public static void main(String... args)
+    {
+        ClusterWatchTool watchTool = new ClusterWatchTool();
+        int returnCode = watchTool.startWatchTool(args);
+        if (returnCode != 0)
+        {
+            Runtime.getRuntime().exit(returnCode);
+        }
+    }
+
+    /**
+     * Start watch tool.<br>
+     * Check arguments and start tool.
+     *
+     * @param args Argments
+     * @return ReturnCode
+     */
+    private int startWatchTool(String[] args)
+    {
+        Options cliOptions = createOptions();
+        CommandLineParser parser = new PosixParser();
+        CommandLine commandLine = null;
+        HelpFormatter help = new HelpFormatter();
+
+        try
+        {
+            commandLine = parser.parse(cliOptions, args);
+        }
+        catch (ParseException pex)
+        {
+            help.printHelp(ClusterWatchTool.class.getName(), cliOptions, true);
+            return RETURN_FAILURE;
+        }
+
+        if (commandLine.hasOption("sh"))
+        {
+            help.printHelp(ClusterWatchTool.class.getName(), cliOptions, true);
+            return RETURN_FAILURE;
+        }
+
+        String configPath = DEFAULT_CONFIG_PATH;
+        if (commandLine.hasOption("c") == true)
+        {
+            configPath = commandLine.getOptionValue("c");
+        }
+
+        int interval = DEFAULT_INTERVAL;
+        if (commandLine.hasOption("i") == true)
+        {
+            try
+            {
+                interval = Integer.parseInt(commandLine.getOptionValue("i"));
+            }
+            catch (NumberFormatException ex)
+            {
+                help.printHelp(ClusterWatchTool.class.getName(), cliOptions, true);
+                return RETURN_FAILURE;
+            }
+        }
+
+        if (interval < 1)
+        {
+            help.printHelp(ClusterWatchTool.class.getName(), cliOptions, true);
+            return RETURN_FAILURE;
+        }
+
+        Config config = null;
+        try
+        {
+            config = StormConfigGenerator.loadStormConfig(configPath);
+        }
+        catch (IOException ex)
+        {
+            String logFormat = "Config file load failed. Exit watch tool. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, configPath), ex);
+            return RETURN_FAILURE;
+        }
+
+        String nimbusHost = StormConfigUtil.getStringValue(config, Config.NIMBUS_HOST, "");
+        int nimbusPort = StormConfigUtil.getIntValue(config, Config.NIMBUS_THRIFT_PORT,
+                DEFAULT_NIMBUS_THRIFT_PORT);
+        NimbusClientPool pool = NimbusClientPool.getShared(nimbusHost, nimbusPort);
+
+        try (OutputStream output = openOutput(commandLine.getOptionValue("o"));
+                Writer out = new BufferedWriter(new OutputStreamWriter(output,
+                        StandardCharsets.UTF_8)))
+        {
+            watch(pool, TimeUnit.SECONDS.toMillis(interval), new ClusterChangeTracker(out));
+        }
+        catch (IOException ex)
+        {
+            logger.error("Event write failed. Exit watch tool.", ex);
+            return RETURN_FAILURE;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            logger.info("Watch interrupted. Exit watch tool.");
+        }
+
+        return RETURN_FAILURE;
+    }
+
+    /**
+     * Poll cluster summary at fixed rate until interrupted.
+     *
+     * @param pool nimbus client pool
+     * @param interval poll interval(millisecond)
+     * @param tracker cluster change tracker
+     * @throws IOException Event write failed
+     * @throws InterruptedException Interrupted while waiting
+     */
+    private void watch(NimbusClientPool pool, long interval, ClusterChangeTracker tracker)
+            throws IOException, InterruptedException
+    {
+        NimbusCall<ClusterSummary, TException> clusterInfoCall = new NimbusCall<ClusterSummary, TException>() {
+            @Override
+            public ClusterSummary call(Nimbus.Client client) throws TException
+            {
+                return client.getClusterInfo();
+            }
+        };
+
+        long nextPollNanos = System.nanoTime();
+        while (true)
+        {
+            try
+            {
+                tracker.update(pool.executeReadOnly(clusterInfoCall));
+            }
+            catch (TException ex)
+            {
+                logger.debug("Cluster summary get failed.", ex);
+                tracker.pollFailed(ex);
+            }
+
+            // Keep fixed rate. If poll took longer than interval, next poll starts immediately.
+            nextPollNanos += TimeUnit.MILLISECONDS.toNanos(interval);
+            long wait = nextPollNanos - System.nanoTime();
+            if (wait > 0)
+            {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            else
+            {
+                nextPollNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Open event output.
+     *
+     * @param outputPath output file path(null if standard output)
+     * @return event output
+     * @throws IOException Open failed
+     */
+    private OutputStream openOutput(String outputPath) throws IOException
+    {
+        if (outputPath == null)
+        {
+            return System.out;
+        }
+
+        return new FileOutputStream(outputPath, true);
+    }
+
+    /**
+     * Generate command line analyze option object.
+     *
+     * @return command line analyze option object
+     */
+    public static Options createOptions()
+    {
+        Options cliOptions = new Options();
+
+        // Config path option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Storm config path");
+        OptionBuilder.withDescription("Storm config path");
+        OptionBuilder.isRequired(false);
+        Option configOption = OptionBuilder.create("c");
+
+        // Poll interval option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Poll interval(Sec)");
+        OptionBuilder.withDescription("Poll interval(Sec)");
+        OptionBuilder.isRequired(false);
+        Option intervalOption = OptionBuilder.create("i");
+
+        // Output file option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Output file path");
+        OptionBuilder.withDescription("Output file path(default standard output)");
+        OptionBuilder.isRequired(false);
+        Option outputOption = OptionBuilder.create("o");
+
+        // Help option
+        OptionBuilder.withDescription("show help");
+        Option helpOption = OptionBuilder.create("sh");
+
+        cliOptions.addOption(configOption);
+        cliOptions.addOption(intervalOption);
+        cliOptions.addOption(outputOption);
+        cliOptions.addOption(helpOption);
+        return cliOptions;
+    }
+}
@@ -0,0 +1,530 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.json.simple.JSONValue;
+
+/**
+ * Machine readable run report of config put tool.<br>
+ * Report contains run phase time, per host result and latency percentiles of each phase.<br>
+ * Json report also contains throughput of whole cluster(pushes/sec, bytes/sec) and time to full cluster coverage,
+ * so runs before and after a change can be compared.<br>
+ * If report path ends with ".csv", report is written as csv, otherwise as json.<br>
+ * If config is put to multiple clusters, reports of all clusters are merged to one file.
+ *
+ * @author kimura
+ */
+public class ConfigPutReport
+{
+    /** Reported phases of each host */
+    private static final List<String> HOST_PHASES = Arrays.asList(
+            HostTransferContext.PHASE_RESOLVE, HostTransferContext.PHASE_CONNECT,
+            HostTransferContext.PHASE_AUTH, HostTransferContext.PHASE_DIGEST,
+            HostTransferContext.PHASE_COPY, HostTransferContext.PHASE_RELAY);
+
+    /** Reported percentiles */
+    private static final int[]        PERCENTILES = {50, 90, 99, 100};
+
+    /** Elapsed time(millisecond) of nimbus getClusterInfo */
+    private long                      clusterInfoMillis;
+
+    /** Elapsed time(millisecond) of resolve all hosts */
+    private long                      resolveMillis;
+
+    /** Elapsed time(millisecond) of whole run */
+    private long                      totalMillis;
+
+    /** Elapsed time(millisecond) from start of put to finish of all hosts */
+    private long                      putMillis;
+
+    /** Put results of each host */
+    private List<ConfigPutResult>     results     = new ArrayList<>();
+
+    /**
+     * Constructor
+     */
+    public ConfigPutReport()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * Write report to file.
+     *
+     * @param reportPath Report path
+     * @throws IOException Write failed
+     */
+    public void write(String reportPath) throws IOException
+    {
+        String content;
+        if (StringUtils.endsWithIgnoreCase(reportPath, ".csv"))
+        {
+            content = toCsv();
+        }
+        else
+        {
+            content = toJson();
+        }
+
+        FileUtils.writeStringToFile(new File(reportPath), content, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Write merged report of multiple clusters to file.<br>
+     * Json report has whole run time and report of each cluster. Csv report has cluster column before host column.
+     *
+     * @param reportPath Report path
+     * @param reports Map of config path and report of the cluster(null if put to the cluster failed)
+     * @param totalMillis Elapsed time(millisecond) of whole run
+     * @throws IOException Write failed
+     */
+    public static void writeClusters(String reportPath, Map<String, ConfigPutReport> reports,
+            long totalMillis) throws IOException
+    {
+        String content;
+        if (StringUtils.endsWithIgnoreCase(reportPath, ".csv"))
+        {
+            content = toClustersCsv(reports);
+        }
+        else
+        {
+            content = toClustersJson(reports, totalMillis);
+        }
+
+        FileUtils.writeStringToFile(new File(reportPath), content, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Create merged json report of multiple clusters.
+     *
+     * @param reports Map of config path and report of the cluster(null if put to the cluster failed)
+     * @param totalMillis Elapsed time(millisecond) of whole run
+     * @return Json report
+     */
+    private static String toClustersJson(Map<String, ConfigPutReport> reports, long totalMillis)
+    {
+        List<Object> clusters = new ArrayList<>();
+        for (Map.Entry<String, ConfigPutReport> clusterReport : reports.entrySet())
+        {
+            Map<String, Object> cluster = new LinkedHashMap<>();
+            cluster.put("cluster", clusterReport.getKey());
+            if (clusterReport.getValue() == null)
+            {
+                cluster.put("status", "failed");
+            }
+            else
+            {
+                cluster.putAll(clusterReport.getValue().toMap());
+            }
+            clusters.add(cluster);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("totalMillis", totalMillis);
+        report.put("clusters", clusters);
+        return JSONValue.toJSONString(report);
+    }
+
+    /**
+     * Create merged csv report of multiple clusters.
+     *
+     * @param reports Map of config path and report of the cluster(null if put to the cluster failed)
+     * @return Csv report
+     */
+    private static String toClustersCsv(Map<String, ConfigPutReport> reports)
+    {
+        List<String> phases = new ArrayList<>();
+        for (String phase : HOST_PHASES)
+        {
+            for (ConfigPutReport report : reports.values())
+            {
+                if (report != null && report.getPhaseValues(phase).isEmpty() == false)
+                {
+                    phases.add(phase);
+                    break;
+                }
+            }
+        }
+
+        StringBuilder builder = new StringBuilder("cluster,");
+        appendCsvHeader(builder, phases);
+        for (Map.Entry<String, ConfigPutReport> clusterReport : reports.entrySet())
+        {
+            if (clusterReport.getValue() == null)
+            {
+                builder.append(clusterReport.getKey()).append(",,failed\n");
+                continue;
+            }
+
+            clusterReport.getValue().appendCsvRows(builder, phases, clusterReport.getKey());
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Create json report.
+     *
+     * @return Json report
+     */
+    public String toJson()
+    {
+        return JSONValue.toJSONString(toMap());
+    }
+
+    /**
+     * Create report map converted to json.
+     *
+     * @return Report map
+     */
+    private Map<String, Object> toMap()
+    {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("clusterInfoMillis", this.clusterInfoMillis);
+        report.put("resolveMillis", this.resolveMillis);
+        report.put("totalMillis", this.totalMillis);
+
+        long totalBytes = 0;
+        List<Object> hosts = new ArrayList<>();
+        for (ConfigPutResult result : this.results)
+        {
+            totalBytes += result.getTransferredBytes();
+            Map<String, Object> host = new LinkedHashMap<>();
+            host.put("host", result.getTargetHost());
+            host.put("status", getStatus(result));
+            host.put("elapsedMillis", result.getElapsedMillis());
+            host.put("bytes", result.getTransferredBytes());
+            host.put("throughput", result.getThroughput());
+            host.put("attempts", result.getAttempts());
+            host.put("straggler", result.isStraggler());
+            host.put("phaseMillis", new LinkedHashMap<>(result.getPhaseMillis()));
+            if (result.getCause() != null)
+            {
+                host.put("error", result.getCause().toString());
+            }
+            hosts.add(host);
+        }
+
+        report.put("totalBytes", totalBytes);
+        report.put("putMillis", this.putMillis);
+        report.put("pushesPerSec", perSecond(countPushed(), this.putMillis));
+        report.put("bytesPerSec", perSecond(totalBytes, this.putMillis));
+        report.put("coverageMillis", getCoverageMillis());
+        report.put("hosts", hosts);
+
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        for (String phase : getReportPhases())
+        {
+            Map<String, Object> phasePercentiles = new LinkedHashMap<>();
+            List<Long> values = getPhaseValues(phase);
+            phasePercentiles.put("count", values.size());
+            for (int percentile : PERCENTILES)
+            {
+                phasePercentiles.put(getPercentileName(percentile),
+                        calculatePercentile(values, percentile));
+            }
+            percentiles.put(phase, phasePercentiles);
+        }
+
+        report.put("phasePercentiles", percentiles);
+        return report;
+    }
+
+    /**
+     * Create csv report.<br>
+     * Each host is one row. Percentile rows follow host rows, and has percentile name at host column.
+     *
+     * @return Csv report
+     */
+    public String toCsv()
+    {
+        List<String> phases = getReportPhases();
+        StringBuilder builder = new StringBuilder();
+        appendCsvHeader(builder, phases);
+        appendCsvRows(builder, phases, null);
+        return builder.toString();
+    }
+
+    /**
+     * Append csv header row.
+     *
+     * @param builder Csv builder
+     * @param phases Reported phases
+     */
+    private static void appendCsvHeader(StringBuilder builder, List<String> phases)
+    {
+        builder.append("host,status,elapsedMillis,bytes,throughput,attempts,straggler");
+        for (String phase : phases)
+        {
+            builder.append(',').append(phase).append("Millis");
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * Append csv rows of each host and percentiles.
+     *
+     * @param builder Csv builder
+     * @param phases Reported phases
+     * @param cluster Cluster column value(null if cluster column is not output)
+     */
+    private void appendCsvRows(StringBuilder builder, List<String> phases, String cluster)
+    {
+        for (ConfigPutResult result : this.results)
+        {
+            if (cluster != null)
+            {
+                builder.append(cluster).append(',');
+            }
+            builder.append(result.getTargetHost()).append(',').append(getStatus(result));
+            builder.append(',').append(result.getElapsedMillis());
+            builder.append(',').append(result.getTransferredBytes());
+            builder.append(',').append(result.getThroughput());
+            builder.append(',').append(result.getAttempts());
+            builder.append(',').append(result.isStraggler());
+            for (String phase : phases)
+            {
+                builder.append(',');
+                Long value = result.getPhaseMillis().get(phase);
+                if (value != null)
+                {
+                    builder.append(value);
+                }
+            }
+            builder.append('\n');
+        }
+
+        for (int percentile : PERCENTILES)
+        {
+            if (cluster != null)
+            {
+                builder.append(cluster).append(',');
+            }
+            builder.append(getPercentileName(percentile)).append(",,,,,,");
+            for (String phase : phases)
+            {
+                builder.append(',').append(calculatePercentile(getPhaseValues(phase), percentile));
+            }
+            builder.append('\n');
+        }
+    }
+
+    /**
+     * Get phases which are recorded at least one host.
+     *
+     * @return Reported phases
+     */
+    private List<String> getReportPhases()
+    {
+        List<String> phases = new ArrayList<>();
+        for (String phase : HOST_PHASES)
+        {
+            if (getPhaseValues(phase).isEmpty() == false)
+            {
+                phases.add(phase);
+            }
+        }
+
+        return phases;
+    }
+
+    /**
+     * Get sorted elapsed times of phase of all hosts.
+     *
+     * @param phase Phase name
+     * @return Sorted elapsed times(millisecond)
+     */
+    private List<Long> getPhaseValues(String phase)
+    {
+        List<Long> values = new ArrayList<>();
+        for (ConfigPutResult result : this.results)
+        {
+            Long value = result.getPhaseMillis().get(phase);
+            if (value != null)
+            {
+                values.add(value);
+            }
+        }
+
+        Collections.sort(values);
+        return values;
+    }
+
+    /**
+     * Calculate percentile by nearest rank method.
+     *
+     * @param sortedValues Sorted values
+     * @param percentile Percentile(1-100)
+     * @return Percentile value(0 if values are empty)
+     */
+    private long calculatePercentile(List<Long> sortedValues, int percentile)
+    {
+        if (sortedValues.isEmpty())
+        {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100.0d * sortedValues.size());
+        return sortedValues.get(Math.max(rank - 1, 0));
+    }
+
+    /**
+     * Get percentile name.
+     *
+     * @param percentile Percentile
+     * @return Percentile name(p50, p90, ..., max)
+     */
+    private String getPercentileName(int percentile)
+    {
+        if (percentile == 100)
+        {
+            return "max";
+        }
+
+        return "p" + percentile;
+    }
+
+    /**
+     * Count hosts which files are put to.
+     *
+     * @return Pushed host count
+     */
+    private long countPushed()
+    {
+        long pushed = 0;
+        for (ConfigPutResult result : this.results)
+        {
+            if (result.isSuccess() && result.isSkipped() == false)
+            {
+                pushed++;
+            }
+        }
+
+        return pushed;
+    }
+
+    /**
+     * Get time to full cluster coverage.
+     *
+     * @return Put time(millisecond) if all hosts succeeded, -1 if some hosts failed
+     */
+    private long getCoverageMillis()
+    {
+        for (ConfigPutResult result : this.results)
+        {
+            if (result.isSuccess() == false)
+            {
+                return -1;
+            }
+        }
+
+        return this.putMillis;
+    }
+
+    /**
+     * Calculate count per second.
+     *
+     * @param count Count
+     * @param millis Elapsed time(millisecond)
+     * @return Count per second(0 if elapsed time is 0)
+     */
+    private double perSecond(long count, long millis)
+    {
+        if (millis <= 0)
+        {
+            return 0.0d;
+        }
+
+        return count * 1000.0d / millis;
+    }
+
+    /**
+     * Get status of put result.
+     *
+     * @param result Put result
+     * @return Status(succeeded, skipped or failed)
+     */
+    private String getStatus(ConfigPutResult result)
+    {
+        if (result.isSkipped())
+        {
+            return "skipped";
+        }
+        else if (result.isSuccess())
+        {
+            return "succeeded";
+        }
+
+        return "failed";
+    }
+
+    /**
+     * @param clusterInfoMillis the clusterInfoMillis to set
+     */
+    public void setClusterInfoMillis(long clusterInfoMillis)
+    {
+        this.clusterInfoMillis = clusterInfoMillis;
+    }
+
+    /**
+     * @param resolveMillis the resolveMillis to set
+     */
+    public void setResolveMillis(long resolveMillis)
+    {
+        this.resolveMillis = resolveMillis;
+    }
+
+    /**
+     * @param totalMillis the totalMillis to set
+     */
+    public void setTotalMillis(long totalMillis)
+    {
+        this.totalMillis = totalMillis;
+    }
+
+    /**
+     * @param putMillis the putMillis to set
+     */
+    public void setPutMillis(long putMillis)
+    {
+        this.putMillis = putMillis;
+    }
+
+    /**
+     * @return the results
+     */
+    public List<ConfigPutResult> getResults()
+    {
+        return this.results;
+    }
+
+    /**
+     * @param results the results to set
+     */
+    public void setResults(List<ConfigPutResult> results)
+    {
+        this.results = results;
+    }
+}
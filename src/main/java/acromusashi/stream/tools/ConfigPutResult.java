@@ -0,0 +1,248 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Config file put result of one supervisor host.
+ *
+ * @author kimura
+ */
+public class ConfigPutResult
+{
+    /** Target host */
+    private final String            targetHost;
+
+    /** Put succeeded or not */
+    private final boolean           success;
+
+    /** Put skipped because remote file is unchanged */
+    private final boolean           skipped;
+
+    /** Elapsed time(millisecond) */
+    private final long              elapsedMillis;
+
+    /** Bytes transferred from this host */
+    private final long              transferredBytes;
+
+    /** Failure cause(null if succeeded) */
+    private final Throwable         cause;
+
+    /** Put attempt count */
+    private int                     attempts    = 1;
+
+    /** Elapsed time(millisecond) of each phase */
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+    /** Elapsed time is much longer than other hosts */
+    private boolean                 straggler;
+
+    /**
+     * Constructor
+     *
+     * @param targetHost Target host
+     * @param success Put succeeded or not
+     * @param skipped Put skipped or not
+     * @param elapsedMillis Elapsed time(millisecond)
+     * @param transferredBytes Bytes transferred from this host
+     * @param cause Failure cause
+     */
+    private ConfigPutResult(String targetHost, boolean success, boolean skipped,
+            long elapsedMillis, long transferredBytes, Throwable cause)
+    {
+        this.targetHost = targetHost;
+        this.success = success;
+        this.skipped = skipped;
+        this.elapsedMillis = elapsedMillis;
+        this.transferredBytes = transferredBytes;
+        this.cause = cause;
+    }
+
+    /**
+     * Create succeeded result.
+     *
+     * @param targetHost Target host
+     * @param elapsedMillis Elapsed time(millisecond)
+     * @param transferredBytes Bytes transferred from this host
+     * @return Succeeded result
+     */
+    public static ConfigPutResult success(String targetHost, long elapsedMillis,
+            long transferredBytes)
+    {
+        return new ConfigPutResult(targetHost, true, false, elapsedMillis, transferredBytes, null);
+    }
+
+    /**
+     * Create skipped result.(Remote file is already same as source file.)
+     *
+     * @param targetHost Target host
+     * @param elapsedMillis Elapsed time(millisecond)
+     * @return Skipped result
+     */
+    public static ConfigPutResult skipped(String targetHost, long elapsedMillis)
+    {
+        return new ConfigPutResult(targetHost, true, true, elapsedMillis, 0, null);
+    }
+
+    /**
+     * Create failed result.
+     *
+     * @param targetHost Target host
+     * @param elapsedMillis Elapsed time(millisecond)
+     * @param cause Failure cause
+     * @return Failed result
+     */
+    public static ConfigPutResult failure(String targetHost, long elapsedMillis, Throwable cause)
+    {
+        return new ConfigPutResult(targetHost, false, false, elapsedMillis, 0, cause);
+    }
+
+    /**
+     * @return the targetHost
+     */
+    public String getTargetHost()
+    {
+        return this.targetHost;
+    }
+
+    /**
+     * @return the success
+     */
+    public boolean isSuccess()
+    {
+        return this.success;
+    }
+
+    /**
+     * @return the skipped
+     */
+    public boolean isSkipped()
+    {
+        return this.skipped;
+    }
+
+    /**
+     * @return the elapsedMillis
+     */
+    public long getElapsedMillis()
+    {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * @return the transferredBytes
+     */
+    public long getTransferredBytes()
+    {
+        return this.transferredBytes;
+    }
+
+    /**
+     * Get throughput of this host.
+     *
+     * @return Throughput(byte/sec). If elapsed time is 0, return 0.
+     */
+    public long getThroughput()
+    {
+        if (this.elapsedMillis == 0)
+        {
+            return 0;
+        }
+
+        return this.transferredBytes * 1000L / this.elapsedMillis;
+    }
+
+    /**
+     * @return the attempts
+     */
+    public int getAttempts()
+    {
+        return this.attempts;
+    }
+
+    /**
+     * @param attempts the attempts to set
+     */
+    public void setAttempts(int attempts)
+    {
+        this.attempts = attempts;
+    }
+
+    /**
+     * Add elapsed time of phases.
+     *
+     * @param phases Map of phase name and elapsed time(millisecond)
+     */
+    public void addPhaseMillis(Map<String, Long> phases)
+    {
+        this.phaseMillis.putAll(phases);
+    }
+
+    /**
+     * @return the phaseMillis
+     */
+    public Map<String, Long> getPhaseMillis()
+    {
+        return Collections.unmodifiableMap(this.phaseMillis);
+    }
+
+    /**
+     * @return the straggler
+     */
+    public boolean isStraggler()
+    {
+        return this.straggler;
+    }
+
+    /**
+     * @param straggler the straggler to set
+     */
+    public void setStraggler(boolean straggler)
+    {
+        this.straggler = straggler;
+    }
+
+    /**
+     * @return the cause
+     */
+    public Throwable getCause()
+    {
+        return this.cause;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ConfigPutResult [targetHost=").append(this.targetHost);
+        builder.append(", success=").append(this.success);
+        builder.append(", skipped=").append(this.skipped);
+        builder.append(", elapsedMillis=").append(this.elapsedMillis);
+        builder.append(", transferredBytes=").append(this.transferredBytes);
+        builder.append(", attempts=").append(this.attempts);
+        builder.append(", phaseMillis=").append(this.phaseMillis);
+        builder.append(", straggler=").append(this.straggler);
+        if (this.cause != null)
+        {
+            builder.append(", cause=").append(this.cause.toString());
+        }
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,371 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+/**
+ * Setting of config put to supervisor hosts.
+ *
+ * @author kimura
+ */
+public class ConfigPutSetting
+{
+    /** User account */
+    private String  userAccount;
+
+    /** User password */
+    private String  userPassword;
+
+    /** Ssh port */
+    private int     sshPort;
+
+    /** Put parallelism */
+    private int     parallelism = 1;
+
+    /** Skip put to host which has same file already */
+    private boolean skipUnchanged;
+
+    /** Get supervisor hosts from zookeeper instead of nimbus */
+    private boolean zookeeperDiscovery;
+
+    /** Max source file size(byte) read to shared heap buffer. Larger file is memory mapped. */
+    private long    heapBufferThreshold;
+
+    /** Chunk size(byte) of resumable chunked put. 0 means chunked put is disabled. */
+    private long    chunkSize;
+
+    /** Content addressed staging store directory on remote hosts. null means store is disabled. */
+    private String  storeDir;
+
+    /** true if destination is placed by hardlink from store, false if by copy. */
+    private boolean storeHardLink;
+
+    /** Relay fan-out. 0 means relay is disabled. */
+    private int     relayFanout;
+
+    /** true if relay ssh between supervisors skips host key check. */
+    private boolean relayHostKeyCheckSkip;
+
+    /** Bandwidth limit(byte/sec) shared by all hosts. 0 means unlimited. */
+    private long    globalBandwidth;
+
+    /** Bandwidth limit(byte/sec) of each host. 0 means unlimited. */
+    private long    hostBandwidth;
+
+    /** Ssh connect and key exchange timeout(millisecond). 0 means no timeout. */
+    private int     connectTimeout;
+
+    /** Transfer timeout(millisecond) of each host attempt. 0 means no timeout. */
+    private long    transferTimeout;
+
+    /** Retry count of each host */
+    private int     retryCount;
+
+    /** Base backoff(millisecond) of retry. Doubled each retry. */
+    private long    retryBackoff;
+
+    /**
+     * Constructor
+     */
+    public ConfigPutSetting()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * @return the userAccount
+     */
+    public String getUserAccount()
+    {
+        return this.userAccount;
+    }
+
+    /**
+     * @param userAccount the userAccount to set
+     */
+    public void setUserAccount(String userAccount)
+    {
+        this.userAccount = userAccount;
+    }
+
+    /**
+     * @return the userPassword
+     */
+    public String getUserPassword()
+    {
+        return this.userPassword;
+    }
+
+    /**
+     * @param userPassword the userPassword to set
+     */
+    public void setUserPassword(String userPassword)
+    {
+        this.userPassword = userPassword;
+    }
+
+    /**
+     * @return the sshPort
+     */
+    public int getSshPort()
+    {
+        return this.sshPort;
+    }
+
+    /**
+     * @param sshPort the sshPort to set
+     */
+    public void setSshPort(int sshPort)
+    {
+        this.sshPort = sshPort;
+    }
+
+    /**
+     * @return the parallelism
+     */
+    public int getParallelism()
+    {
+        return this.parallelism;
+    }
+
+    /**
+     * @param parallelism the parallelism to set
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the skipUnchanged
+     */
+    public boolean isSkipUnchanged()
+    {
+        return this.skipUnchanged;
+    }
+
+    /**
+     * @param skipUnchanged the skipUnchanged to set
+     */
+    public void setSkipUnchanged(boolean skipUnchanged)
+    {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * @return the zookeeperDiscovery
+     */
+    public boolean isZookeeperDiscovery()
+    {
+        return this.zookeeperDiscovery;
+    }
+
+    /**
+     * @param zookeeperDiscovery the zookeeperDiscovery to set
+     */
+    public void setZookeeperDiscovery(boolean zookeeperDiscovery)
+    {
+        this.zookeeperDiscovery = zookeeperDiscovery;
+    }
+
+    /**
+     * @return the heapBufferThreshold
+     */
+    public long getHeapBufferThreshold()
+    {
+        return this.heapBufferThreshold;
+    }
+
+    /**
+     * @param heapBufferThreshold the heapBufferThreshold to set
+     */
+    public void setHeapBufferThreshold(long heapBufferThreshold)
+    {
+        this.heapBufferThreshold = heapBufferThreshold;
+    }
+
+    /**
+     * @return the chunkSize
+     */
+    public long getChunkSize()
+    {
+        return this.chunkSize;
+    }
+
+    /**
+     * @param chunkSize the chunkSize to set
+     */
+    public void setChunkSize(long chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the storeDir
+     */
+    public String getStoreDir()
+    {
+        return this.storeDir;
+    }
+
+    /**
+     * @param storeDir the storeDir to set
+     */
+    public void setStoreDir(String storeDir)
+    {
+        this.storeDir = storeDir;
+    }
+
+    /**
+     * @return the storeHardLink
+     */
+    public boolean isStoreHardLink()
+    {
+        return this.storeHardLink;
+    }
+
+    /**
+     * @param storeHardLink the storeHardLink to set
+     */
+    public void setStoreHardLink(boolean storeHardLink)
+    {
+        this.storeHardLink = storeHardLink;
+    }
+
+    /**
+     * @return the relayFanout
+     */
+    public int getRelayFanout()
+    {
+        return this.relayFanout;
+    }
+
+    /**
+     * @param relayFanout the relayFanout to set
+     */
+    public void setRelayFanout(int relayFanout)
+    {
+        this.relayFanout = relayFanout;
+    }
+
+    /**
+     * @return the relayHostKeyCheckSkip
+     */
+    public boolean isRelayHostKeyCheckSkip()
+    {
+        return this.relayHostKeyCheckSkip;
+    }
+
+    /**
+     * @param relayHostKeyCheckSkip the relayHostKeyCheckSkip to set
+     */
+    public void setRelayHostKeyCheckSkip(boolean relayHostKeyCheckSkip)
+    {
+        this.relayHostKeyCheckSkip = relayHostKeyCheckSkip;
+    }
+
+    /**
+     * @return the globalBandwidth
+     */
+    public long getGlobalBandwidth()
+    {
+        return this.globalBandwidth;
+    }
+
+    /**
+     * @param globalBandwidth the globalBandwidth to set
+     */
+    public void setGlobalBandwidth(long globalBandwidth)
+    {
+        this.globalBandwidth = globalBandwidth;
+    }
+
+    /**
+     * @return the hostBandwidth
+     */
+    public long getHostBandwidth()
+    {
+        return this.hostBandwidth;
+    }
+
+    /**
+     * @param hostBandwidth the hostBandwidth to set
+     */
+    public void setHostBandwidth(long hostBandwidth)
+    {
+        this.hostBandwidth = hostBandwidth;
+    }
+
+    /**
+     * @return the connectTimeout
+     */
+    public int getConnectTimeout()
+    {
+        return this.connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout the connectTimeout to set
+     */
+    public void setConnectTimeout(int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return the transferTimeout
+     */
+    public long getTransferTimeout()
+    {
+        return this.transferTimeout;
+    }
+
+    /**
+     * @param transferTimeout the transferTimeout to set
+     */
+    public void setTransferTimeout(long transferTimeout)
+    {
+        this.transferTimeout = transferTimeout;
+    }
+
+    /**
+     * @return the retryCount
+     */
+    public int getRetryCount()
+    {
+        return this.retryCount;
+    }
+
+    /**
+     * @param retryCount the retryCount to set
+     */
+    public void setRetryCount(int retryCount)
+    {
+        this.retryCount = retryCount;
+    }
+
+    /**
+     * @return the retryBackoff
+     */
+    public long getRetryBackoff()
+    {
+        return this.retryBackoff;
+    }
+
+    /**
+     * @param retryBackoff the retryBackoff to set
+     */
+    public void setRetryBackoff(long retryBackoff)
+    {
+        this.retryBackoff = retryBackoff;
+    }
+}
@@ -12,14 +12,23 @@
 */
 package acromusashi.stream.tools;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -29,31 +38,29 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.thrift7.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import acromusashi.stream.client.NimbusClientFactory;
 import acromusashi.stream.config.StormConfigGenerator;
 import acromusashi.stream.config.StormConfigUtil;
-import acromusashi.stream.exception.InitFailException;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import backtype.storm.Config;
 import backtype.storm.generated.ClusterSummary;
 import backtype.storm.generated.SupervisorSummary;
-import backtype.storm.utils.NimbusClient;
-import ch.ethz.ssh2.Connection;
-import ch.ethz.ssh2.SCPClient;
-import ch.ethz.ssh2.SCPOutputStream;
 
 /**
  * Config file put tool at storm cluster.<br>
  * This tool execute following procedure.<br>
  * <ol>
- * <li>Get storm supervisor nodes from nimbus.</li>
+ * <li>Get storm supervisor nodes from nimbus(or storm's zookeeper).</li>
  * <li>Put specified config file to storm supervisor nodes by scp.</li>
  * </ol>
+ * If multiple config paths are specified, clusters are put concurrently and results are merged per cluster.
  * 
  * @author kimura
  */
@@ -68,12 +75,36 @@ public class ConfigPutTool
     /** Default nimbus thrift port */
     private static final int    DEFAULT_NIMBUS_THRIFT_PORT = 6627;
 
+    /** Default put parallelism */
+    private static final int    DEFAULT_PARALLELISM        = 1;
+
+    /** Default max source file size(byte) read to shared heap buffer */
+    private static final long   DEFAULT_HEAP_THRESHOLD     = 64L * 1024L * 1024L;
+
+    /** Divisor of max heap which decides total size of source files read to heap buffers */
+    private static final long   HEAP_BUDGET_DIVISOR        = 4L;
+
+    /** Default ssh connect timeout(millisecond) */
+    private static final int    DEFAULT_CONNECT_TIMEOUT    = 10000;
+
+    /** Default retry backoff(millisecond) */
+    private static final long   DEFAULT_RETRY_BACKOFF      = 1000L;
+
+    /** Resolved host address cache ttl(millisecond) */
+    private static final long   ADDRESS_CACHE_TTL          = 300000L;
+
+    /** Resolve timeout(millisecond) of all supervisor hosts */
+    private static final long   RESOLVE_TIMEOUT            = 30000L;
+
+    /** Host is reported as straggler if elapsed time exceeds this ratio of median. */
+    private static final long   STRAGGLER_RATIO            = 3L;
+
+    /** Return code Config file put failed at some hosts. */
+    private static final int    RETURN_FAILURE             = 1;
+
     /** Logger */
     private static final Logger logger                     = LoggerFactory.getLogger(ConfigPutTool.class);
 
-    /** Path delimeter. The delimeter fix "/", becanse remote host os is only linux.  */
-    private static final String PATH_DELIMETER             = "/";
-
     /**
      * Constructor
      */
@@ -87,21 +118,53 @@ public class ConfigPutTool
      * <br>
      * Use following arguments.<br>
      * <ul>
-     * <li>-c Config path(optional, default /opt/storm/conf/storm.yaml)</li>
-     * <li>-s Put source path on local(required)</li>
-     * <li>-d Put destination path on supervisors(required)</li>
+     * <li>-c Config path(optional, default /opt/storm/conf/storm.yaml, can be specified multiple times to put to multiple clusters)</li>
+     * <li>-cp Cluster parallelism. Max clusters put at once(optional, default is all clusters)</li>
+     * <li>-s Put source path on local(required, file or directory, can be specified multiple times)</li>
+     * <li>-d Put destination path on supervisors(required, specify same times as -s in same order)</li>
      * <li>-ua Put user account(required)</li>
      * <li>-up Put user password(optional, default is not set)</li>
      * <li>-sp Ssh port(optional, default is 22)</li>
+     * <li>-pl Put parallelism(optional, default is 1)</li>
+     * <li>-sk Skip put to host which has same file(optional, default is not skip)</li>
+     * <li>-zk Get supervisor hosts from storm's zookeeper instead of nimbus(optional, default is nimbus)</li>
+     * <li>-bt Max source file size(byte) read to heap, larger file is memory mapped(optional, default is 64MB)</li>
+     * <li>-ck Chunk size(byte) of resumable chunked put for larger file(optional, default is not chunked)</li>
+     * <li>-cs Content addressed staging store directory on supervisors. Same content is put once and placed by copy(optional, default is not use store)</li>
+     * <li>-cl Place destinations by hardlink from staging store instead of copy(optional)</li>
+     * <li>-rf Relay fan-out. Supervisors which received files forward them to next supervisors(optional, default is not relay)</li>
+     * <li>-rk Skip host key check of relay ssh between supervisors(optional, default is check by known_hosts of supervisors)</li>
+     * <li>-bw Bandwidth limit(byte/sec) shared by all hosts(optional, default is unlimited)</li>
+     * <li>-hb Bandwidth limit(byte/sec) of each host(optional, default is unlimited)</li>
+     * <li>-ct Ssh connect timeout(millisecond) of each host(optional, default is 10000)</li>
+     * <li>-tt Transfer timeout(millisecond) of each host attempt(optional, default is no timeout)</li>
+     * <li>-rt Retry count of each host when put failed(optional, default is 0)</li>
+     * <li>-rb Base backoff(millisecond) before retry, doubled each retry(optional, default is 1000)</li>
+     * <li>-rp Run report output path. Json format, or csv format if path ends with ".csv"(optional, default is not output)</li>
      * <li>-sh Show help</li>
      * </ul>
      * 
      * @param args Argments
      */
     public static void main(String... args)
+    {
+        int returnCode = execute(args);
+        if (returnCode != 0)
+        {
+            Runtime.getRuntime().exit(returnCode);
+        }
+    }
+
+    /**
+     * Execute config put tool in current process, and return ReturnCode instead of exit.
+     * 
+     * @param args Argments
+     * @return ReturnCode
+     */
+    public static int execute(String... args)
     {
         ConfigPutTool putTool = new ConfigPutTool();
-        putTool.startPutTool(args);
+        return putTool.startPutTool(args);
     }
 
     /**
@@ -109,8 +172,9 @@ public class ConfigPutTool
      * Check arguments and start tool.
      * 
      * @param args Argments
+     * @return ReturnCode
      */
-    private void startPutTool(String[] args)
+    private int startPutTool(String[] args)
     {
         Options cliOptions = createOptions();
         CommandLineParser parser = new PosixParser();
@@ -124,24 +188,47 @@ public class ConfigPutTool
         catch (ParseException pex)
         {
             help.printHelp(ConfigPutTool.class.getName(), cliOptions, true);
-            return;
+            return 0;
         }
 
         if (commandLine.hasOption("sh"))
         {
             // If help option setted, Show help and exit.
             help.printHelp(ConfigPutTool.class.getName(), cliOptions, true);
-            return;
+            return 0;
         }
 
-        String configPath = DEFAULT_CONFIG_PATH;
+        List<String> configPaths = new ArrayList<>();
         if (commandLine.hasOption("c") == true)
         {
-            configPath = commandLine.getOptionValue("c");
+            configPaths.addAll(Arrays.asList(commandLine.getOptionValues("c")));
+        }
+        else
+        {
+            configPaths.add(DEFAULT_CONFIG_PATH);
         }
 
-        String srcPath = commandLine.getOptionValue("s");
-        String dstPath = commandLine.getOptionValue("d");
+        int clusterParallelism = configPaths.size();
+        if (commandLine.hasOption("cp") == true)
+        {
+            try
+            {
+                clusterParallelism = Integer.parseInt(commandLine.getOptionValue("cp"));
+            }
+            catch (NumberFormatException ex)
+            {
+                help.printHelp(ConfigPutTool.class.getName(), cliOptions, true);
+                return 0;
+            }
+        }
+
+        String[] srcPaths = commandLine.getOptionValues("s");
+        String[] dstPaths = commandLine.getOptionValues("d");
+        if (srcPaths.length != dstPaths.length)
+        {
+            help.printHelp(ConfigPutTool.class.getName(), cliOptions, true);
+            return 0;
+        }
 
         String userAccount = commandLine.getOptionValue("ua");
 
@@ -157,139 +244,697 @@ public class ConfigPutTool
             sshPort = Integer.parseInt(commandLine.getOptionValue("sp"));
         }
 
-        try
+        int parallelism = DEFAULT_PARALLELISM;
+        if (commandLine.hasOption("pl") == true)
         {
-            executePutTool(configPath, srcPath, dstPath, userAccount, userPassword, sshPort);
+            parallelism = Integer.parseInt(commandLine.getOptionValue("pl"));
         }
-        catch (TException | UnknownHostException ex)
+
+        long heapThreshold = DEFAULT_HEAP_THRESHOLD;
+        if (commandLine.hasOption("bt") == true)
         {
-            String logFormat = "Get target host failed. Exit tool.";
-            logger.error(logFormat, ex);
+            heapThreshold = Long.parseLong(commandLine.getOptionValue("bt"));
+        }
+
+        long chunkSize = 0;
+        if (commandLine.hasOption("ck") == true)
+        {
+            chunkSize = Long.parseLong(commandLine.getOptionValue("ck"));
+        }
+
+        int relayFanout = 0;
+        if (commandLine.hasOption("rf") == true)
+        {
+            relayFanout = Integer.parseInt(commandLine.getOptionValue("rf"));
+        }
+
+        long globalBandwidth = 0;
+        if (commandLine.hasOption("bw") == true)
+        {
+            globalBandwidth = Long.parseLong(commandLine.getOptionValue("bw"));
+        }
+
+        long hostBandwidth = 0;
+        if (commandLine.hasOption("hb") == true)
+        {
+            hostBandwidth = Long.parseLong(commandLine.getOptionValue("hb"));
+        }
+
+        int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        if (commandLine.hasOption("ct") == true)
+        {
+            connectTimeout = Integer.parseInt(commandLine.getOptionValue("ct"));
+        }
+
+        long transferTimeout = 0;
+        if (commandLine.hasOption("tt") == true)
+        {
+            transferTimeout = Long.parseLong(commandLine.getOptionValue("tt"));
+        }
+
+        int retryCount = 0;
+        if (commandLine.hasOption("rt") == true)
+        {
+            retryCount = Integer.parseInt(commandLine.getOptionValue("rt"));
+        }
+
+        long retryBackoff = DEFAULT_RETRY_BACKOFF;
+        if (commandLine.hasOption("rb") == true)
+        {
+            retryBackoff = Long.parseLong(commandLine.getOptionValue("rb"));
+        }
+
+        if (clusterParallelism < 1 || parallelism < 1 || heapThreshold < 0 || chunkSize < 0 || relayFanout < 0
+                || globalBandwidth < 0 || hostBandwidth < 0 || connectTimeout < 0
+                || transferTimeout < 0 || retryCount < 0 || retryBackoff < 0)
+        {
+            help.printHelp(ConfigPutTool.class.getName(), cliOptions, true);
+            return 0;
+        }
+
+        final ConfigPutSetting setting = new ConfigPutSetting();
+        setting.setUserAccount(userAccount);
+        setting.setUserPassword(userPassword);
+        setting.setSshPort(sshPort);
+        setting.setParallelism(parallelism);
+        setting.setSkipUnchanged(commandLine.hasOption("sk"));
+        setting.setZookeeperDiscovery(commandLine.hasOption("zk"));
+        setting.setHeapBufferThreshold(heapThreshold);
+        setting.setChunkSize(chunkSize);
+        setting.setStoreDir(commandLine.getOptionValue("cs"));
+        setting.setStoreHardLink(commandLine.hasOption("cl"));
+        setting.setRelayFanout(relayFanout);
+        setting.setRelayHostKeyCheckSkip(commandLine.hasOption("rk"));
+        setting.setGlobalBandwidth(globalBandwidth);
+        setting.setHostBandwidth(hostBandwidth);
+        setting.setConnectTimeout(connectTimeout);
+        setting.setTransferTimeout(transferTimeout);
+        setting.setRetryCount(retryCount);
+        setting.setRetryBackoff(retryBackoff);
+
+        // Global bandwidth is shared by all clusters put concurrently.
+        final RateLimiter globalLimiter = createGlobalLimiter(globalBandwidth);
+
+        long startTime = System.nanoTime();
+        final List<PutFileEntry> entries = new ArrayList<>();
+        final boolean prepared = configPaths.size() > 1;
+        try
+        {
+            for (int index = 0; index < srcPaths.length; index++)
+            {
+                entries.addAll(PutFileEntry.create(srcPaths[index], dstPaths[index]));
+            }
+
+            if (prepared)
+            {
+                // Entries are shared by clusters put concurrently, so prepare them once before put.
+                prepareEntries(entries, configPaths.size(), setting);
+            }
         }
         catch (IOException ex)
         {
             String logFormat = "Config file put failed. Exit tool.";
             logger.error(logFormat, ex);
+            return RETURN_FAILURE;
+        }
+
+        MultiClusterRunner runner = new MultiClusterRunner(clusterParallelism);
+        Map<String, ConfigPutReport> reports;
+        try
+        {
+            reports = runner.run(configPaths, new ClusterTask<ConfigPutReport>() {
+                @Override
+                public ConfigPutReport execute(String configPath)
+                {
+                    return putToCluster(configPath, entries, prepared, setting, globalLimiter);
+                }
+            }, null);
         }
+        finally
+        {
+            // Buffers shared by clusters are not used after put.
+            releaseBuffers(entries);
+        }
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        ConfigPutReport singleReport = reports.get(configPaths.get(0));
+        if (configPaths.size() == 1 && singleReport == null)
+        {
+            // Same as multiple cluster put, nimbus access failure exits tool with failure.
+            return RETURN_FAILURE;
+        }
+
+        boolean succeeded = logClusterResults(reports);
+
+        if (commandLine.hasOption("rp") == true)
+        {
+            String reportPath = commandLine.getOptionValue("rp");
+            try
+            {
+                if (configPaths.size() == 1)
+                {
+                    singleReport.setTotalMillis(totalMillis);
+                    singleReport.write(reportPath);
+                }
+                else
+                {
+                    ConfigPutReport.writeClusters(reportPath, reports, totalMillis);
+                }
+            }
+            catch (IOException ex)
+            {
+                String logFormat = "Run report write failed. : ReportPath={0}";
+                logger.warn(MessageFormat.format(logFormat, reportPath), ex);
+            }
+        }
+
+        if (succeeded == false)
+        {
+            return RETURN_FAILURE;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Create global bandwidth limiter.
+     * 
+     * @param globalBandwidth Global bandwidth(bytes/sec, 0 if unlimited)
+     * @return Bandwidth limiter(null if unlimited)
+     */
+    private RateLimiter createGlobalLimiter(long globalBandwidth)
+    {
+        if (globalBandwidth > 0)
+        {
+            return RateLimiter.create(globalBandwidth);
+        }
+
+        return null;
+    }
+
+    /**
+     * Put config file to one cluster, and convert failure to null.
+     * 
+     * @param configPath Storm config path of the cluster
+     * @param entries Put file entries
+     * @param prepared true if entries are already prepared
+     * @param setting Put setting
+     * @param globalLimiter Bandwidth limiter shared by all clusters(null if unlimited)
+     * @return Run report of the cluster(null if nimbus access or put failed)
+     */
+    private ConfigPutReport putToCluster(String configPath, List<PutFileEntry> entries,
+            boolean prepared, ConfigPutSetting setting, RateLimiter globalLimiter)
+    {
+        ConfigPutReport report = new ConfigPutReport();
+        long startTime = System.nanoTime();
+        try
+        {
+            report.setResults(executePutTool(configPath, entries, prepared, setting,
+                    globalLimiter, report));
+        }
+        catch (TException | UnknownHostException ex)
+        {
+            String logFormat = "Get target host failed. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, configPath), ex);
+            return null;
+        }
+        catch (IOException ex)
+        {
+            String logFormat = "Config file put failed. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, configPath), ex);
+            return null;
+        }
+
+        report.setTotalMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return report;
     }
 
     /**
      * Execute config put tool.
      * 
      * @param configPath configPath
-     * @param srcPath src Path
-     * @param dstPath dst Path
-     * @param userAccount user account
-     * @param userPassword user password
-     * @param sshPort Ssh port
+     * @param entries Put file entries
+     * @param prepared true if entries are already prepared
+     * @param setting Put setting
+     * @param globalLimiter Bandwidth limiter shared by all clusters(null if unlimited)
+     * @param report Run report. Elapsed time of nimbus access, resolve and put are set to it.
+     * @return Put results of each supervisor host
      * @throws TException Get failed.
      * @throws IOException Put failed.
      */
-    private void executePutTool(String configPath, String srcPath, String dstPath,
-            String userAccount, String userPassword, int sshPort) throws TException, IOException
+    private List<ConfigPutResult> executePutTool(String configPath, List<PutFileEntry> entries,
+            boolean prepared, ConfigPutSetting setting, RateLimiter globalLimiter,
+            ConfigPutReport report) throws TException, IOException
     {
         Config config = StormConfigGenerator.loadStormConfig(configPath);
+
+        long clusterInfoStart = System.nanoTime();
+        List<String> supervisorHosts = getSupervisorHosts(config, setting);
+        report.setClusterInfoMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                - clusterInfoStart));
+
+        // Check Name > IPAddress convert check.
+        // Resolve all hosts concurrently once, and connect to hosts by cached addresses.
+        HostAddressResolver resolver = new HostAddressResolver(ADDRESS_CACHE_TTL, RESOLVE_TIMEOUT);
+        long resolveStart = System.nanoTime();
+        Map<String, UnknownHostException> unresolvedHosts = resolver.resolveAll(supervisorHosts);
+        report.setResolveMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resolveStart));
+
+        String localHostName = InetAddress.getLocalHost().getHostName();
+
+        // Put config file.
+        // If target host is localhost and dstination path equals source path, no need to put and skip.
+        List<PutFileEntry> localEntries = new ArrayList<>();
+        for (PutFileEntry entry : entries)
+        {
+            if (entry.getSrcFile().getAbsolutePath().equals(entry.getDstPath()) == false)
+            {
+                localEntries.add(entry);
+            }
+        }
+
+        Map<String, List<PutFileEntry>> targetEntries = new LinkedHashMap<>();
+        for (String supervisorHost : supervisorHosts)
+        {
+            if (unresolvedHosts.containsKey(supervisorHost))
+            {
+                continue;
+            }
+
+            if (localHostName.equals(supervisorHost))
+            {
+                if (localEntries.isEmpty() == false)
+                {
+                    targetEntries.put(supervisorHost, localEntries);
+                }
+                continue;
+            }
+
+            targetEntries.put(supervisorHost, entries);
+        }
+
+        List<ConfigPutResult> putResults;
+        try
+        {
+            if (prepared == false)
+            {
+                prepareEntries(entries, targetEntries.size(), setting);
+            }
+
+            // Put time(and coverage time) measures transfer only, excluding entry preparation.
+            long putStart = System.nanoTime();
+            putResults = putConfigToRemotes(targetEntries, entries, setting, globalLimiter,
+                    resolver);
+            report.setPutMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - putStart));
+        }
+        finally
+        {
+            if (prepared == false)
+            {
+                // Resident server keeps running after put, so buffers are released here.
+                releaseBuffers(entries);
+            }
+        }
+
+        // Unresolved hosts are reported as failed hosts, not fail whole run.
+        Map<String, ConfigPutResult> resultMap = new HashMap<>();
+        for (ConfigPutResult result : putResults)
+        {
+            Long resolveMillis = resolver.getResolveMillis(result.getTargetHost());
+            if (resolveMillis != null)
+            {
+                result.addPhaseMillis(Collections.singletonMap(HostTransferContext.PHASE_RESOLVE,
+                        resolveMillis));
+            }
+            resultMap.put(result.getTargetHost(), result);
+        }
+
+        for (Map.Entry<String, UnknownHostException> unresolved : unresolvedHosts.entrySet())
+        {
+            resultMap.put(unresolved.getKey(),
+                    ConfigPutResult.failure(unresolved.getKey(), 0, unresolved.getValue()));
+        }
+
+        List<ConfigPutResult> results = new ArrayList<>();
+        for (String supervisorHost : supervisorHosts)
+        {
+            if (resultMap.containsKey(supervisorHost))
+            {
+                results.add(resultMap.get(supervisorHost));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Get supervisor hosts from nimbus cluster summary, or from zookeeper if zookeeper discovery mode.
+     * 
+     * @param config Storm config
+     * @param setting Put setting
+     * @return Supervisor hosts
+     * @throws TException Nimbus access failed
+     * @throws IOException Zookeeper access failed
+     */
+    private List<String> getSupervisorHosts(Config config, ConfigPutSetting setting)
+            throws TException, IOException
+    {
+        if (setting.isZookeeperDiscovery())
+        {
+            return ZookeeperSupervisorInventory.getShared(config).getSupervisorHosts();
+        }
+
         String nimbusHost = StormConfigUtil.getStringValue(config, Config.NIMBUS_HOST, "");
         int nimbusPort = StormConfigUtil.getIntValue(config, Config.NIMBUS_THRIFT_PORT,
                 DEFAULT_NIMBUS_THRIFT_PORT);
+        NimbusClientPool pool = NimbusClientPool.getShared(nimbusHost, nimbusPort);
+        ClusterSummary clusterSummary = ClusterSummaryCache.getShared(config, pool).get();
+
+        List<String> supervisorHosts = new ArrayList<>();
+        for (SupervisorSummary supervisor : clusterSummary.get_supervisors())
+        {
+            supervisorHosts.add(supervisor.get_host());
+        }
+
+        return supervisorHosts;
+    }
 
-        NimbusClientFactory factory = new NimbusClientFactory();
-        NimbusClient client = factory.createClient(nimbusHost, nimbusPort);
+    /**
+     * Prepare put file entries before put to hosts.<br>
+     * <ul>
+     * <li>If put to multiple hosts, read source files once to buffer shared by all hosts.
+     * Total size of heap buffers is limited to 1/4 of max heap, and files beyond it are memory mapped.</li>
+     * <li>If chunked put mode, calculate chunk digests of source files larger than chunk size.</li>
+     * <li>If skip unchanged mode, calculate source digests once to compare with each remote file.</li>
+     * <li>If staging store mode, calculate source digests once to use as blob name.</li>
+     * </ul>
+     * 
+     * @param entries Put file entries
+     * @param hostCount Target host count
+     * @param setting Put setting
+     * @throws IOException Source file read failed
+     */
+    private void prepareEntries(List<PutFileEntry> entries, int hostCount,
+            ConfigPutSetting setting) throws IOException
+    {
+        long heapBudget = Runtime.getRuntime().maxMemory() / HEAP_BUDGET_DIVISOR;
+        long heapBytes = 0L;
+        for (PutFileEntry entry : entries)
+        {
+            if (hostCount > 1)
+            {
+                long heapThreshold = setting.getHeapBufferThreshold();
+                if (heapBytes + entry.getSrcFile().length() > heapBudget)
+                {
+                    // Heap budget is used up, so map file instead of reading to heap.
+                    heapThreshold = 0L;
+                }
 
-        ClusterSummary clusterSummary = client.getClient().getClusterInfo();
+                entry.loadBuffer(heapThreshold);
+                if (entry.getBuffer() != null && entry.getBuffer().isMapped() == false)
+                {
+                    heapBytes += entry.getBuffer().length();
+                }
+            }
 
-        List<SupervisorSummary> supervisors = clusterSummary.get_supervisors();
+            long chunkSize = setting.getChunkSize();
+            if (chunkSize > 0 && entry.getSrcFile().length() > chunkSize)
+            {
+                entry.setChunkDigests(FileChunkDigests.calculate(entry, chunkSize));
+            }
 
-        // Check Name > IPAddress convert check
-        for (SupervisorSummary supervisor : supervisors)
+            if (setting.isSkipUnchanged() == false && setting.getStoreDir() == null)
+            {
+                continue;
+            }
+
+            if (entry.getChunkDigests() != null)
+            {
+                entry.setDigest(entry.getChunkDigests().getFileDigest());
+            }
+            else if (entry.getBuffer() != null)
+            {
+                entry.setDigest(entry.getBuffer().md5());
+            }
+            else
+            {
+                entry.setDigest(Files.hash(entry.getSrcFile(), Hashing.md5()).toString());
+            }
+        }
+    }
+
+    /**
+     * Release buffers of put file entries.
+     * 
+     * @param entries Put file entries
+     */
+    private void releaseBuffers(List<PutFileEntry> entries)
+    {
+        for (PutFileEntry entry : entries)
         {
-            InetAddress.getByName(supervisor.get_host());
+            entry.releaseBuffer();
         }
+    }
 
-        String localHostName = InetAddress.getLocalHost().getHostName();
+    /**
+     * Put config file to all target hosts in parallel.<br>
+     * Put to each host is executed by bounded worker pool, and failure of one host does not stop put to other hosts.<br>
+     * If relay mode, hosts which receive all entries are put by relay tree.
+     * 
+     * @param targetEntries Remote hosts and put file entries of each host
+     * @param entries All put file entries
+     * @param setting Put setting
+     * @param globalLimiter Bandwidth limiter shared by all clusters(null if unlimited)
+     * @param resolver Resolver which has cached addresses of target hosts
+     * @return Put results of each host(same order as target hosts)
+     */
+    private List<ConfigPutResult> putConfigToRemotes(
+            Map<String, List<PutFileEntry>> targetEntries, List<PutFileEntry> entries,
+            ConfigPutSetting setting, RateLimiter globalLimiter, HostAddressResolver resolver)
+    {
+        List<ConfigPutResult> results = new ArrayList<>();
+        if (targetEntries.isEmpty())
+        {
+            return results;
+        }
 
-        // Put config file.
-        // If target host is localhost and dstination path equals source path, no need to put and skip.
-        for (SupervisorSummary supervisor : supervisors)
+        final RemoteFilePutter putter = new RemoteFilePutter(setting, globalLimiter, resolver);
+        List<String> targetHosts = new ArrayList<>(targetEntries.keySet());
+        int poolSize = Math.min(setting.getParallelism(), targetHosts.size());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                new ThreadFactoryBuilder().setNameFormat("ConfigPut-%d").setDaemon(true).build());
+
+        Map<String, ConfigPutResult> resultMap = new HashMap<>();
+        long startTime = System.nanoTime();
+        try
         {
-            if (localHostName.equals(supervisor.get_host()) && srcPath.equals(dstPath))
+            Map<String, List<PutFileEntry>> directEntries = targetEntries;
+            if (setting.getRelayFanout() > 0)
             {
-                continue;
+                directEntries = new LinkedHashMap<>();
+                List<String> relayHosts = new ArrayList<>();
+                for (Map.Entry<String, List<PutFileEntry>> targetEntry : targetEntries.entrySet())
+                {
+                    if (targetEntry.getValue() == entries)
+                    {
+                        relayHosts.add(targetEntry.getKey());
+                    }
+                    else
+                    {
+                        directEntries.put(targetEntry.getKey(), targetEntry.getValue());
+                    }
+                }
+
+                RelayDistributor distributor = new RelayDistributor(setting, putter);
+                for (ConfigPutResult result : distributor.distribute(relayHosts, entries))
+                {
+                    resultMap.put(result.getTargetHost(), result);
+                }
+            }
+
+            List<String> directHosts = new ArrayList<>(directEntries.keySet());
+            List<Future<ConfigPutResult>> futures = new ArrayList<>();
+            for (final String targetHost : directHosts)
+            {
+                final List<PutFileEntry> hostEntries = directEntries.get(targetHost);
+                futures.add(executor.submit(new Callable<ConfigPutResult>() {
+                    @Override
+                    public ConfigPutResult call()
+                    {
+                        return putter.putWithResult(targetHost, hostEntries);
+                    }
+                }));
+            }
+
+            for (int index = 0; index < futures.size(); index++)
+            {
+                String targetHost = directHosts.get(index);
+                resultMap.put(targetHost, waitResult(targetHost, futures.get(index)));
             }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            putter.close();
+        }
 
-            putConfigToRemote(supervisor.get_host(), sshPort, srcPath, dstPath, userAccount,
-                    userPassword);
+        long totalBytes = 0;
+        for (String targetHost : targetHosts)
+        {
+            ConfigPutResult result = resultMap.get(targetHost);
+            totalBytes += result.getTransferredBytes();
+            results.add(result);
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        long throughput = 0;
+        if (elapsed > 0)
+        {
+            throughput = totalBytes * 1000L / elapsed;
         }
+
+        String logFormat = "Config file put throughput. : TotalBytes={0}, Elapsed={1}ms, Throughput={2}byte/s";
+        logger.info(MessageFormat.format(logFormat, String.valueOf(totalBytes),
+                String.valueOf(elapsed), String.valueOf(throughput)));
+        return results;
     }
 
     /**
-     * Put config file each host.
+     * Wait put result of one host.
      * 
      * @param targetHost Remote host
-     * @param sshPort Ssh port
-     * @param srcPath src Path
-     * @param dstPath dst Path
-     * @param userAccount user account
-     * @param userPassword user password
-     * @throws IOException 
+     * @param future Put future
+     * @return Put result
      */
-    private void putConfigToRemote(String targetHost, int sshPort, String srcPath, String dstPath,
-            String userAccount, String userPassword) throws IOException
+    private ConfigPutResult waitResult(String targetHost, Future<ConfigPutResult> future)
     {
-        Connection connection = new Connection(targetHost, sshPort);
         try
         {
-            connection.connect();
-            boolean authenticated = false;
-            if (StringUtils.isBlank(userPassword))
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return ConfigPutResult.failure(targetHost, 0, ex);
+        }
+        catch (ExecutionException ex)
+        {
+            return ConfigPutResult.failure(targetHost, 0, ex.getCause());
+        }
+    }
+
+    /**
+     * Log put results of each cluster.<br>
+     * If multiple clusters are put, log result of each cluster after results of its hosts.
+     * 
+     * @param reports Map of config path and report of the cluster(null if put to the cluster failed)
+     * @return true if put succeeded at all hosts of all clusters
+     */
+    private boolean logClusterResults(Map<String, ConfigPutReport> reports)
+    {
+        boolean succeeded = true;
+        for (Map.Entry<String, ConfigPutReport> clusterReport : reports.entrySet())
+        {
+            ConfigPutReport report = clusterReport.getValue();
+            boolean clusterSucceeded = report != null && logResults(report.getResults());
+            if (reports.size() > 1)
             {
-                authenticated = connection.authenticateWithNone(userAccount);
+                String logFormat = "Cluster config put finished. : ConfigPath={0}, Succeeded={1}";
+                logger.info(MessageFormat.format(logFormat, clusterReport.getKey(),
+                        clusterSucceeded));
+            }
+            succeeded = succeeded && clusterSucceeded;
+        }
+
+        return succeeded;
+    }
+
+    /**
+     * Log put results of each host.
+     * 
+     * @param results Put results
+     * @return true if put succeeded at all hosts
+     */
+    private boolean logResults(List<ConfigPutResult> results)
+    {
+        markStragglers(results);
+
+        int failedCount = 0;
+        int skippedCount = 0;
+        List<String> stragglers = new ArrayList<>();
+        for (ConfigPutResult result : results)
+        {
+            if (result.isSkipped())
+            {
+                skippedCount++;
+                String logFormat = "Config file put skipped, remote file is unchanged. : TargetHost={0}, Elapsed={1}ms";
+                logger.info(MessageFormat.format(logFormat, result.getTargetHost(),
+                        String.valueOf(result.getElapsedMillis())));
+            }
+            else if (result.isSuccess())
+            {
+                String logFormat = "Config file put succeeded. : TargetHost={0}, Elapsed={1}ms, Bytes={2}, Throughput={3}byte/s, Attempts={4}";
+                logger.info(MessageFormat.format(logFormat, result.getTargetHost(),
+                        String.valueOf(result.getElapsedMillis()),
+                        String.valueOf(result.getTransferredBytes()),
+                        String.valueOf(result.getThroughput()), result.getAttempts()));
             }
             else
             {
-                authenticated = connection.authenticateWithPassword(userAccount, userPassword);
+                failedCount++;
+                String logFormat = "Config file put failed. : TargetHost={0}, Elapsed={1}ms, Attempts={2}";
+                logger.error(MessageFormat.format(logFormat, result.getTargetHost(),
+                        String.valueOf(result.getElapsedMillis()), result.getAttempts()),
+                        result.getCause());
             }
 
-            if (authenticated == false)
+            if (result.isStraggler())
             {
-                String errFormat = "Login failed. Exit tool. TargetHost={0}, User={1}";
-                throw new InitFailException(
-                        MessageFormat.format(errFormat, targetHost, userAccount));
+                stragglers.add(result.getTargetHost());
             }
-
-            putFile(connection, srcPath, dstPath);
         }
-        finally
+
+        if (stragglers.isEmpty() == false)
         {
-            connection.close();
+            String logFormat = "Straggler hosts found. Check network or disk of these hosts. : Hosts={0}";
+            logger.warn(MessageFormat.format(logFormat, stragglers));
         }
 
+        String logFormat = "Config file put finished. : Total={0}, Succeeded={1}, Skipped={2}, Failed={3}";
+        logger.info(MessageFormat.format(logFormat, results.size(),
+                results.size() - failedCount - skippedCount, skippedCount, failedCount));
+        return failedCount == 0;
     }
 
     /**
-     * Put file to remote server.
+     * Mark hosts whose elapsed time is much longer than median of succeeded hosts as straggler.
      * 
-     * @param connection Ssh Connection 
-     * @param srcPath src Path
-     * @param dstPath dst Path
-     * @throws IOException Put failed
+     * @param results Put results
      */
-    private void putFile(Connection connection, String srcPath, String dstPath) throws IOException
+    private void markStragglers(List<ConfigPutResult> results)
     {
-        SCPClient client = new SCPClient(connection);
-
-        File srcFile = new File(srcPath);
-        String dstFileDir = StringUtils.substringBeforeLast(dstPath, PATH_DELIMETER);
-        String dstFileName = StringUtils.substringAfterLast(dstPath, PATH_DELIMETER);
+        List<Long> elapsedList = new ArrayList<>();
+        for (ConfigPutResult result : results)
+        {
+            if (result.isSuccess())
+            {
+                elapsedList.add(result.getElapsedMillis());
+            }
+        }
 
-        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(srcFile));
-                SCPOutputStream out = client.put(dstFileName, srcFile.length(), dstFileDir, "0664");)
+        if (elapsedList.size() < 2)
         {
-            IOUtils.copy(in, out);
+            return;
         }
-        catch (IOException ex)
+
+        Collections.sort(elapsedList);
+        long median = elapsedList.get(elapsedList.size() / 2);
+        for (ConfigPutResult result : results)
         {
-            throw ex;
+            if (result.isSuccess() && result.getElapsedMillis() > median * STRAGGLER_RATIO)
+            {
+                result.setStraggler(true);
+            }
         }
     }
 
@@ -305,21 +950,28 @@ public class ConfigPutTool
         // Config path option
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Storm config path");
-        OptionBuilder.withDescription("Storm config path");
+        OptionBuilder.withDescription("Storm config path(can be specified multiple times to put to multiple clusters)");
         OptionBuilder.isRequired(false);
         Option configOption = OptionBuilder.create("c");
 
+        // Cluster parallelism option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Cluster parallelism");
+        OptionBuilder.withDescription("Max clusters put at once(default is all clusters)");
+        OptionBuilder.isRequired(false);
+        Option clusterParallelismOption = OptionBuilder.create("cp");
+
         // Source config path option
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Source config path");
-        OptionBuilder.withDescription("Source config path");
+        OptionBuilder.withDescription("Source config path(file or directory, can be specified multiple times)");
         OptionBuilder.isRequired(true);
         Option sourceOption = OptionBuilder.create("s");
 
         // Destination config path option
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Destination config path");
-        OptionBuilder.withDescription("Destination config path");
+        OptionBuilder.withDescription("Destination config path(specify same times as source path)");
         OptionBuilder.isRequired(true);
         Option destinationOption = OptionBuilder.create("d");
 
@@ -344,16 +996,137 @@ public class ConfigPutTool
         OptionBuilder.isRequired(false);
         Option sshPortOption = OptionBuilder.create("sp");
 
+        // Put parallelism option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Put parallelism");
+        OptionBuilder.withDescription("Put parallelism");
+        OptionBuilder.isRequired(false);
+        Option parallelismOption = OptionBuilder.create("pl");
+
+        // Skip unchanged option
+        OptionBuilder.withDescription("Skip put to host which has same file");
+        OptionBuilder.isRequired(false);
+        Option skipOption = OptionBuilder.create("sk");
+
+        // Zookeeper discovery option
+        OptionBuilder.withDescription("Get supervisor hosts from storm's zookeeper instead of nimbus");
+        OptionBuilder.isRequired(false);
+        Option zookeeperOption = OptionBuilder.create("zk");
+
+        // Heap buffer threshold option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Heap buffer threshold(Byte)");
+        OptionBuilder.withDescription("Max source file size(Byte) read to heap, larger file is memory mapped. Files beyond 1/4 of max heap in total are also memory mapped");
+        OptionBuilder.isRequired(false);
+        Option thresholdOption = OptionBuilder.create("bt");
+
+        // Chunk size option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Chunk size(Byte)");
+        OptionBuilder.withDescription("Chunk size(Byte) of resumable chunked put for larger file");
+        OptionBuilder.isRequired(false);
+        Option chunkOption = OptionBuilder.create("ck");
+
+        // Store directory option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Store directory");
+        OptionBuilder.withDescription("Content addressed staging store directory on supervisors. Same content is put once and placed by copy");
+        OptionBuilder.isRequired(false);
+        Option storeOption = OptionBuilder.create("cs");
+
+        // Store hardlink option
+        OptionBuilder.withDescription("Place destinations by hardlink from staging store instead of copy. Destinations must not be modified in place");
+        OptionBuilder.isRequired(false);
+        Option storeLinkOption = OptionBuilder.create("cl");
+
+        // Relay fan-out option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Relay fan-out");
+        OptionBuilder.withDescription("Relay fan-out. Supervisors which received files forward them to next supervisors");
+        OptionBuilder.isRequired(false);
+        Option relayOption = OptionBuilder.create("rf");
+
+        // Relay host key check skip option
+        OptionBuilder.withDescription("Skip host key check of relay ssh between supervisors. Use only in trusted network");
+        OptionBuilder.isRequired(false);
+        Option relayKeyCheckOption = OptionBuilder.create("rk");
+
+        // Global bandwidth option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Bandwidth limit(Byte/Sec)");
+        OptionBuilder.withDescription("Bandwidth limit(Byte/Sec) shared by all hosts. Relay streams share it by pv on supervisors");
+        OptionBuilder.isRequired(false);
+        Option globalBandwidthOption = OptionBuilder.create("bw");
+
+        // Host bandwidth option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Host bandwidth limit(Byte/Sec)");
+        OptionBuilder.withDescription("Bandwidth limit(Byte/Sec) of each host. Relay stream is limited by pv on supervisors");
+        OptionBuilder.isRequired(false);
+        Option hostBandwidthOption = OptionBuilder.create("hb");
+
+        // Connect timeout option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Connect timeout(Millisecond)");
+        OptionBuilder.withDescription("Ssh connect timeout(Millisecond) of each host");
+        OptionBuilder.isRequired(false);
+        Option connectTimeoutOption = OptionBuilder.create("ct");
+
+        // Transfer timeout option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Transfer timeout(Millisecond)");
+        OptionBuilder.withDescription("Transfer timeout(Millisecond) of each host attempt and relay. 0 means no timeout(relay times out in 600000)");
+        OptionBuilder.isRequired(false);
+        Option transferTimeoutOption = OptionBuilder.create("tt");
+
+        // Retry count option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Retry count");
+        OptionBuilder.withDescription("Retry count of each host when put failed");
+        OptionBuilder.isRequired(false);
+        Option retryOption = OptionBuilder.create("rt");
+
+        // Retry backoff option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Retry backoff(Millisecond)");
+        OptionBuilder.withDescription("Base backoff(Millisecond) before retry, doubled each retry");
+        OptionBuilder.isRequired(false);
+        Option backoffOption = OptionBuilder.create("rb");
+
+        // Report path option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Report path");
+        OptionBuilder.withDescription("Run report output path. Json format, or csv format if path ends with \".csv\"");
+        OptionBuilder.isRequired(false);
+        Option reportOption = OptionBuilder.create("rp");
+
         // ヘルプオプション
         OptionBuilder.withDescription("show help");
         Option helpOption = OptionBuilder.create("sh");
 
         cliOptions.addOption(configOption);
+        cliOptions.addOption(clusterParallelismOption);
         cliOptions.addOption(sourceOption);
         cliOptions.addOption(destinationOption);
         cliOptions.addOption(accountOption);
         cliOptions.addOption(passwordOption);
         cliOptions.addOption(sshPortOption);
+        cliOptions.addOption(parallelismOption);
+        cliOptions.addOption(skipOption);
+        cliOptions.addOption(zookeeperOption);
+        cliOptions.addOption(thresholdOption);
+        cliOptions.addOption(chunkOption);
+        cliOptions.addOption(storeOption);
+        cliOptions.addOption(storeLinkOption);
+        cliOptions.addOption(relayOption);
+        cliOptions.addOption(relayKeyCheckOption);
+        cliOptions.addOption(globalBandwidthOption);
+        cliOptions.addOption(hostBandwidthOption);
+        cliOptions.addOption(connectTimeoutOption);
+        cliOptions.addOption(transferTimeoutOption);
+        cliOptions.addOption(retryOption);
+        cliOptions.addOption(backoffOption);
+        cliOptions.addOption(reportOption);
         cliOptions.addOption(helpOption);
         return cliOptions;
     }
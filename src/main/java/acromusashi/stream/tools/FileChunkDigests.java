@@ -0,0 +1,142 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.output.TeeOutputStream;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Md5 digests of each fixed size chunk and whole content of put source file.
+ *
+ * @author kimura
+ */
+public class FileChunkDigests
+{
+    /** Chunk size(byte) */
+    private final long         chunkSize;
+
+    /** File length(byte) */
+    private final long         fileLength;
+
+    /** Digest of each chunk */
+    private final List<String> chunkDigests;
+
+    /** Digest of whole file */
+    private final String       fileDigest;
+
+    /**
+     * Constructor
+     *
+     * @param chunkSize Chunk size(byte)
+     * @param fileLength File length(byte)
+     * @param chunkDigests Digest of each chunk
+     * @param fileDigest Digest of whole file
+     */
+    private FileChunkDigests(long chunkSize, long fileLength, List<String> chunkDigests,
+            String fileDigest)
+    {
+        this.chunkSize = chunkSize;
+        this.fileLength = fileLength;
+        this.chunkDigests = Collections.unmodifiableList(chunkDigests);
+        this.fileDigest = fileDigest;
+    }
+
+    /**
+     * Calculate chunk digests and whole file digest by reading source file once.
+     *
+     * @param entry Put file entry
+     * @param chunkSize Chunk size(byte)
+     * @return Calculated digests
+     * @throws IOException Source file read failed
+     */
+    public static FileChunkDigests calculate(PutFileEntry entry, long chunkSize)
+            throws IOException
+    {
+        long fileLength = entry.getSrcFile().length();
+        Hasher fileHasher = Hashing.md5().newHasher();
+        OutputStream fileStream = Funnels.asOutputStream(fileHasher);
+        List<String> chunkDigests = new ArrayList<>();
+
+        for (long offset = 0; offset < fileLength; offset += chunkSize)
+        {
+            long length = Math.min(chunkSize, fileLength - offset);
+            Hasher chunkHasher = Hashing.md5().newHasher();
+            OutputStream out = new TeeOutputStream(fileStream,
+                    Funnels.asOutputStream(chunkHasher));
+            entry.writeTo(out, offset, length);
+            chunkDigests.add(chunkHasher.hash().toString());
+        }
+
+        return new FileChunkDigests(chunkSize, fileLength, chunkDigests, fileHasher.hash().toString());
+    }
+
+    /**
+     * Get chunk count.
+     *
+     * @return Chunk count
+     */
+    public int getChunkCount()
+    {
+        return this.chunkDigests.size();
+    }
+
+    /**
+     * Get start offset of chunk.
+     *
+     * @param index Chunk index
+     * @return Start offset
+     */
+    public long getChunkOffset(int index)
+    {
+        return this.chunkSize * index;
+    }
+
+    /**
+     * Get length of chunk.
+     *
+     * @param index Chunk index
+     * @return Chunk length
+     */
+    public long getChunkLength(int index)
+    {
+        return Math.min(this.chunkSize, this.fileLength - getChunkOffset(index));
+    }
+
+    /**
+     * Get digest of chunk.
+     *
+     * @param index Chunk index
+     * @return Chunk digest
+     */
+    public String getChunkDigest(int index)
+    {
+        return this.chunkDigests.get(index);
+    }
+
+    /**
+     * @return the fileDigest
+     */
+    public String getFileDigest()
+    {
+        return this.fileDigest;
+    }
+}
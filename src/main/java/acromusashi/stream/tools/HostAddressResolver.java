@@ -0,0 +1,223 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Resolve host names concurrently, and cache resolved addresses for short time.<br>
+ * Connections to hosts use cached addresses, so host names are resolved only once in one run.
+ *
+ * @author kimura
+ */
+public class HostAddressResolver
+{
+    /** Max resolve thread count */
+    private static final int                 MAX_RESOLVE_THREADS = 16;
+
+    /** Resolved address cache */
+    private final Cache<String, InetAddress> addressCache;
+
+    /** Resolve timeout(millisecond) of all hosts */
+    private final long                       resolveTimeout;
+
+    /** Elapsed time(millisecond) of last resolve of each host */
+    private final Map<String, Long>          resolveMillis       = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param cacheTtl Resolved address cache ttl(millisecond)
+     * @param resolveTimeout Resolve timeout(millisecond) of all hosts
+     */
+    public HostAddressResolver(long cacheTtl, long resolveTimeout)
+    {
+        this.addressCache = CacheBuilder.newBuilder().expireAfterWrite(cacheTtl,
+                TimeUnit.MILLISECONDS).build();
+        this.resolveTimeout = resolveTimeout;
+    }
+
+    /**
+     * Resolve hosts concurrently, and cache resolved addresses.
+     *
+     * @param hosts Host names
+     * @return Map of host name and resolve failure cause(empty if all hosts resolved)
+     */
+    public Map<String, UnknownHostException> resolveAll(Collection<String> hosts)
+    {
+        Map<String, UnknownHostException> failures = new LinkedHashMap<>();
+        if (hosts.isEmpty())
+        {
+            return failures;
+        }
+
+        List<String> targetHosts = new ArrayList<>(hosts);
+        int poolSize = Math.min(MAX_RESOLVE_THREADS, targetHosts.size());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                new ThreadFactoryBuilder().setNameFormat("HostResolve-%d").setDaemon(true).build());
+
+        try
+        {
+            List<Future<InetAddress>> futures = new ArrayList<>();
+            for (final String host : targetHosts)
+            {
+                futures.add(executor.submit(new Callable<InetAddress>() {
+                    @Override
+                    public InetAddress call() throws UnknownHostException
+                    {
+                        long startTime = System.nanoTime();
+                        try
+                        {
+                            return resolve(host);
+                        }
+                        finally
+                        {
+                            HostAddressResolver.this.resolveMillis.put(host,
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                        }
+                    }
+                }));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.resolveTimeout);
+            for (int index = 0; index < futures.size(); index++)
+            {
+                String host = targetHosts.get(index);
+                UnknownHostException failure = waitResolved(host, futures.get(index), deadline);
+                if (failure != null)
+                {
+                    failures.put(host, failure);
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return failures;
+    }
+
+    /**
+     * Get elapsed time of last concurrent resolve of host.
+     *
+     * @param host Host name
+     * @return Elapsed time(millisecond). null if host is not resolved yet or resolve timed out.
+     */
+    public Long getResolveMillis(String host)
+    {
+        return this.resolveMillis.get(host);
+    }
+
+    /**
+     * Resolve host. If address is cached, return cached address.
+     *
+     * @param host Host name
+     * @return Resolved address
+     * @throws UnknownHostException Resolve failed
+     */
+    public InetAddress resolve(final String host) throws UnknownHostException
+    {
+        try
+        {
+            return this.addressCache.get(host, new Callable<InetAddress>() {
+                @Override
+                public InetAddress call() throws UnknownHostException
+                {
+                    return InetAddress.getByName(host);
+                }
+            });
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof UnknownHostException)
+            {
+                throw (UnknownHostException) ex.getCause();
+            }
+
+            throw createFailure(host, ex.getCause());
+        }
+    }
+
+    /**
+     * Wait resolve result of one host until deadline.
+     *
+     * @param host Host name
+     * @param future Resolve future
+     * @param deadline Deadline(System.nanoTime base)
+     * @return Resolve failure cause(null if resolved)
+     */
+    private UnknownHostException waitResolved(String host, Future<InetAddress> future,
+            long deadline)
+    {
+        try
+        {
+            future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return null;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return createFailure(host, ex);
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof UnknownHostException)
+            {
+                return (UnknownHostException) ex.getCause();
+            }
+
+            return createFailure(host, ex.getCause());
+        }
+        catch (TimeoutException ex)
+        {
+            future.cancel(true);
+            return createFailure(host, ex);
+        }
+    }
+
+    /**
+     * Create resolve failure cause.
+     *
+     * @param host Host name
+     * @param cause Original cause
+     * @return Resolve failure cause
+     */
+    private UnknownHostException createFailure(String host, Throwable cause)
+    {
+        String errFormat = "Host resolve failed. : Host={0}, Cause={1}";
+        UnknownHostException failure = new UnknownHostException(MessageFormat.format(errFormat,
+                host, cause));
+        failure.initCause(cause);
+        return failure;
+    }
+}
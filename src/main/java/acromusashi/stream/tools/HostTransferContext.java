@@ -0,0 +1,179 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Transfer context of put to one host.<br>
+ * Holds bandwidth limiters applied to the host and counts transferred files and bytes.
+ *
+ * @author kimura
+ */
+public class HostTransferContext
+{
+    /** Phase name : Resolve host address(measured by concurrent resolve before put) */
+    public static final String      PHASE_RESOLVE = "resolve";
+
+    /** Phase name : Ssh connect and key exchange */
+    public static final String      PHASE_CONNECT = "connect";
+
+    /** Phase name : Ssh authentication */
+    public static final String      PHASE_AUTH    = "auth";
+
+    /** Phase name : Compare source and remote digests */
+    public static final String      PHASE_DIGEST  = "digest";
+
+    /** Phase name : Copy files by scp */
+    public static final String      PHASE_COPY    = "copy";
+
+    /** Phase name : Relay files from parent host */
+    public static final String      PHASE_RELAY   = "relay";
+
+    /** Bandwidth limiters(global limiter and host limiter) */
+    private final List<RateLimiter> limiters      = new ArrayList<>();
+
+    /** Transferred file count */
+    private int                     transferredFiles;
+
+    /** Transferred bytes */
+    private long                    transferredBytes;
+
+    /** Elapsed time(nanosecond) of each phase. Retried attempts are summed up. */
+    private final Map<String, Long> phaseNanos    = new LinkedHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param globalLimiter Global bandwidth limiter shared by all hosts(null if unlimited)
+     * @param hostBandwidth Bandwidth limit of this host(byte/sec, 0 if unlimited)
+     */
+    public HostTransferContext(RateLimiter globalLimiter, long hostBandwidth)
+    {
+        if (globalLimiter != null)
+        {
+            this.limiters.add(globalLimiter);
+        }
+
+        if (hostBandwidth > 0)
+        {
+            this.limiters.add(RateLimiter.create(hostBandwidth));
+        }
+    }
+
+    /**
+     * Wrap output stream to limit bandwidth and count bytes.
+     *
+     * @param out Output stream
+     * @return Wrapped output stream
+     */
+    public OutputStream wrap(OutputStream out)
+    {
+        return new ThrottledOutputStream(out, this.limiters, this);
+    }
+
+    /**
+     * Count transferred file.
+     */
+    public void addFile()
+    {
+        this.transferredFiles++;
+    }
+
+    /**
+     * Count transferred bytes.
+     *
+     * @param bytes Transferred bytes
+     */
+    public void addBytes(long bytes)
+    {
+        this.transferredBytes += bytes;
+    }
+
+    /**
+     * Add elapsed time of phase from start time to now.
+     *
+     * @param phase Phase name
+     * @param startNanos Phase start time(System.nanoTime base)
+     */
+    public void addPhaseTime(String phase, long startNanos)
+    {
+        long elapsed = System.nanoTime() - startNanos;
+        Long current = this.phaseNanos.get(phase);
+        if (current != null)
+        {
+            elapsed += current.longValue();
+        }
+
+        this.phaseNanos.put(phase, elapsed);
+    }
+
+    /**
+     * Add elapsed time of phases measured by previous attempt. Transferred files and bytes are not carried over.
+     *
+     * @param previous Context of previous attempt
+     */
+    public void addPhaseTimes(HostTransferContext previous)
+    {
+        for (Map.Entry<String, Long> phase : previous.phaseNanos.entrySet())
+        {
+            long elapsed = phase.getValue().longValue();
+            Long current = this.phaseNanos.get(phase.getKey());
+            if (current != null)
+            {
+                elapsed += current.longValue();
+            }
+
+            this.phaseNanos.put(phase.getKey(), elapsed);
+        }
+    }
+
+    /**
+     * Get elapsed time of each phase.
+     *
+     * @return Map of phase name and elapsed time(millisecond)
+     */
+    public Map<String, Long> getPhaseMillis()
+    {
+        Map<String, Long> phaseMillis = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> phase : this.phaseNanos.entrySet())
+        {
+            phaseMillis.put(phase.getKey(), TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+        }
+
+        return phaseMillis;
+    }
+
+    /**
+     * @return the transferredFiles
+     */
+    public int getTransferredFiles()
+    {
+        return this.transferredFiles;
+    }
+
+    /**
+     * @return the transferredBytes
+     */
+    public long getTransferredBytes()
+    {
+        return this.transferredBytes;
+    }
+}
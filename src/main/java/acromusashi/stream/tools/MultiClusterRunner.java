@@ -0,0 +1,170 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Execute same task for multiple storm clusters concurrently.<br>
+ * Each cluster is executed by its own thread with its own nimbus connection and supervisor put pool,
+ * and the number of clusters executed at once is capped by cluster parallelism.<br>
+ * Whole execution time is the time of the slowest cluster, not the sum of all clusters.
+ *
+ * @author kimura
+ */
+public class MultiClusterRunner
+{
+    /** Logger */
+    private static final Logger logger = LoggerFactory.getLogger(MultiClusterRunner.class);
+
+    /** Max clusters executed at once */
+    private final int           parallelism;
+
+    /**
+     * Constructor
+     *
+     * @param parallelism Max clusters executed at once
+     */
+    public MultiClusterRunner(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Execute task for all clusters, and wait all tasks.<br>
+     * Duplicate config paths(same file) are executed once for first path.
+     * If only one cluster is specified, task is executed in current thread.
+     *
+     * @param allConfigPaths Storm config paths of clusters
+     * @param task Task executed for each cluster
+     * @param failureResult Result of cluster which task threw exception or was interrupted
+     * @param <T> Task result type
+     * @return Map of config path and task result(same order as config paths, excluding duplicate paths)
+     */
+    public <T> Map<String, T> run(List<String> allConfigPaths, final ClusterTask<T> task,
+            T failureResult)
+    {
+        List<String> configPaths = removeDuplicates(allConfigPaths);
+        Map<String, T> results = new LinkedHashMap<>();
+        if (configPaths.size() == 1)
+        {
+            String configPath = configPaths.get(0);
+            results.put(configPath, task.execute(configPath));
+            return results;
+        }
+
+        int poolSize = Math.max(Math.min(this.parallelism, configPaths.size()), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                new ThreadFactoryBuilder().setNameFormat("Cluster-%d").setDaemon(true).build());
+        try
+        {
+            List<Future<T>> futures = new ArrayList<>();
+            for (final String configPath : configPaths)
+            {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call()
+                    {
+                        return task.execute(configPath);
+                    }
+                }));
+            }
+
+            for (int index = 0; index < futures.size(); index++)
+            {
+                String configPath = configPaths.get(index);
+                results.put(configPath, waitResult(configPath, futures.get(index), failureResult));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Remove config paths which point same file as preceding path.
+     *
+     * @param configPaths Storm config paths
+     * @return Config paths without duplicates(same order as config paths)
+     */
+    private List<String> removeDuplicates(List<String> configPaths)
+    {
+        List<String> uniquePaths = new ArrayList<>();
+        Set<Path> files = new HashSet<>();
+        for (String configPath : configPaths)
+        {
+            Path file = new File(configPath).getAbsoluteFile().toPath().normalize();
+            if (files.add(file) == false)
+            {
+                String logFormat = "Duplicate config path is ignored. : ConfigPath={0}";
+                logger.warn(MessageFormat.format(logFormat, configPath));
+                continue;
+            }
+
+            uniquePaths.add(configPath);
+        }
+
+        return uniquePaths;
+    }
+
+    /**
+     * Wait task result of one cluster.
+     *
+     * @param configPath Storm config path of the cluster
+     * @param future Task future
+     * @param failureResult Result if task failed
+     * @param <T> Task result type
+     * @return Task result
+     */
+    private <T> T waitResult(String configPath, Future<T> future, T failureResult)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            String logFormat = "Cluster task interrupted. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, configPath), ex);
+        }
+        catch (ExecutionException ex)
+        {
+            String logFormat = "Cluster task failed. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, configPath), ex.getCause());
+        }
+
+        return failureResult;
+    }
+}
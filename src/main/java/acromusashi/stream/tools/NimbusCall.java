@@ -0,0 +1,39 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import org.apache.thrift7.TException;
+
+import backtype.storm.generated.Nimbus;
+
+/**
+ * Call executed with nimbus client borrowed from {@link NimbusClientPool}.<br>
+ * Application errors declared by nimbus(ex. NotAliveException) are not TException in storm,
+ * so they are declared by exception type parameter. Use TException as it if call declares no application error.
+ *
+ * @author kimura
+ * @param <T> Call result type
+ * @param <E> Application error type declared by nimbus
+ */
+public interface NimbusCall<T, E extends Exception>
+{
+    /**
+     * Execute call.
+     *
+     * @param client Nimbus client
+     * @return Call result
+     * @throws TException Nimbus access failed
+     * @throws E Application error declared by nimbus
+     */
+    T call(Nimbus.Client client) throws TException, E;
+}
@@ -0,0 +1,375 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift7.TApplicationException;
+import org.apache.thrift7.TException;
+import org.apache.thrift7.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.generated.AlreadyAliveException;
+import backtype.storm.generated.InvalidTopologyException;
+import backtype.storm.generated.NotAliveException;
+import backtype.storm.utils.NimbusClient;
+import backtype.storm.utils.Utils;
+
+/**
+ * Pool of nimbus thrift connections.<br>
+ * <ul>
+ * <li>Connections are reused by calls, and at most max size connections are opened at same time.</li>
+ * <li>Connection idle longer than validate interval is validated before reuse.</li>
+ * <li>Connection is returned to pool only after success or application error declared by nimbus(ex. NotAliveException).
+ * Connection which caused other error(ex. transport or protocol error) is discarded.</li>
+ * <li>Read only call failed by transport error of reused connection is retried once with new connection.
+ * Other call(ex. kill, upload) is not retried, because nimbus may have executed it already.
+ * Instead, reused connection is always validated before it.</li>
+ * <li>Each call is limited by socket timeout of connection.</li>
+ * </ul>
+ * Pool is shared by nimbus address in one process, so tools executed in resident server reuse same connections.
+ *
+ * @author kimura
+ */
+public class NimbusClientPool
+{
+    /** Default max connection count */
+    public static final int                                      DEFAULT_MAX_SIZE          = 4;
+
+    /** Default validate interval(millisecond) of idle connection */
+    public static final long                                     DEFAULT_VALIDATE_INTERVAL = 30000L;
+
+    /** Default call timeout(millisecond) */
+    public static final int                                      DEFAULT_CALL_TIMEOUT      = 30000;
+
+    /** Shared pools of each nimbus address */
+    private static final ConcurrentMap<String, NimbusClientPool> SHARED_POOLS              = new ConcurrentHashMap<>();
+
+    /** Logger */
+    private static final Logger                                  logger                    = LoggerFactory.getLogger(NimbusClientPool.class);
+
+    /** Nimbus host */
+    private final String                                         nimbusHost;
+
+    /** Nimbus port */
+    private final int                                            nimbusPort;
+
+    /** Validate interval(millisecond) of idle connection */
+    private final long                                           validateInterval;
+
+    /** Call timeout(millisecond) */
+    private final int                                            callTimeout;
+
+    /** Storm config used to create thrift transport */
+    private final Map<String, Object>                            clientConfig;
+
+    /** Permits of opened connections */
+    private final Semaphore                                      permits;
+
+    /** Idle connections. Most recently used connection is first. */
+    private final LinkedBlockingDeque<PooledClient>              idleClients               = new LinkedBlockingDeque<>();
+
+    /**
+     * Constructor
+     *
+     * @param nimbusHost Nimbus host
+     * @param nimbusPort Nimbus port
+     * @param maxSize Max connection count
+     * @param validateInterval Validate interval(millisecond) of idle connection
+     * @param callTimeout Call timeout(millisecond)
+     */
+    public NimbusClientPool(String nimbusHost, int nimbusPort, int maxSize,
+            long validateInterval, int callTimeout)
+    {
+        this.nimbusHost = nimbusHost;
+        this.nimbusPort = nimbusPort;
+        this.validateInterval = validateInterval;
+        this.callTimeout = callTimeout;
+        this.clientConfig = Utils.readStormConfig();
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Get pool shared in this process for nimbus address. If not exist, create pool with default setting.
+     *
+     * @param nimbusHost Nimbus host
+     * @param nimbusPort Nimbus port
+     * @return Shared pool
+     */
+    public static NimbusClientPool getShared(String nimbusHost, int nimbusPort)
+    {
+        String key = nimbusHost + ":" + nimbusPort;
+        NimbusClientPool pool = SHARED_POOLS.get(key);
+        if (pool != null)
+        {
+            return pool;
+        }
+
+        NimbusClientPool created = new NimbusClientPool(nimbusHost, nimbusPort, DEFAULT_MAX_SIZE,
+                DEFAULT_VALIDATE_INTERVAL, DEFAULT_CALL_TIMEOUT);
+        pool = SHARED_POOLS.putIfAbsent(key, created);
+        if (pool == null)
+        {
+            pool = created;
+        }
+
+        return pool;
+    }
+
+    /**
+     * Execute call with pooled connection. Call is not retried, because it may change nimbus state.
+     *
+     * @param call Nimbus call
+     * @param <T> Call result type
+     * @param <E> Application error type declared by nimbus
+     * @return Call result
+     * @throws TException Nimbus access failed
+     * @throws E Application error declared by nimbus
+     */
+    public <T, E extends Exception> T execute(NimbusCall<T, E> call) throws TException, E
+    {
+        return execute(call, false);
+    }
+
+    /**
+     * Execute read only call with pooled connection.<br>
+     * If reused connection failed by transport error, call is retried once with new connection.
+     *
+     * @param call Read only nimbus call
+     * @param <T> Call result type
+     * @param <E> Application error type declared by nimbus
+     * @return Call result
+     * @throws TException Nimbus access failed
+     * @throws E Application error declared by nimbus
+     */
+    public <T, E extends Exception> T executeReadOnly(NimbusCall<T, E> call) throws TException,
+            E
+    {
+        return execute(call, true);
+    }
+
+    /**
+     * Execute call with pooled connection.
+     *
+     * @param call Nimbus call
+     * @param readOnly true if call is read only and can be retried
+     * @param <T> Call result type
+     * @param <E> Application error type declared by nimbus
+     * @return Call result
+     * @throws TException Nimbus access failed
+     * @throws E Application error declared by nimbus
+     */
+    private <T, E extends Exception> T execute(NimbusCall<T, E> call, boolean readOnly)
+            throws TException, E
+    {
+        try
+        {
+            this.permits.acquire();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new TException("Interrupted while waiting nimbus connection.", ex);
+        }
+
+        try
+        {
+            // Non read only call is not retried, so reused connection is validated before it.
+            PooledClient pooled = borrowIdle(readOnly == false);
+            if (pooled != null)
+            {
+                try
+                {
+                    return callAndRelease(pooled, call);
+                }
+                catch (TTransportException ex)
+                {
+                    if (readOnly == false)
+                    {
+                        throw ex;
+                    }
+
+                    // Reused connection may be closed by nimbus. Retry once with new connection.
+                    String logFormat = "Pooled nimbus connection failed, retry with new connection. : Nimbus={0}:{1}";
+                    logger.debug(MessageFormat.format(logFormat, this.nimbusHost,
+                            String.valueOf(this.nimbusPort)), ex);
+                }
+            }
+
+            return callAndRelease(new PooledClient(createClient()), call);
+        }
+        finally
+        {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Close all idle connections.
+     */
+    public void close()
+    {
+        PooledClient pooled = this.idleClients.poll();
+        while (pooled != null)
+        {
+            pooled.client.close();
+            pooled = this.idleClients.poll();
+        }
+    }
+
+    /**
+     * @return the nimbusHost
+     */
+    public String getNimbusHost()
+    {
+        return this.nimbusHost;
+    }
+
+    /**
+     * @return the nimbusPort
+     */
+    public int getNimbusPort()
+    {
+        return this.nimbusPort;
+    }
+
+    /**
+     * Borrow idle connection. Connection idle longer than validate interval is validated.
+     *
+     * @param alwaysValidate true if validate connection regardless of idle time
+     * @return Idle connection(null if no valid idle connection)
+     */
+    private PooledClient borrowIdle(boolean alwaysValidate)
+    {
+        PooledClient pooled = this.idleClients.pollFirst();
+        while (pooled != null)
+        {
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pooled.lastUsedNanos);
+            boolean validateNeeded = alwaysValidate || idleMillis >= this.validateInterval;
+            if (validateNeeded == false || validate(pooled))
+            {
+                return pooled;
+            }
+
+            pooled.client.close();
+            pooled = this.idleClients.pollFirst();
+        }
+
+        return null;
+    }
+
+    /**
+     * Validate connection by light call.
+     *
+     * @param pooled Pooled connection
+     * @return true if connection is valid
+     */
+    private boolean validate(PooledClient pooled)
+    {
+        try
+        {
+            pooled.client.getClient().getNimbusConf();
+            return true;
+        }
+        catch (TException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Execute call, and return connection to pool.<br>
+     * Only application errors declared by nimbus keep connection usable. If other error occured, discard connection,
+     * because unread response may be left in connection.
+     *
+     * @param pooled Pooled connection
+     * @param call Nimbus call
+     * @param <T> Call result type
+     * @param <E> Application error type declared by nimbus
+     * @return Call result
+     * @throws TException Nimbus access failed
+     * @throws E Application error declared by nimbus
+     */
+    private <T, E extends Exception> T callAndRelease(PooledClient pooled, NimbusCall<T, E> call)
+            throws TException, E
+    {
+        boolean reusable = false;
+        try
+        {
+            T result = call.call(pooled.client.getClient());
+            reusable = true;
+            return result;
+        }
+        catch (Exception ex)
+        {
+            // Application error sent by nimbus as complete response does not break connection.
+            reusable = ex instanceof NotAliveException || ex instanceof AlreadyAliveException
+                    || ex instanceof InvalidTopologyException
+                    || ex instanceof TApplicationException;
+            throw ex;
+        }
+        finally
+        {
+            if (reusable)
+            {
+                pooled.lastUsedNanos = System.nanoTime();
+                this.idleClients.offerFirst(pooled);
+            }
+            else
+            {
+                pooled.client.close();
+            }
+        }
+    }
+
+    /**
+     * Create new nimbus connection.
+     *
+     * @return Nimbus client
+     * @throws TTransportException Connect failed
+     */
+    private NimbusClient createClient() throws TTransportException
+    {
+        return new NimbusClient(this.clientConfig, this.nimbusHost, this.nimbusPort, this.callTimeout);
+    }
+
+    /**
+     * Nimbus client in pool.
+     */
+    private static class PooledClient
+    {
+        /** Nimbus client */
+        final NimbusClient client;
+
+        /** Last used time(System.nanoTime base) */
+        long               lastUsedNanos;
+
+        /**
+         * Constructor
+         *
+         * @param client Nimbus client
+         */
+        PooledClient(NimbusClient client)
+        {
+            this.client = client;
+            this.lastUsedNanos = System.nanoTime();
+        }
+    }
+}
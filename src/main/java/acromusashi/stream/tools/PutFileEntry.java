@@ -0,0 +1,242 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Put target file entry.(Local source file and remote destination path.)
+ *
+ * @author kimura
+ */
+public class PutFileEntry
+{
+    /** Path delimeter. The delimeter fix "/", becanse remote host os is only linux.  */
+    private static final String PATH_DELIMETER = "/";
+
+    /** Source file */
+    private final File          srcFile;
+
+    /** Destination path */
+    private final String        dstPath;
+
+    /** Source file digest(null if not calculated) */
+    private String              digest;
+
+    /** Source file buffer shared by all hosts(null if not loaded) */
+    private SourceFileBuffer    buffer;
+
+    /** Source file chunk digests(null if not calculated) */
+    private FileChunkDigests    chunkDigests;
+
+    /**
+     * Constructor
+     *
+     * @param srcFile Source file
+     * @param dstPath Destination path
+     */
+    public PutFileEntry(File srcFile, String dstPath)
+    {
+        this.srcFile = srcFile;
+        this.dstPath = dstPath;
+    }
+
+    /**
+     * Create put file entries from source path and destination path.<br>
+     * If source path is directory, all files under the directory are put under destination directory keeping relative path.
+     *
+     * @param srcPath Source path(file or directory)
+     * @param dstPath Destination path
+     * @return Put file entries
+     * @throws IOException Source path not exist
+     */
+    public static List<PutFileEntry> create(String srcPath, String dstPath) throws IOException
+    {
+        File src = new File(srcPath);
+        if (src.exists() == false)
+        {
+            String errFormat = "Source path not exist. : SrcPath={0}";
+            throw new IOException(MessageFormat.format(errFormat, srcPath));
+        }
+
+        List<PutFileEntry> entries = new ArrayList<>();
+        if (src.isFile())
+        {
+            entries.add(new PutFileEntry(src, dstPath));
+            return entries;
+        }
+
+        String srcBase = src.getAbsolutePath();
+        String dstBase = StringUtils.removeEnd(dstPath, PATH_DELIMETER);
+        Collection<File> files = FileUtils.listFiles(src, null, true);
+        List<File> sortedFiles = new ArrayList<>(files);
+        Collections.sort(sortedFiles);
+
+        for (File file : sortedFiles)
+        {
+            String relativePath = file.getAbsolutePath().substring(srcBase.length());
+            relativePath = relativePath.replace(File.separatorChar, PATH_DELIMETER.charAt(0));
+            entries.add(new PutFileEntry(file, dstBase + relativePath));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Load source file to buffer shared by all hosts.<br>
+     * File larger than 2GB can not be mapped at once, so those file is not loaded and put by stream.
+     *
+     * @param heapThreshold Max file size(byte) read to heap. Larger file is memory mapped.
+     * @throws IOException Load failed
+     */
+    public void loadBuffer(long heapThreshold) throws IOException
+    {
+        if (this.srcFile.length() > Integer.MAX_VALUE)
+        {
+            return;
+        }
+
+        this.buffer = SourceFileBuffer.load(this.srcFile, heapThreshold);
+    }
+
+    /**
+     * Release buffer loaded by {@link #loadBuffer(long)}. Entry is put from file after release.
+     */
+    public void releaseBuffer()
+    {
+        this.buffer = null;
+    }
+
+    /**
+     * Write part of source file to output stream.<br>
+     * If source file is loaded to buffer, write from buffer, else read from file.
+     *
+     * @param out Output stream
+     * @param offset Start offset
+     * @param length Write length
+     * @throws IOException Write failed
+     */
+    public void writeTo(OutputStream out, long offset, long length) throws IOException
+    {
+        if (this.buffer != null)
+        {
+            this.buffer.writeTo(out, (int) offset, (int) length);
+            return;
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(this.srcFile)))
+        {
+            IOUtils.skipFully(in, offset);
+            IOUtils.copyLarge(in, out, 0, length);
+        }
+    }
+
+    /**
+     * Get destination directory.
+     *
+     * @return Destination directory
+     */
+    public String getDstDir()
+    {
+        return StringUtils.substringBeforeLast(this.dstPath, PATH_DELIMETER);
+    }
+
+    /**
+     * Get destination file name.
+     *
+     * @return Destination file name
+     */
+    public String getDstFileName()
+    {
+        return StringUtils.substringAfterLast(this.dstPath, PATH_DELIMETER);
+    }
+
+    /**
+     * @return the srcFile
+     */
+    public File getSrcFile()
+    {
+        return this.srcFile;
+    }
+
+    /**
+     * @return the dstPath
+     */
+    public String getDstPath()
+    {
+        return this.dstPath;
+    }
+
+    /**
+     * @return the digest
+     */
+    public String getDigest()
+    {
+        return this.digest;
+    }
+
+    /**
+     * @param digest the digest to set
+     */
+    public void setDigest(String digest)
+    {
+        this.digest = digest;
+    }
+
+    /**
+     * @return the buffer
+     */
+    public SourceFileBuffer getBuffer()
+    {
+        return this.buffer;
+    }
+
+    /**
+     * @return the chunkDigests
+     */
+    public FileChunkDigests getChunkDigests()
+    {
+        return this.chunkDigests;
+    }
+
+    /**
+     * @param chunkDigests the chunkDigests to set
+     */
+    public void setChunkDigests(FileChunkDigests chunkDigests)
+    {
+        this.chunkDigests = chunkDigests;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "PutFileEntry [srcFile=" + this.srcFile + ", dstPath=" + this.dstPath + "]";
+    }
+}
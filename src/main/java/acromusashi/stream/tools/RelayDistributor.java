@@ -0,0 +1,344 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ch.ethz.ssh2.Connection;
+
+/**
+ * Distribute put files to supervisors by relay tree.<br>
+ * This distributor execute following procedure.<br>
+ * <ol>
+ * <li>Put files from this host to first wave hosts(fan-out count hosts).</li>
+ * <li>Each host which already has files forwards them to fan-out count next hosts by "tar | ssh" on the host.</li>
+ * <li>Repeat until all hosts have files. Holder hosts grow (fan-out + 1) times each wave,
+ * so distribution time grows logarithmically with host count.</li>
+ * </ol>
+ * Relay between supervisors uses ssh public key authentication and known_hosts of supervisor hosts.<br>
+ * If relay to a host failed, files are put to the host from this host directly.<br>
+ * Each wave is executed by own relay pool sized to wave hosts(fan-out x holder hosts),
+ * so relay is not limited by put parallelism.<br>
+ * Relay command is timed out by transfer timeout. If bandwidth is limited, relay stream is limited by "pv -L" on parent host.
+ * Host bandwidth limits each relay stream, and global bandwidth is divided by relay streams of the wave.
+ * If pv is not installed on parent host, relay fails and files are put from this host with bandwidth limit.
+ *
+ * @author kimura
+ */
+public class RelayDistributor
+{
+    /** Relay command timeout(millisecond) used when transfer timeout is not set */
+    private static final long      RELAY_COMMAND_TIMEOUT = 600000L;
+
+    /** Logger */
+    private static final Logger    logger                = LoggerFactory.getLogger(RelayDistributor.class);
+
+    /** Put setting */
+    private final ConfigPutSetting setting;
+
+    /** Put files from this host */
+    private final RemoteFilePutter putter;
+
+    /**
+     * Constructor
+     *
+     * @param setting Put setting
+     * @param putter Put files from this host
+     */
+    public RelayDistributor(ConfigPutSetting setting, RemoteFilePutter putter)
+    {
+        this.setting = setting;
+        this.putter = putter;
+    }
+
+    /**
+     * Distribute put files to target hosts.
+     *
+     * @param targetHosts Remote hosts
+     * @param entries Put file entries
+     * @return Put results of each host(same order as target hosts)
+     */
+    public List<ConfigPutResult> distribute(List<String> targetHosts,
+            final List<PutFileEntry> entries)
+    {
+        int fanout = this.setting.getRelayFanout();
+        Deque<String> pendingHosts = new ArrayDeque<>(targetHosts);
+        List<String> holderHosts = new ArrayList<>();
+        Map<String, ConfigPutResult> resultMap = new HashMap<>();
+        int wave = 0;
+
+        while (pendingHosts.isEmpty() == false)
+        {
+            List<String> waveHosts = new ArrayList<>();
+            List<Callable<ConfigPutResult>> tasks = new ArrayList<>();
+
+            if (holderHosts.isEmpty())
+            {
+                // No host has files yet, put from this host directly.
+                for (int count = 0; count < fanout && pendingHosts.isEmpty() == false; count++)
+                {
+                    final String targetHost = pendingHosts.poll();
+                    waveHosts.add(targetHost);
+                    tasks.add(new Callable<ConfigPutResult>() {
+                        @Override
+                        public ConfigPutResult call()
+                        {
+                            return RelayDistributor.this.putter.putWithResult(targetHost, entries);
+                        }
+                    });
+                }
+            }
+            else
+            {
+                final long bandwidth = decideRelayBandwidth(Math.min(pendingHosts.size(),
+                        holderHosts.size() * fanout));
+                for (final String parentHost : holderHosts)
+                {
+                    for (int count = 0; count < fanout && pendingHosts.isEmpty() == false; count++)
+                    {
+                        final String targetHost = pendingHosts.poll();
+                        waveHosts.add(targetHost);
+                        tasks.add(new Callable<ConfigPutResult>() {
+                            @Override
+                            public ConfigPutResult call()
+                            {
+                                return relayWithResult(parentHost, targetHost, entries,
+                                        bandwidth);
+                            }
+                        });
+                    }
+                }
+            }
+
+            List<ConfigPutResult> waveResults = executeWave(waveHosts, tasks);
+            int succeeded = 0;
+            for (ConfigPutResult result : waveResults)
+            {
+                resultMap.put(result.getTargetHost(), result);
+                if (result.isSuccess())
+                {
+                    holderHosts.add(result.getTargetHost());
+                    succeeded++;
+                }
+            }
+
+            String logFormat = "Relay wave finished. : Wave={0}, Hosts={1}, Succeeded={2}, Remaining={3}";
+            logger.info(MessageFormat.format(logFormat, wave, waveHosts.size(), succeeded,
+                    pendingHosts.size()));
+            wave++;
+        }
+
+        List<ConfigPutResult> results = new ArrayList<>();
+        for (String targetHost : targetHosts)
+        {
+            results.add(resultMap.get(targetHost));
+        }
+
+        return results;
+    }
+
+    /**
+     * Execute tasks of one wave in parallel by relay pool sized to wave, and wait all tasks.
+     *
+     * @param waveHosts Target hosts of this wave
+     * @param tasks Put or relay tasks(same order as target hosts)
+     * @return Put results
+     */
+    private List<ConfigPutResult> executeWave(List<String> waveHosts,
+            List<Callable<ConfigPutResult>> tasks)
+    {
+        List<ConfigPutResult> results = new ArrayList<>();
+        List<Future<ConfigPutResult>> futures = new ArrayList<>();
+        ExecutorService relayPool = Executors.newFixedThreadPool(tasks.size(),
+                new ThreadFactoryBuilder().setNameFormat("ConfigRelay-%d").setDaemon(true).build());
+        try
+        {
+            for (Callable<ConfigPutResult> task : tasks)
+            {
+                futures.add(relayPool.submit(task));
+            }
+
+            for (int index = 0; index < futures.size(); index++)
+            {
+                String targetHost = waveHosts.get(index);
+                try
+                {
+                    results.add(futures.get(index).get());
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    results.add(ConfigPutResult.failure(targetHost, 0, ex));
+                }
+                catch (ExecutionException ex)
+                {
+                    results.add(ConfigPutResult.failure(targetHost, 0, ex.getCause()));
+                }
+            }
+        }
+        finally
+        {
+            relayPool.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Relay files from parent host to target host.<br>
+     * If relay failed, put files from this host directly.
+     *
+     * @param parentHost Parent host which already has files
+     * @param targetHost Remote host
+     * @param entries Put file entries
+     * @param bandwidth Bandwidth limit(byte/sec) of relay stream. 0 means unlimited.
+     * @return Put result
+     */
+    private ConfigPutResult relayWithResult(String parentHost, String targetHost,
+            List<PutFileEntry> entries, long bandwidth)
+    {
+        long startTime = System.nanoTime();
+        // Relay stream is limited on parent host, so context only measures phase times.
+        HostTransferContext context = new HostTransferContext(null, 0);
+        try
+        {
+            relay(parentHost, targetHost, entries, bandwidth, context);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            // Bytes are transferred from parent host, not from this host.
+            ConfigPutResult result = ConfigPutResult.success(targetHost, elapsed, 0);
+            result.addPhaseMillis(context.getPhaseMillis());
+            return result;
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            String logFormat = "Relay failed, put directly. : ParentHost={0}, TargetHost={1}";
+            logger.warn(MessageFormat.format(logFormat, parentHost, targetHost), ex);
+        }
+
+        return this.putter.putWithResult(targetHost, entries);
+    }
+
+    /**
+     * Relay files from parent host to target host by "tar | ssh" executed on parent host.
+     *
+     * @param parentHost Parent host which already has files
+     * @param targetHost Remote host
+     * @param entries Put file entries
+     * @param bandwidth Bandwidth limit(byte/sec) of relay stream. 0 means unlimited.
+     * @param context Host transfer context. Elapsed time of phases are added to it.
+     * @throws IOException Relay failed
+     */
+    private void relay(String parentHost, String targetHost, List<PutFileEntry> entries,
+            long bandwidth, HostTransferContext context) throws IOException
+    {
+        long timeout = RELAY_COMMAND_TIMEOUT;
+        if (this.setting.getTransferTimeout() > 0)
+        {
+            timeout = this.setting.getTransferTimeout();
+        }
+
+        Connection connection = this.putter.connect(parentHost, context);
+        try
+        {
+            long relayStart = System.nanoTime();
+            SshCommandResult result = SshCommandExecutor.execute(connection,
+                    createRelayCommand(targetHost, entries, bandwidth), timeout);
+            context.addPhaseTime(HostTransferContext.PHASE_RELAY, relayStart);
+            if (result.isSuccess() == false)
+            {
+                String errFormat = "Relay command failed. : ExitStatus={0}, Message={1}";
+                throw new IOException(MessageFormat.format(errFormat, result.getExitStatus(),
+                        result.getStderr()));
+            }
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    /**
+     * Decide bandwidth limit of each relay stream.<br>
+     * Host bandwidth limits each stream, and global bandwidth is divided by relay streams executed at once.
+     *
+     * @param relayCount Relay streams executed at once
+     * @return Bandwidth limit(byte/sec). 0 means unlimited.
+     */
+    long decideRelayBandwidth(int relayCount)
+    {
+        long bandwidth = this.setting.getHostBandwidth();
+        if (this.setting.getGlobalBandwidth() > 0 && relayCount > 0)
+        {
+            long share = Math.max(1L, this.setting.getGlobalBandwidth() / relayCount);
+            if (bandwidth <= 0 || share < bandwidth)
+            {
+                bandwidth = share;
+            }
+        }
+
+        return bandwidth;
+    }
+
+    /**
+     * Create relay command executed on parent host.<br>
+     * All files are sent by one tar stream over one ssh connection. Tar keeps absolute path, so destination directories are created automatically.<br>
+     * Login shell of user may not be bash, so pipeline is executed by "bash -c" to use pipefail.
+     *
+     * @param targetHost Remote host
+     * @param entries Put file entries
+     * @param bandwidth Bandwidth limit(byte/sec) of relay stream. 0 means unlimited.
+     * @return Relay command
+     */
+    String createRelayCommand(String targetHost, List<PutFileEntry> entries, long bandwidth)
+    {
+        StringBuilder pipeline = new StringBuilder("set -o pipefail; tar -cPf -");
+        for (PutFileEntry entry : entries)
+        {
+            pipeline.append(' ').append(SshCommandExecutor.quote(entry.getDstPath()));
+        }
+
+        if (bandwidth > 0)
+        {
+            pipeline.append(" | pv -q -L ").append(bandwidth);
+        }
+
+        pipeline.append(" | ssh -o BatchMode=yes");
+        if (this.setting.isRelayHostKeyCheckSkip())
+        {
+            pipeline.append(" -o StrictHostKeyChecking=no");
+        }
+
+        pipeline.append(" -p ").append(this.setting.getSshPort()).append(' ');
+        pipeline.append(SshCommandExecutor.quote(this.setting.getUserAccount() + "@" + targetHost));
+        pipeline.append(" 'tar -xPf -'");
+        return "bash -c " + SshCommandExecutor.quote(pipeline.toString());
+    }
+}
@@ -0,0 +1,463 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import acromusashi.stream.exception.InitFailException;
+import ch.ethz.ssh2.Connection;
+import ch.ethz.ssh2.SCPClient;
+import ch.ethz.ssh2.SCPOutputStream;
+
+/**
+ * Put files to one remote host by scp.<br>
+ * All files are put through one authenticated ssh connection.
+ *
+ * @author kimura
+ */
+public class RemoteFilePutter
+{
+    /** Remote digest command. md5sum is contained coreutils, so available at all supervisors. */
+    private static final String            REMOTE_DIGEST_COMMAND = "md5sum";
+
+    /** Remote directory create command */
+    private static final String            REMOTE_MKDIR_COMMAND  = "mkdir -p";
+
+    /** Put file mode */
+    private static final String            FILE_MODE             = "0664";
+
+    /** Chunk command timeout(millisecond). Concatenate and verify large file takes time. */
+    private static final long              CHUNK_COMMAND_TIMEOUT = 600000L;
+
+    /** Max retry backoff(millisecond) */
+    private static final long              MAX_RETRY_BACKOFF     = 30000L;
+
+    /** Logger */
+    private static final Logger            logger                = LoggerFactory.getLogger(RemoteFilePutter.class);
+
+    /** Put setting */
+    private final ConfigPutSetting         setting;
+
+    /** Bandwidth limiter shared by all hosts and clusters(null if unlimited) */
+    private final RateLimiter              globalLimiter;
+
+    /** Resolver which has cached addresses of remote hosts */
+    private final HostAddressResolver      resolver;
+
+    /** Watchdog to close connection exceeded transfer timeout */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Constructor
+     *
+     * @param setting Put setting
+     * @param globalLimiter Bandwidth limiter shared by all hosts(null if unlimited)
+     * @param resolver Resolver which has cached addresses of remote hosts
+     */
+    public RemoteFilePutter(ConfigPutSetting setting, RateLimiter globalLimiter,
+            HostAddressResolver resolver)
+    {
+        this.setting = setting;
+        this.globalLimiter = globalLimiter;
+        this.resolver = resolver;
+
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat(
+                "ConfigPutWatchdog-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Stop transfer timeout watchdog.
+     */
+    public void close()
+    {
+        this.watchdog.shutdownNow();
+    }
+
+    /**
+     * Put files to remote host, and convert failure to result.<br>
+     * If put failed, retry with exponential backoff up to retry count. Login failure is not retried.
+     * Transferred files and bytes of result are those of last attempt.
+     *
+     * @param targetHost Remote host
+     * @param entries Put file entries
+     * @return Put result
+     */
+    public ConfigPutResult putWithResult(String targetHost, List<PutFileEntry> entries)
+    {
+        long startTime = System.nanoTime();
+        HostTransferContext context = null;
+        int attempt = 0;
+        ConfigPutResult result = null;
+
+        while (result == null)
+        {
+            attempt++;
+
+            // Files and bytes are counted by each attempt, and phase times are summed over attempts.
+            HostTransferContext previous = context;
+            context = new HostTransferContext(this.globalLimiter, this.setting.getHostBandwidth());
+            if (previous != null)
+            {
+                context.addPhaseTimes(previous);
+            }
+
+            try
+            {
+                put(targetHost, entries, context);
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                if (context.getTransferredFiles() == 0)
+                {
+                    result = ConfigPutResult.skipped(targetHost, elapsed);
+                }
+                else
+                {
+                    result = ConfigPutResult.success(targetHost, elapsed,
+                            context.getTransferredBytes());
+                }
+            }
+            catch (InitFailException ex)
+            {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                result = ConfigPutResult.failure(targetHost, elapsed, ex);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                if (attempt > this.setting.getRetryCount() || waitBackoff(targetHost, attempt, ex) == false)
+                {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                    result = ConfigPutResult.failure(targetHost, elapsed, ex);
+                }
+            }
+        }
+
+        result.setAttempts(attempt);
+        result.addPhaseMillis(context.getPhaseMillis());
+        return result;
+    }
+
+    /**
+     * Wait backoff time before retry.<br>
+     * Backoff is doubled each attempt with random jitter, and capped by max backoff.
+     *
+     * @param targetHost Remote host
+     * @param attempt Failed attempt count
+     * @param cause Failure cause
+     * @return true if waited, false if interrupted
+     */
+    private boolean waitBackoff(String targetHost, int attempt, Exception cause)
+    {
+        long baseBackoff = this.setting.getRetryBackoff() << Math.min(attempt - 1, 16);
+        long backoff = Math.min(baseBackoff, MAX_RETRY_BACKOFF);
+        backoff += (long) (backoff * ThreadLocalRandom.current().nextDouble() * 0.2);
+
+        String logFormat = "Config file put failed, retry after backoff. : TargetHost={0}, Attempt={1}, Backoff={2}ms, Cause={3}";
+        logger.warn(MessageFormat.format(logFormat, targetHost, attempt, String.valueOf(backoff),
+                cause.toString()));
+
+        try
+        {
+            TimeUnit.MILLISECONDS.sleep(backoff);
+            return true;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Put files to remote host.
+     *
+     * @param targetHost Remote host
+     * @param entries Put file entries
+     * @param context Host transfer context. Transferred files and bytes are counted to it.
+     * @throws IOException Put failed
+     */
+    public void put(String targetHost, List<PutFileEntry> entries, HostTransferContext context)
+            throws IOException
+    {
+        final Connection connection = connect(targetHost, context);
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> timeoutFuture = null;
+        if (this.setting.getTransferTimeout() > 0)
+        {
+            // Ssh transfer has no read/write timeout, so close connection to interrupt hung transfer.
+            timeoutFuture = this.watchdog.schedule(new Runnable() {
+                @Override
+                public void run()
+                {
+                    timedOut.set(true);
+                    connection.close();
+                }
+            }, this.setting.getTransferTimeout(), TimeUnit.MILLISECONDS);
+        }
+
+        try
+        {
+            List<PutFileEntry> changedEntries = entries;
+            if (this.setting.isSkipUnchanged())
+            {
+                long digestStart = System.nanoTime();
+                changedEntries = filterChanged(connection, entries);
+                context.addPhaseTime(HostTransferContext.PHASE_DIGEST, digestStart);
+            }
+
+            if (changedEntries.isEmpty())
+            {
+                return;
+            }
+
+            long copyStart = System.nanoTime();
+            makeRemoteDirs(connection, changedEntries);
+
+            SCPClient client = new SCPClient(connection);
+            if (this.setting.getStoreDir() != null)
+            {
+                // Store mode puts only blobs not stored yet, so chunked put is not used.
+                StagingStorePutter storePutter = new StagingStorePutter(this.setting.getStoreDir(),
+                        this.setting.isStoreHardLink(), CHUNK_COMMAND_TIMEOUT);
+                storePutter.put(connection, client, changedEntries, context);
+            }
+            else
+            {
+                ChunkedFilePutter chunkedPutter = new ChunkedFilePutter(CHUNK_COMMAND_TIMEOUT);
+                for (PutFileEntry entry : changedEntries)
+                {
+                    if (entry.getChunkDigests() != null)
+                    {
+                        chunkedPutter.put(connection, client, entry, context);
+                    }
+                    else
+                    {
+                        putFile(client, entry, context);
+                    }
+                }
+            }
+
+            context.addPhaseTime(HostTransferContext.PHASE_COPY, copyStart);
+        }
+        catch (IOException ex)
+        {
+            if (timedOut.get())
+            {
+                String errFormat = "Transfer timeout. : TargetHost={0}, Timeout={1}ms";
+                throw new IOException(MessageFormat.format(errFormat, targetHost,
+                        String.valueOf(this.setting.getTransferTimeout())), ex);
+            }
+
+            throw ex;
+        }
+        finally
+        {
+            if (timeoutFuture != null)
+            {
+                timeoutFuture.cancel(false);
+            }
+
+            connection.close();
+        }
+    }
+
+    /**
+     * Connect and authenticate to remote host.
+     *
+     * @param targetHost Remote host
+     * @param context Host transfer context. Elapsed time of connect phases are added to it.
+     * @return Authenticated connection
+     * @throws IOException Connect failed
+     */
+    public Connection connect(String targetHost, HostTransferContext context) throws IOException
+    {
+        String userAccount = this.setting.getUserAccount();
+        String userPassword = this.setting.getUserPassword();
+        InetAddress address = this.resolver.resolve(targetHost);
+        Connection connection = new Connection(address.getHostAddress(), this.setting.getSshPort());
+        boolean authenticated = false;
+        try
+        {
+            int connectTimeout = this.setting.getConnectTimeout();
+            long connectStart = System.nanoTime();
+            connection.connect(null, connectTimeout, connectTimeout);
+            context.addPhaseTime(HostTransferContext.PHASE_CONNECT, connectStart);
+
+            long authStart = System.nanoTime();
+            if (StringUtils.isBlank(userPassword))
+            {
+                authenticated = connection.authenticateWithNone(userAccount);
+            }
+            else
+            {
+                authenticated = connection.authenticateWithPassword(userAccount, userPassword);
+            }
+            context.addPhaseTime(HostTransferContext.PHASE_AUTH, authStart);
+        }
+        finally
+        {
+            if (authenticated == false)
+            {
+                connection.close();
+            }
+        }
+
+        if (authenticated == false)
+        {
+            String errFormat = "Login failed. Exit tool. TargetHost={0}, User={1}";
+            throw new InitFailException(MessageFormat.format(errFormat, targetHost, userAccount));
+        }
+
+        return connection;
+    }
+
+    /**
+     * Filter entries which remote file is different from source file.
+     *
+     * @param connection Ssh Connection
+     * @param entries Put file entries
+     * @return Entries which need to put
+     * @throws IOException Remote command execute failed
+     */
+    private List<PutFileEntry> filterChanged(Connection connection, List<PutFileEntry> entries)
+            throws IOException
+    {
+        Map<String, String> remoteDigests = getRemoteDigests(connection, entries);
+        List<PutFileEntry> changedEntries = new ArrayList<>();
+        for (PutFileEntry entry : entries)
+        {
+            String remoteDigest = remoteDigests.get(entry.getDstPath());
+            if (entry.getDigest() == null || entry.getDigest().equals(remoteDigest) == false)
+            {
+                changedEntries.add(entry);
+            }
+        }
+
+        return changedEntries;
+    }
+
+    /**
+     * Get md5 digests of remote files by one remote command.
+     *
+     * @param connection Ssh Connection
+     * @param entries Put file entries
+     * @return Map of remote path and md5 digest(hex string). Not exist file is not contained.
+     * @throws IOException Remote command execute failed
+     */
+    private Map<String, String> getRemoteDigests(Connection connection, List<PutFileEntry> entries)
+            throws IOException
+    {
+        StringBuilder command = new StringBuilder(REMOTE_DIGEST_COMMAND);
+        for (PutFileEntry entry : entries)
+        {
+            command.append(' ').append(SshCommandExecutor.quote(entry.getDstPath()));
+        }
+
+        // md5sum exits with non zero if some file not exist, but outputs digests of existing files.
+        SshCommandResult result = SshCommandExecutor.execute(connection, command.toString(),
+                SshCommandExecutor.DEFAULT_TIMEOUT);
+
+        // md5sum output format is "<digest>  <path>" each line.
+        Map<String, String> digests = new HashMap<>();
+        for (String line : StringUtils.split(result.getStdout(), "\n"))
+        {
+            String digest = StringUtils.substringBefore(line, " ");
+            String path = StringUtils.substringAfter(line, "  ");
+            if (StringUtils.isNotBlank(digest) && StringUtils.isNotBlank(path))
+            {
+                digests.put(path, StringUtils.lowerCase(digest));
+            }
+        }
+
+        return digests;
+    }
+
+    /**
+     * Make destination directories on remote host by one remote command.
+     *
+     * @param connection Ssh Connection
+     * @param entries Put file entries
+     * @throws IOException Remote command execute failed
+     */
+    private void makeRemoteDirs(Connection connection, List<PutFileEntry> entries)
+            throws IOException
+    {
+        Set<String> dirs = new LinkedHashSet<>();
+        for (PutFileEntry entry : entries)
+        {
+            if (StringUtils.isNotBlank(entry.getDstDir()))
+            {
+                dirs.add(entry.getDstDir());
+            }
+        }
+
+        if (dirs.isEmpty())
+        {
+            return;
+        }
+
+        StringBuilder command = new StringBuilder(REMOTE_MKDIR_COMMAND);
+        for (String dir : dirs)
+        {
+            command.append(' ').append(SshCommandExecutor.quote(dir));
+        }
+
+        SshCommandResult result = SshCommandExecutor.execute(connection, command.toString(),
+                SshCommandExecutor.DEFAULT_TIMEOUT);
+        if (result.isSuccess() == false)
+        {
+            String errFormat = "Destination directory create failed. : Dirs={0}, Message={1}";
+            throw new IOException(MessageFormat.format(errFormat, dirs, result.getStderr()));
+        }
+    }
+
+    /**
+     * Put file to remote server.
+     *
+     * @param client Scp client
+     * @param entry Put file entry
+     * @param context Host transfer context
+     * @throws IOException Put failed
+     */
+    private void putFile(SCPClient client, PutFileEntry entry, HostTransferContext context)
+            throws IOException
+    {
+        long length = entry.getSrcFile().length();
+        try (SCPOutputStream out = client.put(entry.getDstFileName(), length,
+                entry.getDstDir(), FILE_MODE))
+        {
+            entry.writeTo(context.wrap(out), 0, length);
+        }
+
+        context.addFile();
+    }
+}
@@ -0,0 +1,159 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Read only buffer of put source file, shared by all destination hosts.<br>
+ * File smaller than heap threshold is read to heap once, and larger file is memory mapped.<br>
+ * Each write creates own view of the buffer, so concurrent writes to multiple hosts are safe.
+ *
+ * @author kimura
+ */
+public class SourceFileBuffer
+{
+    /** Write chunk size for memory mapped buffer */
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
+    /** File content on heap(null if memory mapped) */
+    private final byte[]     heapBytes;
+
+    /** Read only file content */
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor
+     *
+     * @param heapBytes File content on heap
+     * @param buffer Read only file content
+     */
+    private SourceFileBuffer(byte[] heapBytes, ByteBuffer buffer)
+    {
+        this.heapBytes = heapBytes;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Load file to buffer.
+     *
+     * @param file Source file
+     * @param heapThreshold Max file size(byte) read to heap. Larger file is memory mapped.
+     * @return Loaded buffer
+     * @throws IOException Load failed
+     */
+    public static SourceFileBuffer load(File file, long heapThreshold) throws IOException
+    {
+        if (file.length() <= heapThreshold)
+        {
+            byte[] bytes = FileUtils.readFileToByteArray(file);
+            return new SourceFileBuffer(bytes, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = randomAccessFile.getChannel())
+        {
+            // Mapping is valid after channel closed.
+            ByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return new SourceFileBuffer(null, mapped);
+        }
+    }
+
+    /**
+     * Write whole content to output stream.
+     *
+     * @param out Output stream
+     * @throws IOException Write failed
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+        writeTo(out, 0, this.buffer.capacity());
+    }
+
+    /**
+     * Write part of content to output stream.
+     *
+     * @param out Output stream
+     * @param offset Start offset
+     * @param length Write length
+     * @throws IOException Write failed
+     */
+    public void writeTo(OutputStream out, int offset, int length) throws IOException
+    {
+        if (this.heapBytes != null)
+        {
+            out.write(this.heapBytes, offset, length);
+            return;
+        }
+
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        byte[] chunk = new byte[Math.min(WRITE_CHUNK_SIZE, length)];
+        while (view.hasRemaining())
+        {
+            int chunkLength = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, chunkLength);
+            out.write(chunk, 0, chunkLength);
+        }
+    }
+
+    /**
+     * Calculate md5 digest of content.
+     *
+     * @return md5 digest(hex string)
+     */
+    public String md5()
+    {
+        Hasher hasher = Hashing.md5().newHasher();
+        try
+        {
+            writeTo(Funnels.asOutputStream(hasher));
+        }
+        catch (IOException ex)
+        {
+            // Hasher output stream never throws IOException.
+            throw new IllegalStateException(ex);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return content length
+     */
+    public long length()
+    {
+        return this.buffer.capacity();
+    }
+
+    /**
+     * @return true if content is memory mapped
+     */
+    public boolean isMapped()
+    {
+        return this.heapBytes == null;
+    }
+}
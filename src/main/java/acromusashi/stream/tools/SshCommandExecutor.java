@@ -0,0 +1,187 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+
+import ch.ethz.ssh2.ChannelCondition;
+import ch.ethz.ssh2.Connection;
+import ch.ethz.ssh2.Session;
+
+/**
+ * Execute shell command on remote host through established ssh connection.<br>
+ * Remote host os is only linux, so command is executed by remote user's shell.
+ *
+ * @author kimura
+ */
+public final class SshCommandExecutor
+{
+    /** Default command timeout(millisecond) */
+    public static final long DEFAULT_TIMEOUT = 60000L;
+
+    /** Stream read buffer size */
+    private static final int BUFFER_SIZE     = 8192;
+
+    /**
+     * Constructor
+     */
+    private SshCommandExecutor()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * Execute command on remote host, and return exit status and stdout.
+     *
+     * @param connection Authenticated ssh connection
+     * @param command Command
+     * @param timeout Command timeout(millisecond)
+     * @return Execute result
+     * @throws IOException Execute failed or timeout. Session is closed when timeout.
+     */
+    public static SshCommandResult execute(Connection connection, String command, long timeout)
+            throws IOException
+    {
+        Session session = connection.openSession();
+        try
+        {
+            session.execCommand(command);
+
+            long deadline = System.currentTimeMillis() + timeout;
+            InputStream out = session.getStdout();
+            InputStream err = session.getStderr();
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            // Drain stdout/stderr until remote sends EOF, not exceed deadline.
+            while (true)
+            {
+                boolean drained = drain(out, stdout, buffer) | drain(err, stderr, buffer);
+                if (drained)
+                {
+                    continue;
+                }
+
+                int condition = session.waitForCondition(ChannelCondition.STDOUT_DATA
+                        | ChannelCondition.STDERR_DATA | ChannelCondition.EOF,
+                        remaining(deadline, command, timeout));
+                checkTimeout(condition, command, timeout);
+
+                if ((condition & (ChannelCondition.STDOUT_DATA | ChannelCondition.STDERR_DATA)) == 0
+                        && (condition & ChannelCondition.EOF) != 0)
+                {
+                    break;
+                }
+            }
+
+            int condition = session.waitForCondition(ChannelCondition.EXIT_STATUS,
+                    remaining(deadline, command, timeout));
+            checkTimeout(condition, command, timeout);
+
+            Integer exitStatus = session.getExitStatus();
+            int status = -1;
+            if (exitStatus != null)
+            {
+                status = exitStatus.intValue();
+            }
+
+            return new SshCommandResult(status, stdout.toString(StandardCharsets.UTF_8.name()),
+                    stderr.toString(StandardCharsets.UTF_8.name()));
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+
+    /**
+     * Read all available bytes from remote stream without blocking.
+     *
+     * @param input Remote stream
+     * @param output Read buffer
+     * @param buffer Work buffer
+     * @return true if some bytes read
+     * @throws IOException Read failed
+     */
+    private static boolean drain(InputStream input, ByteArrayOutputStream output, byte[] buffer)
+            throws IOException
+    {
+        boolean read = false;
+        while (input.available() > 0)
+        {
+            int length = input.read(buffer, 0, Math.min(buffer.length, input.available()));
+            if (length < 0)
+            {
+                break;
+            }
+            output.write(buffer, 0, length);
+            read = true;
+        }
+        return read;
+    }
+
+    /**
+     * Get remaining time to deadline.
+     *
+     * @param deadline Deadline(epoch millisecond)
+     * @param command Command
+     * @param timeout Command timeout(millisecond)
+     * @return Remaining time(millisecond, at least 1)
+     * @throws IOException Deadline passed
+     */
+    private static long remaining(long deadline, String command, long timeout)
+            throws IOException
+    {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0)
+        {
+            checkTimeout(ChannelCondition.TIMEOUT, command, timeout);
+        }
+        return remaining;
+    }
+
+    /**
+     * Throw exception if wait condition is timeout.
+     *
+     * @param condition Wait condition result
+     * @param command Command
+     * @param timeout Command timeout(millisecond)
+     * @throws IOException Condition is timeout
+     */
+    private static void checkTimeout(int condition, String command, long timeout)
+            throws IOException
+    {
+        if ((condition & ChannelCondition.TIMEOUT) != 0)
+        {
+            String errFormat = "Remote command timeout. : Command={0}, Timeout={1}ms";
+            throw new IOException(MessageFormat.format(errFormat, command,
+                    String.valueOf(timeout)));
+        }
+    }
+
+    /**
+     * Quote argument to pass remote shell as single word.
+     *
+     * @param argument Argument
+     * @return Quoted argument
+     */
+    public static String quote(String argument)
+    {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+}
@@ -0,0 +1,76 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+/**
+ * Result of remote command execution.
+ *
+ * @author kimura
+ */
+public class SshCommandResult
+{
+    /** Exit status(-1 if remote host did not send it) */
+    private final int    exitStatus;
+
+    /** Standard output */
+    private final String stdout;
+
+    /** Standard error */
+    private final String stderr;
+
+    /**
+     * Constructor
+     *
+     * @param exitStatus Exit status
+     * @param stdout Standard output
+     * @param stderr Standard error
+     */
+    public SshCommandResult(int exitStatus, String stdout, String stderr)
+    {
+        this.exitStatus = exitStatus;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    /**
+     * @return true if command exited with status 0
+     */
+    public boolean isSuccess()
+    {
+        return this.exitStatus == 0;
+    }
+
+    /**
+     * @return the exitStatus
+     */
+    public int getExitStatus()
+    {
+        return this.exitStatus;
+    }
+
+    /**
+     * @return the stdout
+     */
+    public String getStdout()
+    {
+        return this.stdout;
+    }
+
+    /**
+     * @return the stderr
+     */
+    public String getStderr()
+    {
+        return this.stderr;
+    }
+}
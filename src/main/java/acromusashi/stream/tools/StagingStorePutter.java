@@ -0,0 +1,285 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.lang.StringUtils;
+
+import ch.ethz.ssh2.Connection;
+import ch.ethz.ssh2.SCPClient;
+import ch.ethz.ssh2.SCPOutputStream;
+
+/**
+ * Put files to remote host through content addressed staging store.<br>
+ * This putter execute following procedure.<br>
+ * <ol>
+ * <li>Get digests of blobs already stored in remote store directory. Blob file name is md5 digest of content.</li>
+ * <li>Put only blobs which are not stored yet. Same content put to multiple destinations is put once.</li>
+ * <li>Place each destination by copy(reflink if file system supports) from blob to temporary file,
+ * and rename temporary file to destination path atomically.
+ * If hardlink mode, destination is hardlinked to blob(or copied if store is other file system) instead,
+ * so destination shares inode with blob and must not be modified in place.</li>
+ * </ol>
+ * Blobs are kept in store after put, so rollback to previous content and push to other destination do not transfer file again.
+ *
+ * @author kimura
+ */
+public class StagingStorePutter
+{
+    /** Temporary file suffix */
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /** Put file mode */
+    private static final String FILE_MODE        = "0664";
+
+    /** Remote store directory */
+    private final String        storeDir;
+
+    /** true if destination is placed by hardlink, false if by copy */
+    private final boolean       hardLink;
+
+    /** Remote command timeout(millisecond) */
+    private final long          commandTimeout;
+
+    /** Id of this put, used for temporary blob names not to conflict with other puts to same store */
+    private final String        putId;
+
+    /**
+     * Constructor
+     *
+     * @param storeDir Remote store directory
+     * @param hardLink true if destination is placed by hardlink, false if by copy
+     * @param commandTimeout Remote command timeout(millisecond)
+     */
+    public StagingStorePutter(String storeDir, boolean hardLink, long commandTimeout)
+    {
+        this.storeDir = StringUtils.removeEnd(storeDir, "/");
+        this.hardLink = hardLink;
+        this.commandTimeout = commandTimeout;
+        this.putId = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Put files to remote host through store.
+     *
+     * @param connection Ssh Connection
+     * @param client Scp client
+     * @param entries Put file entries(digests must be calculated)
+     * @param context Host transfer context
+     * @throws IOException Put failed
+     */
+    public void put(Connection connection, SCPClient client, List<PutFileEntry> entries,
+            HostTransferContext context) throws IOException
+    {
+        Map<String, PutFileEntry> blobs = new LinkedHashMap<>();
+        for (PutFileEntry entry : entries)
+        {
+            if (blobs.containsKey(entry.getDigest()) == false)
+            {
+                blobs.put(entry.getDigest(), entry);
+            }
+        }
+
+        Set<String> storedBlobs = getStoredBlobs(connection, blobs.keySet());
+        Map<String, PutFileEntry> missingBlobs = new LinkedHashMap<>();
+        for (Map.Entry<String, PutFileEntry> blob : blobs.entrySet())
+        {
+            if (storedBlobs.contains(blob.getKey()) == false)
+            {
+                missingBlobs.put(blob.getKey(), blob.getValue());
+            }
+        }
+
+        if (missingBlobs.isEmpty() == false)
+        {
+            putBlobs(connection, client, missingBlobs, context);
+        }
+
+        placeEntries(connection, entries);
+        for (int count = 0; count < entries.size(); count++)
+        {
+            context.addFile();
+        }
+    }
+
+    /**
+     * Get digests of blobs already stored and verified in remote store directory.<br>
+     * If store directory not exist, create it.
+     *
+     * @param connection Ssh Connection
+     * @param digests Digests of put blobs
+     * @return Digests of stored blobs
+     * @throws IOException Remote command execute failed
+     */
+    private Set<String> getStoredBlobs(Connection connection, Set<String> digests)
+            throws IOException
+    {
+        String quotedDir = SshCommandExecutor.quote(this.storeDir);
+        StringBuilder command = new StringBuilder();
+        command.append("mkdir -p ").append(quotedDir).append(" && cd ").append(quotedDir);
+        command.append(" && { md5sum");
+        for (String digest : digests)
+        {
+            command.append(' ').append(SshCommandExecutor.quote(digest));
+        }
+        // md5sum exits with non zero if some blob not exist, but outputs digests of existing blobs.
+        command.append(" 2>/dev/null; true; }");
+
+        SshCommandResult result = SshCommandExecutor.execute(connection, command.toString(),
+                this.commandTimeout);
+        if (result.isSuccess() == false)
+        {
+            String errFormat = "Store directory prepare failed. : StoreDir={0}, Message={1}";
+            throw new IOException(MessageFormat.format(errFormat, this.storeDir,
+                    result.getStderr()));
+        }
+
+        // Output format is "<digest>  <blob name>" each line. Blob which content is broken is put again.
+        Set<String> storedBlobs = new HashSet<>();
+        for (String line : StringUtils.split(result.getStdout(), "\n"))
+        {
+            String digest = StringUtils.lowerCase(StringUtils.substringBefore(line, " "));
+            String name = StringUtils.trim(StringUtils.substringAfter(line, "  "));
+            if (StringUtils.isNotBlank(digest) && digest.equals(name))
+            {
+                storedBlobs.add(digest);
+            }
+        }
+
+        return storedBlobs;
+    }
+
+    /**
+     * Put blobs to temporary file in store directory, verify them and rename to blob name.
+     *
+     * @param connection Ssh Connection
+     * @param client Scp client
+     * @param blobs Map of digest and put file entry which has the content
+     * @param context Host transfer context
+     * @throws IOException Put or verify failed
+     */
+    private void putBlobs(Connection connection, SCPClient client, Map<String, PutFileEntry> blobs,
+            HostTransferContext context) throws IOException
+    {
+        StringBuilder command = new StringBuilder();
+        command.append("cd ").append(SshCommandExecutor.quote(this.storeDir));
+        StringBuilder cleanupCommand = new StringBuilder();
+        cleanupCommand.append("cd ").append(SshCommandExecutor.quote(this.storeDir)).append(" && rm -f");
+        SshCommandResult result = null;
+        try
+        {
+            for (Map.Entry<String, PutFileEntry> blob : blobs.entrySet())
+            {
+                // Temporary name is unique to this put, so concurrent puts of same blob do not conflict.
+                String tempName = "." + blob.getKey() + "." + this.putId + TEMP_FILE_SUFFIX;
+                String quotedTemp = SshCommandExecutor.quote(tempName);
+                cleanupCommand.append(' ').append(quotedTemp);
+
+                long length = blob.getValue().getSrcFile().length();
+                try (SCPOutputStream out = client.put(tempName, length, this.storeDir, FILE_MODE))
+                {
+                    blob.getValue().writeTo(context.wrap(out), 0, length);
+                }
+
+                String quotedDigest = SshCommandExecutor.quote(blob.getKey());
+                command.append(" && [ \"$(md5sum < ").append(quotedTemp).append(" | cut -d ' ' -f 1)\" = ");
+                command.append(quotedDigest).append(" ]");
+                command.append(" && mv -f ").append(quotedTemp).append(' ').append(quotedDigest);
+            }
+
+            result = SshCommandExecutor.execute(connection, command.toString(), this.commandTimeout);
+        }
+        catch (IOException ex)
+        {
+            removeTempBlobs(connection, cleanupCommand.toString());
+            throw ex;
+        }
+
+        if (result.isSuccess() == false)
+        {
+            removeTempBlobs(connection, cleanupCommand.toString());
+            String errFormat = "Blob verify failed. : StoreDir={0}, Message={1}";
+            throw new IOException(MessageFormat.format(errFormat, this.storeDir,
+                    result.getStderr()));
+        }
+    }
+
+    /**
+     * Remove temporary blobs of this put. Other puts may be writing their temporary blobs, so they are not removed.<br>
+     * Remove failure is ignored, because connection may be already broken.
+     *
+     * @param connection Ssh Connection
+     * @param cleanupCommand Remove command of temporary blobs
+     */
+    private void removeTempBlobs(Connection connection, String cleanupCommand)
+    {
+        try
+        {
+            SshCommandExecutor.execute(connection, cleanupCommand, this.commandTimeout);
+        }
+        catch (IOException ex)
+        {
+            // Do nothing. Left temporary blob is never used as blob, because it is not renamed.
+        }
+    }
+
+    /**
+     * Place each destination from stored blob by one remote command.<br>
+     * Destination is copied(or hardlinked if hardlink mode) to temporary file, and renamed to destination path atomically.
+     *
+     * @param connection Ssh Connection
+     * @param entries Put file entries
+     * @throws IOException Remote command execute failed
+     */
+    private void placeEntries(Connection connection, List<PutFileEntry> entries)
+            throws IOException
+    {
+        StringBuilder command = new StringBuilder("true");
+        for (PutFileEntry entry : entries)
+        {
+            String quotedBlob = SshCommandExecutor.quote(this.storeDir + "/" + entry.getDigest());
+            String quotedTemp = SshCommandExecutor.quote(entry.getDstDir() + "/."
+                    + entry.getDstFileName() + TEMP_FILE_SUFFIX);
+            if (this.hardLink)
+            {
+                command.append(" && { ln -f ").append(quotedBlob).append(' ').append(quotedTemp);
+            }
+            else
+            {
+                // Copy does not share inode with blob. Reflink copy is used if cp and file system support it.
+                command.append(" && { cp --reflink=auto -f ").append(quotedBlob).append(' ');
+                command.append(quotedTemp);
+            }
+            command.append(" 2>/dev/null || cp -f ").append(quotedBlob).append(' ').append(quotedTemp);
+            command.append("; } && mv -f ").append(quotedTemp).append(' ');
+            command.append(SshCommandExecutor.quote(entry.getDstPath()));
+        }
+
+        SshCommandResult result = SshCommandExecutor.execute(connection, command.toString(),
+                this.commandTimeout);
+        if (result.isSuccess() == false)
+        {
+            String errFormat = "Destination place failed. : StoreDir={0}, Message={1}";
+            throw new IOException(MessageFormat.format(errFormat, this.storeDir,
+                    result.getStderr()));
+        }
+    }
+}
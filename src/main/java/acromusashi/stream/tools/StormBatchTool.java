@@ -0,0 +1,502 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang.StringUtils;
+
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Execute multiple storm commands in one invocation.<br>
+ * Each line of batch is one command of {@link StormToolsCommandExecutor}(ex. "deactivate TopologyA", "kill TopologyA -w 1").
+ * Blank lines and lines starting with "#" are ignored, and leading "storm" is removed.<br>
+ * All commands share one storm config load and pooled nimbus connections.<br>
+ * When parallelism is more than 1, consecutive kill, activate, deactivate, confvalue and ping commands for different topologies are executed in parallel.
+ * Other commands(list, wait, putconfig, restart) and commands for same topology are executed after preceding commands finished.<br>
+ * Output of each command is written in batch order as following.
+ * <pre>
+ * [1] deactivate TopologyA
+ * Deactivated topology: TopologyA
+ * [1] EXIT: 0 (12ms)
+ * </pre>
+ *
+ * @author kimura
+ */
+public class StormBatchTool
+{
+    /** Commands which can be executed in parallel with other topology's commands */
+    private static final Set<String>        PARALLEL_COMMANDS = new HashSet<>(Arrays.asList("kill",
+                                                                      "activate", "deactivate", "confvalue", "ping"));
+
+    /** Comment line prefix */
+    private static final String             COMMENT_PREFIX    = "#";
+
+    /** Return code All commands succeeded. */
+    private static final int                RETURN_SUCCESS    = 0;
+
+    /** Return code Some commands failed. */
+    private static final int                RETURN_FAILURE    = 1;
+
+    /** Command executor */
+    private final StormToolsCommandExecutor commandExecutor;
+
+    /** Command execute parallelism */
+    private final int                       parallelism;
+
+    /** Stop batch at first failed command */
+    private final boolean                   stopOnError;
+
+    /**
+     * Constructor
+     *
+     * @param commandExecutor Command executor
+     * @param parallelism Command execute parallelism
+     * @param stopOnError Stop batch at first failed command
+     */
+    public StormBatchTool(StormToolsCommandExecutor commandExecutor, int parallelism,
+            boolean stopOnError)
+    {
+        this.commandExecutor = commandExecutor;
+        this.parallelism = parallelism;
+        this.stopOnError = stopOnError;
+    }
+
+    /**
+     * Program Entry Point<br>
+     * <br>
+     * Use following arguments.<br>
+     * <ul>
+     * <li>-f Batch file path(optional, read standard input if neither -f nor command lines are specified)</li>
+     * <li>-p Command execute parallelism(optional, default 1)</li>
+     * <li>-s Stop batch at first failed command(optional)</li>
+     * <li>-sh Show help</li>
+     * </ul>
+     * Remaining arguments are executed as command lines.
+     *
+     * @param args Argments
+     */
+    public static void main(String... args)
+    {
+        StormToolsCommandExecutor commandExecutor = new StormToolsCommandExecutor(
+                new StormConfigValueCache());
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), true);
+        int returnCode = execute(commandExecutor, args, true, out);
+        out.flush();
+        if (returnCode != 0)
+        {
+            Runtime.getRuntime().exit(returnCode);
+        }
+    }
+
+    /**
+     * Parse arguments, and execute batch.
+     *
+     * @param commandExecutor Command executor
+     * @param args Argments
+     * @param readStdin Read standard input if neither batch file nor command lines are specified
+     * @param out Batch output
+     * @return ReturnCode
+     */
+    public static int execute(StormToolsCommandExecutor commandExecutor, String[] args,
+            boolean readStdin, PrintWriter out)
+    {
+        Options cliOptions = createOptions();
+        CommandLineParser parser = new PosixParser();
+        CommandLine commandLine = null;
+
+        try
+        {
+            commandLine = parser.parse(cliOptions, args, true);
+        }
+        catch (ParseException pex)
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        if (commandLine.hasOption("sh"))
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        int parallelism = 1;
+        if (commandLine.hasOption("p") == true)
+        {
+            try
+            {
+                parallelism = Integer.parseInt(commandLine.getOptionValue("p"));
+            }
+            catch (NumberFormatException ex)
+            {
+                printHelp(cliOptions, out);
+                return RETURN_FAILURE;
+            }
+        }
+
+        List<String> commandLines = new ArrayList<>(Arrays.asList(commandLine.getArgs()));
+        try
+        {
+            if (commandLine.hasOption("f") == true)
+            {
+                commandLines.addAll(Files.readLines(new File(commandLine.getOptionValue("f")),
+                        StandardCharsets.UTF_8));
+            }
+            else if (commandLines.isEmpty() && readStdin)
+            {
+                commandLines.addAll(CharStreams.readLines(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8)));
+            }
+        }
+        catch (IOException ex)
+        {
+            String errFormat = "Batch read failed. : Cause={0}";
+            out.println(MessageFormat.format(errFormat, ex.toString()));
+            return RETURN_FAILURE;
+        }
+
+        StormBatchTool batchTool = new StormBatchTool(commandExecutor, parallelism,
+                commandLine.hasOption("s"));
+        return batchTool.executeBatch(commandLines, out);
+    }
+
+    /**
+     * Execute batch.
+     *
+     * @param commandLines Command lines
+     * @param out Batch output
+     * @return ReturnCode(0 if all commands succeeded)
+     */
+    public int executeBatch(List<String> commandLines, PrintWriter out)
+    {
+        List<List<String>> commands = parseCommands(commandLines);
+        ExecutorService executor = null;
+        if (this.parallelism > 1)
+        {
+            executor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("StormBatch-%d").setDaemon(true).build());
+        }
+
+        int returnCode = RETURN_SUCCESS;
+        try
+        {
+            int index = 0;
+            while (index < commands.size())
+            {
+                int groupEnd = findGroupEnd(commands, index);
+                List<CommandResult> results = executeGroup(commands.subList(index, groupEnd),
+                        executor);
+                for (CommandResult result : results)
+                {
+                    index++;
+                    out.println(MessageFormat.format("[{0}] {1}", index,
+                            StringUtils.join(result.command, ' ')));
+                    out.print(result.output);
+                    out.println(MessageFormat.format("[{0}] EXIT: {1} ({2}ms)", index,
+                            result.returnCode, String.valueOf(result.elapsedMillis)));
+                    if (result.returnCode != RETURN_SUCCESS)
+                    {
+                        returnCode = RETURN_FAILURE;
+                    }
+                }
+
+                if (returnCode != RETURN_SUCCESS && this.stopOnError && index < commands.size())
+                {
+                    String errFormat = "Batch stopped by failed command. : Skipped={0}";
+                    out.println(MessageFormat.format(errFormat, commands.size() - index));
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        out.flush();
+        return returnCode;
+    }
+
+    /**
+     * Parse command lines. Blank lines and comment lines are ignored, and leading "storm" is removed.
+     *
+     * @param commandLines Command lines
+     * @return Commands and arguments
+     */
+    private List<List<String>> parseCommands(List<String> commandLines)
+    {
+        List<List<String>> commands = new ArrayList<>();
+        for (String commandLine : commandLines)
+        {
+            String trimmed = StringUtils.trimToEmpty(commandLine);
+            if (trimmed.isEmpty() || trimmed.startsWith(COMMENT_PREFIX))
+            {
+                continue;
+            }
+
+            List<String> command = new ArrayList<>(Arrays.asList(StringUtils.split(trimmed)));
+            if ("storm".equals(command.get(0)) && command.size() > 1)
+            {
+                command.remove(0);
+            }
+            commands.add(command);
+        }
+
+        return commands;
+    }
+
+    /**
+     * Find end of command group which can be executed in parallel from start index.
+     *
+     * @param commands Commands and arguments
+     * @param start Start index
+     * @return End index(exclusive)
+     */
+    private int findGroupEnd(List<List<String>> commands, int start)
+    {
+        if (this.parallelism <= 1 || isParallel(commands.get(start)) == false)
+        {
+            return start + 1;
+        }
+
+        Set<String> targets = new HashSet<>();
+        int end = start;
+        while (end < commands.size() && isParallel(commands.get(end)))
+        {
+            List<String> command = commands.get(end);
+            String target = command.size() > 1 ? command.get(1) : "";
+            if (targets.add(target) == false)
+            {
+                // Commands for same topology keep batch order.
+                break;
+            }
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Check command can be executed in parallel with other topology's commands.
+     *
+     * @param command Command and arguments
+     * @return true if command can be executed in parallel
+     */
+    private boolean isParallel(List<String> command)
+    {
+        return PARALLEL_COMMANDS.contains(command.get(0));
+    }
+
+    /**
+     * Execute commands of one group. If executor is specified and group has multiple commands, execute them in parallel.
+     *
+     * @param group Commands and arguments
+     * @param executor Executor(null if execute sequentially)
+     * @return Command results(same order as group)
+     */
+    private List<CommandResult> executeGroup(List<List<String>> group, ExecutorService executor)
+    {
+        List<CommandResult> results = new ArrayList<>();
+        if (executor == null || group.size() == 1)
+        {
+            for (List<String> command : group)
+            {
+                results.add(executeCommand(command));
+            }
+            return results;
+        }
+
+        List<Future<CommandResult>> futures = new ArrayList<>();
+        for (final List<String> command : group)
+        {
+            futures.add(executor.submit(new Callable<CommandResult>() {
+                @Override
+                public CommandResult call()
+                {
+                    return executeCommand(command);
+                }
+            }));
+        }
+
+        for (int index = 0; index < futures.size(); index++)
+        {
+            try
+            {
+                results.add(futures.get(index).get());
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                results.add(new CommandResult(group.get(index), RETURN_FAILURE, ex.toString()
+                        + System.lineSeparator(), 0));
+            }
+            catch (ExecutionException ex)
+            {
+                results.add(new CommandResult(group.get(index), RETURN_FAILURE, ex.getCause()
+                        .toString() + System.lineSeparator(), 0));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Execute one command, and keep its output.<br>
+     * Unexpected exception of command is converted to failed result.
+     *
+     * @param command Command and arguments
+     * @return Command result
+     */
+    private CommandResult executeCommand(List<String> command)
+    {
+        long startTime = System.nanoTime();
+        StringWriter output = new StringWriter();
+        PrintWriter commandOut = new PrintWriter(output);
+        int returnCode = RETURN_FAILURE;
+        try
+        {
+            returnCode = this.commandExecutor.execute(command, commandOut);
+        }
+        catch (RuntimeException ex)
+        {
+            // Failed command is reported in its result, and does not stop other commands.
+            commandOut.println("Command execute failed. : " + ex.toString());
+        }
+
+        commandOut.flush();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        return new CommandResult(command, returnCode, output.toString(), elapsed);
+    }
+
+    /**
+     * Print help message.
+     *
+     * @param cliOptions Options
+     * @param out Output
+     */
+    private static void printHelp(Options cliOptions, PrintWriter out)
+    {
+        HelpFormatter help = new HelpFormatter();
+        help.printHelp(out, HelpFormatter.DEFAULT_WIDTH, StormBatchTool.class.getName()
+                + " [Command lines]", null, cliOptions, HelpFormatter.DEFAULT_LEFT_PAD,
+                HelpFormatter.DEFAULT_DESC_PAD, null, true);
+        out.flush();
+    }
+
+    /**
+     * Generate command line analyze option object.
+     *
+     * @return command line analyze option object
+     */
+    public static Options createOptions()
+    {
+        Options cliOptions = new Options();
+
+        // Batch file option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Batch file path");
+        OptionBuilder.withDescription("Batch file path(one command each line)");
+        OptionBuilder.isRequired(false);
+        Option fileOption = OptionBuilder.create("f");
+
+        // Parallelism option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Parallelism");
+        OptionBuilder.withDescription("Command execute parallelism");
+        OptionBuilder.isRequired(false);
+        Option parallelismOption = OptionBuilder.create("p");
+
+        // Stop on error option
+        OptionBuilder.withDescription("Stop batch at first failed command");
+        OptionBuilder.isRequired(false);
+        Option stopOption = OptionBuilder.create("s");
+
+        // Help option
+        OptionBuilder.withDescription("show help");
+        Option helpOption = OptionBuilder.create("sh");
+
+        cliOptions.addOption(fileOption);
+        cliOptions.addOption(parallelismOption);
+        cliOptions.addOption(stopOption);
+        cliOptions.addOption(helpOption);
+        return cliOptions;
+    }
+
+    /**
+     * Result of one command in batch.
+     */
+    private static class CommandResult
+    {
+        /** Command and arguments */
+        final List<String> command;
+
+        /** Return code */
+        final int          returnCode;
+
+        /** Command output */
+        final String       output;
+
+        /** Elapsed time(millisecond) */
+        final long         elapsedMillis;
+
+        /**
+         * Constructor
+         *
+         * @param command Command and arguments
+         * @param returnCode Return code
+         * @param output Command output
+         * @param elapsedMillis Elapsed time(millisecond)
+         */
+        CommandResult(List<String> command, int returnCode, String output, long elapsedMillis)
+        {
+            this.command = command;
+            this.returnCode = returnCode;
+            this.output = output;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+}
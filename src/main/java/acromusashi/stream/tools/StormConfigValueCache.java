@@ -0,0 +1,164 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.utils.Utils;
+
+/**
+ * Storm config(defaults.yaml merged with storm.yaml) loaded once and reused.<br>
+ * Config file is resolved same as {@link Utils#readStormConfig()}, by "storm.conf.file" system property(default storm.yaml) in classpath.
+ * Modified time and length of the config file and "storm.options" system property are checked at each access,
+ * and config is loaded again only when they are changed.
+ *
+ * @author kimura
+ */
+public class StormConfigValueCache
+{
+    /** Default storm config file name */
+    private static final String STORM_CONFIG_NAME = "storm.yaml";
+
+    /** System property of storm config file name */
+    private static final String CONFIG_FILE_PROP  = "storm.conf.file";
+
+    /** System property of storm command line options */
+    private static final String OPTIONS_PROP      = "storm.options";
+
+    /** Logger */
+    private static final Logger logger            = LoggerFactory.getLogger(StormConfigValueCache.class);
+
+    /** Loaded storm config(null if not loaded) */
+    private Map<String, Object> config;
+
+    /** Storm config file of loaded config(null if not found in classpath) */
+    private File                loadedFile;
+
+    /** Modified time of loaded storm config file */
+    private long                loadedModified;
+
+    /** Length of loaded storm config file */
+    private long                loadedLength;
+
+    /** Storm command line options of loaded config(null if not specified) */
+    private String              loadedOptions;
+
+    /**
+     * Constructor
+     */
+    public StormConfigValueCache()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * Get storm config. If storm.yaml is changed after last load, load config again.
+     *
+     * @return Storm config
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized Map<String, Object> getConfig()
+    {
+        File configFile = findConfigFile();
+        long modified = 0L;
+        long length = 0L;
+        if (configFile != null)
+        {
+            modified = configFile.lastModified();
+            length = configFile.length();
+        }
+
+        String options = System.getProperty(OPTIONS_PROP);
+
+        if (this.config != null && isSameFile(configFile) && this.loadedModified == modified
+                && this.loadedLength == length && StringUtils.equals(this.loadedOptions, options))
+        {
+            return this.config;
+        }
+
+        this.config = Utils.readStormConfig();
+        this.loadedFile = configFile;
+        this.loadedModified = modified;
+        this.loadedLength = length;
+        this.loadedOptions = options;
+
+        String logFormat = "Storm config loaded. : ConfigFile={0}";
+        logger.info(MessageFormat.format(logFormat, configFile));
+        return this.config;
+    }
+
+    /**
+     * Get config value.
+     *
+     * @param name Config name
+     * @return Config value(null if not exist)
+     */
+    public Object getValue(String name)
+    {
+        return getConfig().get(name);
+    }
+
+    /**
+     * Check config file is same as loaded config file.
+     *
+     * @param configFile Config file
+     * @return true if same
+     */
+    private boolean isSameFile(File configFile)
+    {
+        if (configFile == null)
+        {
+            return this.loadedFile == null;
+        }
+
+        return configFile.equals(this.loadedFile);
+    }
+
+    /**
+     * Find storm config file in classpath, same as {@link Utils#readStormConfig()}.<br>
+     * Config file name is "storm.conf.file" system property, or storm.yaml if not specified.
+     *
+     * @return Storm config file(null if not found or not a file)
+     */
+    private File findConfigFile()
+    {
+        String configName = System.getProperty(CONFIG_FILE_PROP);
+        if (StringUtils.isEmpty(configName))
+        {
+            configName = STORM_CONFIG_NAME;
+        }
+
+        URL resource = Thread.currentThread().getContextClassLoader().getResource(configName);
+        if (resource == null || "file".equals(resource.getProtocol()) == false)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new File(resource.toURI());
+        }
+        catch (URISyntaxException ex)
+        {
+            return new File(resource.getPath());
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.PrintWriter;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.thrift7.TException;
+
+import acromusashi.stream.config.StormConfigUtil;
+import backtype.storm.Config;
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.KillOptions;
+import backtype.storm.generated.Nimbus;
+import backtype.storm.generated.NotAliveException;
+import backtype.storm.generated.TopologySummary;
+
+/**
+ * Execute storm commands and tools requested to {@link StormToolsServer} in process.<br>
+ * Output format of each command is same as groovy script executed by storm command.<br>
+ * Nimbus connections are reused between commands by {@link NimbusClientPool}.<br>
+ * Topology list is read from {@link ClusterSummaryCache}, and cache is invalidated after kill, activate and deactivate.<br>
+ * <ul>
+ * <li>list</li>
+ * <li>kill TopologyName [-w WaitSecs]</li>
+ * <li>activate TopologyName</li>
+ * <li>deactivate TopologyName</li>
+ * <li>confvalue ConfigName [ConfigName ...]</li>
+ * <li>wait Arguments of {@link TopologyExecutionWaitTool}</li>
+ * <li>putconfig Arguments of {@link ConfigPutTool}</li>
+ * <li>restart Arguments of {@link TopologyRestartTool}</li>
+ * <li>batch Arguments of {@link StormBatchTool}(command lines are passed as arguments)</li>
+ * <li>bulk Arguments of {@link TopologyBulkTool}</li>
+ * <li>ping</li>
+ * </ul>
+ *
+ * @author kimura
+ */
+public class StormToolsCommandExecutor
+{
+    /** Return code Command succeeded. */
+    private static final int            RETURN_SUCCESS             = 0;
+
+    /** Return code Command failed. */
+    private static final int            RETURN_FAILURE             = 1;
+
+    /** Default nimbus thrift port */
+    private static final int            DEFAULT_NIMBUS_THRIFT_PORT = 6627;
+
+    /** Commands which wait topology or remote hosts, and may run long */
+    private static final Set<String>    LONG_RUNNING_COMMANDS      = new HashSet<>(Arrays.asList("wait", "putconfig", "restart", "batch", "bulk"));
+
+    /** Storm config */
+    private final StormConfigValueCache configCache;
+
+    /** Nimbus client pool */
+    private final NimbusClientPool      pool;
+
+    /** Cluster summary cache */
+    private final ClusterSummaryCache   clusterCache;
+
+    /**
+     * Constructor
+     *
+     * @param configCache Storm config
+     */
+    public StormToolsCommandExecutor(StormConfigValueCache configCache)
+    {
+        this.configCache = configCache;
+        Map<String, Object> stormConfig = configCache.getConfig();
+        String nimbusHost = StormConfigUtil.getStringValue(stormConfig, Config.NIMBUS_HOST,
+                "localhost");
+        int nimbusPort = StormConfigUtil.getIntValue(stormConfig, Config.NIMBUS_THRIFT_PORT,
+                DEFAULT_NIMBUS_THRIFT_PORT);
+        this.pool = NimbusClientPool.getShared(nimbusHost, nimbusPort);
+        this.clusterCache = ClusterSummaryCache.getShared(stormConfig, this.pool);
+    }
+
+    /**
+     * Check command may run long.
+     *
+     * @param args Command and arguments
+     * @return true if command may run long
+     */
+    public boolean isLongRunning(List<String> args)
+    {
+        return args.isEmpty() == false && LONG_RUNNING_COMMANDS.contains(args.get(0));
+    }
+
+    /**
+     * Execute command.
+     *
+     * @param args Command and arguments
+     * @param out Command output
+     * @return ReturnCode
+     */
+    public int execute(List<String> args, PrintWriter out)
+    {
+        if (args.isEmpty())
+        {
+            out.println("Command is not specified.");
+            return RETURN_FAILURE;
+        }
+
+        String command = args.get(0);
+        String[] commandArgs = args.subList(1, args.size()).toArray(new String[args.size() - 1]);
+        try
+        {
+            switch (command)
+            {
+                case "ping":
+                    out.println("pong");
+                    return RETURN_SUCCESS;
+                case "list":
+                    return listTopologies(out);
+                case "kill":
+                    return killTopology(commandArgs, out);
+                case "activate":
+                    return activateTopology(commandArgs, out, true);
+                case "deactivate":
+                    return activateTopology(commandArgs, out, false);
+                case "confvalue":
+                    return printConfigValue(commandArgs, out);
+                case "wait":
+                    return TopologyExecutionWaitTool.execute(commandArgs);
+                case "putconfig":
+                    return ConfigPutTool.execute(commandArgs);
+                case "restart":
+                    return TopologyRestartTool.execute(commandArgs);
+                case "batch":
+                    return StormBatchTool.execute(this, commandArgs, false, out);
+                case "bulk":
+                    return TopologyBulkTool.execute(out, commandArgs);
+                default:
+                    out.println("Unknown command: " + command);
+                    return RETURN_FAILURE;
+            }
+        }
+        catch (NotAliveException ex)
+        {
+            String errFormat = "Topology not alive. : Command={0}, Args={1}";
+            out.println(MessageFormat.format(errFormat, command, args.subList(1, args.size())));
+            return RETURN_FAILURE;
+        }
+        catch (TException ex)
+        {
+            String errFormat = "Nimbus access failed. : Command={0}, Cause={1}";
+            out.println(MessageFormat.format(errFormat, command, ex.toString()));
+            return RETURN_FAILURE;
+        }
+    }
+
+    /**
+     * List topologies.
+     *
+     * @param out Command output
+     * @return ReturnCode
+     * @throws TException Nimbus access failed
+     */
+    private int listTopologies(PrintWriter out) throws TException
+    {
+        ClusterSummary clusterSummary = this.clusterCache.get();
+
+        if (clusterSummary.get_topologies().isEmpty())
+        {
+            out.println("No topologies running.");
+            return RETURN_SUCCESS;
+        }
+
+        out.println("");
+        String topologyPattern = "%-20s %-10s %-10s %-12s %-10s";
+        out.println(String.format(topologyPattern, "Topology_name", "Status", "Num_tasks",
+                "Num_workers", "Uptime_secs"));
+        out.println("-------------------------------------------------------------------");
+        for (TopologySummary topologySummary : clusterSummary.get_topologies())
+        {
+            out.println(String.format(topologyPattern, topologySummary.get_name(),
+                    topologySummary.get_status(), topologySummary.get_num_tasks(),
+                    topologySummary.get_num_workers(), topologySummary.get_uptime_secs()));
+        }
+
+        return RETURN_SUCCESS;
+    }
+
+    /**
+     * Kill topology.
+     *
+     * @param args TopologyName [-w WaitSecs]
+     * @param out Command output
+     * @return ReturnCode
+     * @throws TException Nimbus access failed
+     * @throws NotAliveException Topology not alive
+     */
+    private int killTopology(final String[] args, PrintWriter out) throws TException,
+            NotAliveException
+    {
+        if (args.length < 1)
+        {
+            out.println("Syntax: kill topology-name [-w wait-time-secs]");
+            return RETURN_FAILURE;
+        }
+
+        int waitSecs = -1;
+        if (args.length >= 3 && ("-w".equals(args[1]) || "--wait".equals(args[1])))
+        {
+            waitSecs = Integer.parseInt(args[2]);
+        }
+
+        final int killWaitSecs = waitSecs;
+        try
+        {
+            this.pool.execute(new NimbusCall<Void, NotAliveException>() {
+                @Override
+                public Void call(Nimbus.Client client) throws TException, NotAliveException
+                {
+                    if (killWaitSecs > 0)
+                    {
+                        KillOptions options = new KillOptions();
+                        options.set_wait_secs(killWaitSecs);
+                        client.killTopologyWithOpts(args[0], options);
+                    }
+                    else
+                    {
+                        client.killTopology(args[0]);
+                    }
+
+                    return null;
+                }
+            });
+        }
+        finally
+        {
+            this.clusterCache.invalidate();
+        }
+
+        out.println("Killed topology: " + args[0]);
+        return RETURN_SUCCESS;
+    }
+
+    /**
+     * Activate or deactivate topology.
+     *
+     * @param args TopologyName
+     * @param out Command output
+     * @param activate true if activate, false if deactivate
+     * @return ReturnCode
+     * @throws TException Nimbus access failed
+     * @throws NotAliveException Topology not alive
+     */
+    private int activateTopology(final String[] args, PrintWriter out, final boolean activate)
+            throws TException, NotAliveException
+    {
+        if (args.length < 1)
+        {
+            out.println("Topology name is not specified.");
+            return RETURN_FAILURE;
+        }
+
+        try
+        {
+            this.pool.execute(new NimbusCall<Void, NotAliveException>() {
+                @Override
+                public Void call(Nimbus.Client client) throws TException, NotAliveException
+                {
+                    if (activate)
+                    {
+                        client.activate(args[0]);
+                    }
+                    else
+                    {
+                        client.deactivate(args[0]);
+                    }
+
+                    return null;
+                }
+            });
+        }
+        finally
+        {
+            this.clusterCache.invalidate();
+        }
+
+        if (activate)
+        {
+            out.println("Activated topology: " + args[0]);
+        }
+        else
+        {
+            out.println("Deactivated topology: " + args[0]);
+        }
+
+        return RETURN_SUCCESS;
+    }
+
+    /**
+     * Print config value.<br>
+     * Print "VALUE: " line of each name in same order. Not exist value is printed as empty string.
+     *
+     * @param args ConfigName [ConfigName ...]
+     * @param out Command output
+     * @return ReturnCode
+     */
+    private int printConfigValue(String[] args, PrintWriter out)
+    {
+        if (args.length < 1)
+        {
+            out.println("Config name is not specified.");
+            return RETURN_FAILURE;
+        }
+
+        Map<String, Object> stormConfig = this.configCache.getConfig();
+        for (String name : args)
+        {
+            Object value = stormConfig.get(name);
+            out.println("VALUE: " + (value == null ? "" : value));
+        }
+        return RETURN_SUCCESS;
+    }
+}
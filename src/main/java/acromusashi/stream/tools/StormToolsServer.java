@@ -0,0 +1,466 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Resident command server of storm tools.<br>
+ * Server keeps classes and storm config loaded, and executes storm commands and tools in process,
+ * so command line client does not need to start JVM for each command.<br>
+ * <br>
+ * Server listens only on loopback address. Protocol is following line based text(UTF-8).<br>
+ * <ol>
+ * <li>Client sends shared secret in first line. Secret is generated at server start, and written to secret file readable only by server user.
+ * If secret is wrong, server closes connection without response.</li>
+ * <li>Client sends argument count in next line, and each argument in following lines.</li>
+ * <li>Server sends "ACCEPTED" line when request is read, and starts command.</li>
+ * <li>Server sends command output and log lines, and "EXIT: ReturnCode" in last line.</li>
+ * </ol>
+ * Secret and request must be sent within request read timeout, so idle connections do not occupy command pool.
+ * Client falls back to starting JVM if "ACCEPTED" is not received within its own timeout.<br>
+ * Long running commands(ex. wait, putconfig) are executed by separate pool, so they do not block short commands.
+ *
+ * @author kimura
+ */
+public class StormToolsServer
+{
+    /** Default listen port */
+    public static final int                 DEFAULT_PORT             = 16627;
+
+    /** Default command execute parallelism */
+    private static final int                DEFAULT_PARALLELISM      = 4;
+
+    /** Default long running command execute parallelism */
+    private static final int                DEFAULT_LONG_PARALLELISM = 4;
+
+    /** Default secret file path under user home */
+    private static final String             DEFAULT_SECRET_FILE      = ".storm/storm_tools_server.secret";
+
+    /** Secret length(byte) */
+    private static final int                SECRET_LENGTH            = 32;
+
+    /** Request read timeout(ms) */
+    private static final int                REQUEST_READ_TIMEOUT     = 5000;
+
+    /** Line sent when request is accepted */
+    private static final String             ACCEPTED_LINE            = "ACCEPTED";
+
+    /** Exit line prefix */
+    private static final String             EXIT_PREFIX              = "EXIT: ";
+
+    /** Return code Command execute failed. */
+    private static final int                RETURN_FAILURE           = 1;
+
+    /** Logger */
+    private static final Logger             logger                   = LoggerFactory.getLogger(StormToolsServer.class);
+
+    /** Command executor */
+    private final StormToolsCommandExecutor commandExecutor;
+
+    /**
+     * Constructor
+     *
+     * @param commandExecutor Command executor
+     */
+    public StormToolsServer(StormToolsCommandExecutor commandExecutor)
+    {
+        this.commandExecutor = commandExecutor;
+    }
+
+    /**
+     * Program Entry Point<br>
+     * <br>
+     * Use following arguments.<br>
+     * <ul>
+     * <li>-p Listen port(optional, default 16627)</li>
+     * <li>-pl Command execute parallelism(optional, default 4)</li>
+     * <li>-lp Long running command execute parallelism(optional, default 4)</li>
+     * <li>-sf Secret file path(optional, default ~/.storm/storm_tools_server.secret)</li>
+     * <li>-sh Show help</li>
+     * </ul>
+     *
+     * @param args Argments
+     */
+    public static void main(String... args)
+    {
+        Options cliOptions = createOptions();
+        CommandLineParser parser = new PosixParser();
+        CommandLine commandLine = null;
+        HelpFormatter help = new HelpFormatter();
+
+        try
+        {
+            commandLine = parser.parse(cliOptions, args);
+        }
+        catch (ParseException pex)
+        {
+            help.printHelp(StormToolsServer.class.getName(), cliOptions, true);
+            return;
+        }
+
+        if (commandLine.hasOption("sh"))
+        {
+            help.printHelp(StormToolsServer.class.getName(), cliOptions, true);
+            return;
+        }
+
+        int port = DEFAULT_PORT;
+        if (commandLine.hasOption("p") == true)
+        {
+            port = Integer.parseInt(commandLine.getOptionValue("p"));
+        }
+
+        int parallelism = DEFAULT_PARALLELISM;
+        if (commandLine.hasOption("pl") == true)
+        {
+            parallelism = Integer.parseInt(commandLine.getOptionValue("pl"));
+        }
+
+        int longParallelism = DEFAULT_LONG_PARALLELISM;
+        if (commandLine.hasOption("lp") == true)
+        {
+            longParallelism = Integer.parseInt(commandLine.getOptionValue("lp"));
+        }
+
+        Path secretPath = Paths.get(System.getProperty("user.home"), DEFAULT_SECRET_FILE);
+        if (commandLine.hasOption("sf") == true)
+        {
+            secretPath = Paths.get(commandLine.getOptionValue("sf"));
+        }
+
+        // Read storm config once, and share it with all commands until storm.yaml is changed.
+        StormToolsServer server = new StormToolsServer(new StormToolsCommandExecutor(
+                new StormConfigValueCache()));
+        try
+        {
+            server.serve(port, parallelism, longParallelism, secretPath);
+        }
+        catch (IOException ex)
+        {
+            String logFormat = "Storm tools server failed. Exit server. : Port={0}";
+            logger.error(MessageFormat.format(logFormat, String.valueOf(port)), ex);
+            Runtime.getRuntime().exit(RETURN_FAILURE);
+        }
+    }
+
+    /**
+     * Listen port and execute requested commands until server socket is closed.
+     *
+     * @param port Listen port
+     * @param parallelism Command execute parallelism
+     * @param longParallelism Long running command execute parallelism
+     * @param secretPath Secret file path
+     * @throws IOException Listen failed
+     */
+    public void serve(int port, int parallelism, int longParallelism, Path secretPath)
+            throws IOException
+    {
+        final String secret = writeSecret(secretPath);
+        ClientLogAppender.install();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("StormToolsServer-%d").build());
+        final ExecutorService longExecutor = Executors.newFixedThreadPool(longParallelism,
+                new ThreadFactoryBuilder().setNameFormat("StormToolsServerLong-%d").build());
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getByName(null)))
+        {
+            String logFormat = "Storm tools server started. : Address={0}, SecretFile={1}";
+            logger.info(MessageFormat.format(logFormat, serverSocket.getLocalSocketAddress(),
+                    secretPath));
+
+            while (true)
+            {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        handle(socket, secret, longExecutor);
+                    }
+                });
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            longExecutor.shutdownNow();
+            Files.deleteIfExists(secretPath);
+        }
+    }
+
+    /**
+     * Read one request from client socket, execute it and write result.<br>
+     * Long running command is handed over to long running command pool.
+     *
+     * @param socket Client socket
+     * @param secret Shared secret
+     * @param longExecutor Long running command pool
+     */
+    private void handle(final Socket socket, String secret, ExecutorService longExecutor)
+    {
+        boolean handedOver = false;
+        try
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+            final PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            // Secret and request are read with timeout, and command runs without timeout.
+            socket.setSoTimeout(REQUEST_READ_TIMEOUT);
+            if (authenticate(reader.readLine(), secret) == false)
+            {
+                String logFormat = "Client authentication failed. Request is rejected. : Client={0}";
+                logger.warn(MessageFormat.format(logFormat, socket.getRemoteSocketAddress()));
+                return;
+            }
+
+            final List<String> args = readRequest(reader);
+            socket.setSoTimeout(0);
+            writer.println(ACCEPTED_LINE);
+            writer.flush();
+
+            if (this.commandExecutor.isLongRunning(args))
+            {
+                longExecutor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            executeRequest(args, writer);
+                        }
+                        finally
+                        {
+                            IOUtils.closeQuietly(socket);
+                        }
+                    }
+                });
+                handedOver = true;
+                return;
+            }
+
+            executeRequest(args, writer);
+        }
+        catch (IOException | RejectedExecutionException ex)
+        {
+            String logFormat = "Client request handle failed. : Client={0}";
+            logger.warn(MessageFormat.format(logFormat, socket.getRemoteSocketAddress()), ex);
+        }
+        finally
+        {
+            if (handedOver == false)
+            {
+                IOUtils.closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Execute request and write result. Log of the command is also written to client while executing.
+     *
+     * @param args Request arguments
+     * @param writer Client output
+     */
+    private void executeRequest(List<String> args, PrintWriter writer)
+    {
+        int returnCode = RETURN_FAILURE;
+        ClientLogAppender.ClientOutput output = ClientLogAppender.bind(writer);
+        try
+        {
+            returnCode = this.commandExecutor.execute(args, writer);
+        }
+        catch (RuntimeException ex)
+        {
+            String logFormat = "Command execute failed. : Args={0}";
+            logger.warn(MessageFormat.format(logFormat, args), ex);
+            writer.println("Command execute failed. : " + ex.toString());
+        }
+        finally
+        {
+            output.close();
+        }
+
+        writer.println(EXIT_PREFIX + returnCode);
+        writer.flush();
+    }
+
+    /**
+     * Generate random secret, and write it to secret file readable only by server user.<br>
+     * Secret is written to temporary file created with owner only permission, and moved to secret file.
+     *
+     * @param secretPath Secret file path
+     * @return Generated secret
+     * @throws IOException Write failed
+     */
+    private static String writeSecret(Path secretPath) throws IOException
+    {
+        byte[] secretBytes = new byte[SECRET_LENGTH];
+        new SecureRandom().nextBytes(secretBytes);
+        String secret = BaseEncoding.base16().lowerCase().encode(secretBytes);
+
+        Path secretDir = secretPath.toAbsolutePath().getParent();
+        Files.createDirectories(secretDir);
+        Path tempPath = secretDir.resolve(secretPath.getFileName() + ".tmp");
+        Files.deleteIfExists(tempPath);
+        Files.createFile(tempPath,
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        Files.write(tempPath, secret.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempPath, secretPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return secret;
+    }
+
+    /**
+     * Check secret sent by client. Compared in constant time.
+     *
+     * @param clientSecret Secret sent by client(null if not sent)
+     * @param secret Shared secret
+     * @return true if secret matches
+     */
+    private boolean authenticate(String clientSecret, String secret)
+    {
+        if (clientSecret == null)
+        {
+            return false;
+        }
+
+        return MessageDigest.isEqual(clientSecret.trim().getBytes(StandardCharsets.UTF_8),
+                secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read request arguments.
+     *
+     * @param reader Request reader
+     * @return Request arguments
+     * @throws IOException Read failed or request is malformed
+     */
+    private List<String> readRequest(BufferedReader reader) throws IOException
+    {
+        String countLine = reader.readLine();
+        if (countLine == null)
+        {
+            throw new IOException("Request is empty.");
+        }
+
+        int count;
+        try
+        {
+            count = Integer.parseInt(countLine.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IOException("Request argument count is invalid. : Count=" + countLine, ex);
+        }
+
+        List<String> args = new ArrayList<>();
+        for (int index = 0; index < count; index++)
+        {
+            String arg = reader.readLine();
+            if (arg == null)
+            {
+                throw new IOException("Request is truncated. : Args=" + args);
+            }
+            args.add(arg);
+        }
+
+        return args;
+    }
+
+    /**
+     * Generate command line analyze option object.
+     *
+     * @return command line analyze option object
+     */
+    public static Options createOptions()
+    {
+        Options cliOptions = new Options();
+
+        // Listen port option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Listen port");
+        OptionBuilder.withDescription("Listen port on loopback address");
+        OptionBuilder.isRequired(false);
+        Option portOption = OptionBuilder.create("p");
+
+        // Parallelism option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Command execute parallelism");
+        OptionBuilder.withDescription("Command execute parallelism");
+        OptionBuilder.isRequired(false);
+        Option parallelismOption = OptionBuilder.create("pl");
+
+        // Long running command parallelism option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Long running command execute parallelism");
+        OptionBuilder.withDescription("Execute parallelism of long running commands(wait, putconfig, restart, batch, bulk)");
+        OptionBuilder.isRequired(false);
+        Option longParallelismOption = OptionBuilder.create("lp");
+
+        // Secret file option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Secret file path");
+        OptionBuilder.withDescription("Secret file path. Clients must send the secret written in this file");
+        OptionBuilder.isRequired(false);
+        Option secretOption = OptionBuilder.create("sf");
+
+        // Help option
+        OptionBuilder.withDescription("show help");
+        Option helpOption = OptionBuilder.create("sh");
+
+        cliOptions.addOption(portOption);
+        cliOptions.addOption(parallelismOption);
+        cliOptions.addOption(longParallelismOption);
+        cliOptions.addOption(secretOption);
+        cliOptions.addOption(helpOption);
+        return cliOptions;
+    }
+}
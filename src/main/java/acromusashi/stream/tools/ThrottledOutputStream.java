@@ -0,0 +1,95 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Output stream which limits write bandwidth by token buckets.<br>
+ * Written data is divided to small slices and each slice acquires permits(byte) from all limiters,
+ * so concurrent streams sharing one limiter share its bandwidth fairly.
+ *
+ * @author kimura
+ */
+public class ThrottledOutputStream extends FilterOutputStream
+{
+    /** Max bytes of one slice */
+    private static final int          SLICE_SIZE = 16 * 1024;
+
+    /** Bandwidth limiters(permit is byte) */
+    private final List<RateLimiter>   limiters;
+
+    /** Host transfer context to count written bytes */
+    private final HostTransferContext context;
+
+    /**
+     * Constructor
+     *
+     * @param out Output stream
+     * @param limiters Bandwidth limiters(permit is byte)
+     * @param context Host transfer context to count written bytes
+     */
+    public ThrottledOutputStream(OutputStream out, List<RateLimiter> limiters,
+            HostTransferContext context)
+    {
+        super(out);
+        this.limiters = limiters;
+        this.context = context;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        acquire(1);
+        this.out.write(b);
+        this.context.addBytes(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        int written = 0;
+        while (written < len)
+        {
+            int sliceLength = Math.min(SLICE_SIZE, len - written);
+            acquire(sliceLength);
+            this.out.write(b, off + written, sliceLength);
+            this.context.addBytes(sliceLength);
+            written += sliceLength;
+        }
+    }
+
+    /**
+     * Acquire permits from all limiters.
+     *
+     * @param permits Permits(byte)
+     */
+    private void acquire(int permits)
+    {
+        for (RateLimiter limiter : this.limiters)
+        {
+            limiter.acquire(permits);
+        }
+    }
+}
@@ -0,0 +1,761 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang.StringUtils;
+import org.apache.thrift7.TException;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.stream.config.StormConfigGenerator;
+import acromusashi.stream.config.StormConfigUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import backtype.storm.Config;
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.KillOptions;
+import backtype.storm.generated.Nimbus;
+import backtype.storm.generated.NotAliveException;
+import backtype.storm.generated.TopologySummary;
+
+/**
+ * Kill or deactivate multiple topologies at once.<br>
+ * This tool execute following procedure.<br>
+ * <ol>
+ * <li>Get target topologies from nimbus by names and name pattern.</li>
+ * <li>Request kill or deactivate of all target topologies concurrently(up to nimbus connection pool size).</li>
+ * <li>Poll cluster summary by one shared loop until nimbus no longer reports killed topologies, or reports deactivated topologies as inactive.</li>
+ * <li>Print request time and confirm time of each topology.</li>
+ * </ol>
+ * ReturnCode is 0 if all topologies are confirmed, 1 if some topologies are not confirmed till timeout,
+ * 2 if some topologies not exist or request failed.
+ * 
+ * @author kimura
+ */
+public class TopologyBulkTool
+{
+    /** Default config path */
+    private static final String    DEFAULT_CONFIG_PATH        = "/opt/storm/conf/storm.yaml";
+
+    /** Default confirm wait timeout(second) */
+    private static final int       DEFAULT_CONFIRM_TIMEOUT    = 30;
+
+    /** Default nimbus thrift port */
+    private static final int       DEFAULT_NIMBUS_THRIFT_PORT = 6627;
+
+    /** Default topology message timeout(second), used as kill wait time of nimbus default */
+    private static final int       DEFAULT_MESSAGE_TIMEOUT    = 30;
+
+    /** Poll interval(millisecond) while waiting confirmation */
+    private static final long      CONFIRM_POLL_INTERVAL      = 200L;
+
+    /** Topology status of deactivated topology */
+    private static final String    INACTIVE_STATUS            = "INACTIVE";
+
+    /** Result output format */
+    private static final String    RESULT_FORMAT              = "%-20s %-12s %-12s %-12s";
+
+    /** Return code All topologies are confirmed. */
+    private static final int       RETURN_SUCCESS             = 0;
+
+    /** Return code Some topologies are not confirmed till timeout. */
+    private static final int       RETURN_NOT_CONFIRMED       = 1;
+
+    /** Return code Some topologies not exist, or request failed. */
+    private static final int       RETURN_FAILURE             = 2;
+
+    /** Logger */
+    private static final Logger    logger                     = LoggerFactory.getLogger(TopologyBulkTool.class);
+
+    /** Nimbus client pool */
+    private final NimbusClientPool pool;
+
+    /** true if kill, false if deactivate */
+    private final boolean          kill;
+
+    /** Kill wait time(second). Negative means nimbus default. */
+    private final int              killWait;
+
+    /** Confirm wait timeout(second) after kill wait time */
+    private final int              confirmTimeout;
+
+    /**
+     * Constructor
+     * 
+     * @param pool Nimbus client pool
+     * @param kill true if kill, false if deactivate
+     * @param killWait Kill wait time(second). Negative means nimbus default.
+     * @param confirmTimeout Confirm wait timeout(second) after kill wait time
+     */
+    public TopologyBulkTool(NimbusClientPool pool, boolean kill, int killWait, int confirmTimeout)
+    {
+        this.pool = pool;
+        this.kill = kill;
+        this.killWait = killWait;
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    /**
+     * Program Entry Point<br>
+     * <br>
+     * Use following arguments.<br>
+     * <ul>
+     * <li>-c Config path(optional, default /opt/storm/conf/storm.yaml)</li>
+     * <li>-a Action, kill or deactivate(required)</li>
+     * <li>-t Target topology name(-t or -tp is required, can be specified multiple times or separated by comma)</li>
+     * <li>-tp Target topology name pattern(regular expression, -t or -tp is required)</li>
+     * <li>-w Kill wait time(optional, default is nimbus default, topology message timeout)</li>
+     * <li>-cw Confirm wait timeout after kill wait time(optional, default 30sec)</li>
+     * <li>-sh Show help</li>
+     * </ul>
+     * 
+     * @param args Argments
+     */
+    public static void main(String... args)
+    {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), true);
+        int returnCode = execute(out, args);
+        out.flush();
+        if (returnCode != 0)
+        {
+            Runtime.getRuntime().exit(returnCode);
+        }
+    }
+
+    /**
+     * Parse arguments, and execute bulk kill or deactivate.
+     * 
+     * @param out Result output
+     * @param args Argments
+     * @return ReturnCode
+     */
+    public static int execute(PrintWriter out, String... args)
+    {
+        Options cliOptions = createOptions();
+        CommandLineParser parser = new PosixParser();
+        CommandLine commandLine = null;
+
+        try
+        {
+            commandLine = parser.parse(cliOptions, args);
+        }
+        catch (ParseException pex)
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        if (commandLine.hasOption("sh"))
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        String action = commandLine.getOptionValue("a");
+        if ("kill".equals(action) == false && "deactivate".equals(action) == false)
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        List<String> targetTopologies = new ArrayList<>();
+        if (commandLine.hasOption("t") == true)
+        {
+            for (String optionValue : commandLine.getOptionValues("t"))
+            {
+                for (String topologyName : StringUtils.split(optionValue, ","))
+                {
+                    if (targetTopologies.contains(topologyName.trim()) == false)
+                    {
+                        targetTopologies.add(topologyName.trim());
+                    }
+                }
+            }
+        }
+
+        String topologyPattern = commandLine.getOptionValue("tp");
+        if (targetTopologies.isEmpty() && topologyPattern == null)
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        int killWait = -1;
+        int confirmTimeout = DEFAULT_CONFIRM_TIMEOUT;
+        try
+        {
+            if (commandLine.hasOption("w") == true)
+            {
+                killWait = Integer.parseInt(commandLine.getOptionValue("w"));
+            }
+
+            if (commandLine.hasOption("cw") == true)
+            {
+                confirmTimeout = Integer.parseInt(commandLine.getOptionValue("cw"));
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            printHelp(cliOptions, out);
+            return RETURN_FAILURE;
+        }
+
+        String configPath = commandLine.getOptionValue("c", DEFAULT_CONFIG_PATH);
+        Config config = null;
+        try
+        {
+            config = StormConfigGenerator.loadStormConfig(configPath);
+        }
+        catch (IOException ex)
+        {
+            String logFormat = "Config file load failed. Exit bulk tool. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, configPath), ex);
+            return RETURN_FAILURE;
+        }
+
+        String nimbusHost = StormConfigUtil.getStringValue(config, Config.NIMBUS_HOST, "");
+        int nimbusPort = StormConfigUtil.getIntValue(config, Config.NIMBUS_THRIFT_PORT,
+                DEFAULT_NIMBUS_THRIFT_PORT);
+        NimbusClientPool pool = NimbusClientPool.getShared(nimbusHost, nimbusPort);
+        ClusterSummaryCache clusterCache = ClusterSummaryCache.getShared(config, pool);
+
+        TopologyBulkTool bulkTool = new TopologyBulkTool(pool, "kill".equals(action), killWait,
+                confirmTimeout);
+        try
+        {
+            return bulkTool.executeBulk(targetTopologies, topologyPattern, out);
+        }
+        catch (TException ex)
+        {
+            String logFormat = "Nimbus access failed. Exit bulk tool. : NimbusHost={0}, NimbusPort={1}";
+            logger.error(MessageFormat.format(logFormat, nimbusHost, nimbusPort), ex);
+            return RETURN_FAILURE;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            logger.error("Topology bulk operation interrupted. Exit bulk tool.", ex);
+            return RETURN_FAILURE;
+        }
+        finally
+        {
+            clusterCache.invalidate();
+        }
+    }
+
+    /**
+     * Kill or deactivate target topologies, and wait confirmation.
+     * 
+     * @param targetTopologies Target topology names
+     * @param topologyPattern Target topology name pattern(null if not specified)
+     * @param out Result output
+     * @return ReturnCode
+     * @throws TException Nimbus access failed at getting target topologies
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public int executeBulk(List<String> targetTopologies, String topologyPattern, PrintWriter out)
+            throws TException, InterruptedException
+    {
+        long startTime = System.nanoTime();
+        Map<String, TopologyResult> results = new LinkedHashMap<>();
+        for (String topologyName : targetTopologies)
+        {
+            results.put(topologyName, new TopologyResult(topologyName));
+        }
+
+        Map<String, TopologySummary> topologies = getTopologies();
+        if (topologyPattern != null)
+        {
+            Pattern pattern = Pattern.compile(topologyPattern);
+            for (String topologyName : topologies.keySet())
+            {
+                if (pattern.matcher(topologyName).matches()
+                        && results.containsKey(topologyName) == false)
+                {
+                    results.put(topologyName, new TopologyResult(topologyName));
+                }
+            }
+        }
+
+        List<TopologyResult> requestTargets = new ArrayList<>();
+        for (TopologyResult result : results.values())
+        {
+            if (topologies.containsKey(result.topologyName))
+            {
+                result.topologyId = topologies.get(result.topologyName).get_id();
+                requestTargets.add(result);
+            }
+            else
+            {
+                result.status = "notAlive";
+            }
+        }
+
+        requestAll(requestTargets);
+        waitConfirm(requestTargets);
+
+        int returnCode = RETURN_SUCCESS;
+        out.println(String.format(RESULT_FORMAT, "Topology_name", "Result", "Request_ms",
+                "Confirm_ms"));
+        out.println("-------------------------------------------------------------");
+        for (TopologyResult result : results.values())
+        {
+            out.println(String.format(RESULT_FORMAT, result.topologyName, result.status,
+                    toText(result.requestMillis), toText(result.confirmMillis)));
+            if ("timeout".equals(result.status))
+            {
+                returnCode = Math.max(returnCode, RETURN_NOT_CONFIRMED);
+            }
+            else if ("confirmed".equals(result.status) == false)
+            {
+                returnCode = Math.max(returnCode, RETURN_FAILURE);
+            }
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        String logFormat = "Topology bulk {0} finished. : Topologies={1}, ReturnCode={2}, Elapsed={3}ms";
+        String action = this.kill ? "kill" : "deactivate";
+        out.println(MessageFormat.format(logFormat, action, results.size(), returnCode,
+                String.valueOf(elapsed)));
+        out.flush();
+        return returnCode;
+    }
+
+    /**
+     * Request kill or deactivate of topologies concurrently, and wait all requests.
+     * 
+     * @param targets Target topologies
+     * @throws InterruptedException Interrupted while waiting
+     */
+    private void requestAll(List<TopologyResult> targets) throws InterruptedException
+    {
+        if (targets.isEmpty())
+        {
+            return;
+        }
+
+        int poolSize = Math.min(targets.size(), NimbusClientPool.DEFAULT_MAX_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactoryBuilder()
+                .setNameFormat("TopologyBulk-%d").setDaemon(true).build());
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final TopologyResult target : targets)
+            {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call()
+                    {
+                        request(target);
+                        return null;
+                    }
+                }));
+            }
+
+            for (int index = 0; index < futures.size(); index++)
+            {
+                try
+                {
+                    futures.get(index).get();
+                }
+                catch (ExecutionException ex)
+                {
+                    TopologyResult target = targets.get(index);
+                    target.status = "requestFailed";
+                    String logFormat = "Topology request failed. : Topology={0}";
+                    logger.error(MessageFormat.format(logFormat, target.topologyName), ex.getCause());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Request kill or deactivate of one topology, and record request time.
+     * 
+     * @param target Target topology
+     */
+    private void request(final TopologyResult target)
+    {
+        long requestStart = System.nanoTime();
+        try
+        {
+            if (this.kill && this.killWait < 0)
+            {
+                // Nimbus waits topology message timeout before removing topology killed without wait time.
+                target.killWaitSecs = getMessageTimeout(target.topologyId);
+            }
+            else if (this.kill)
+            {
+                target.killWaitSecs = this.killWait;
+            }
+
+            this.pool.execute(new NimbusCall<Void, NotAliveException>() {
+                @Override
+                public Void call(Nimbus.Client client) throws TException, NotAliveException
+                {
+                    if (TopologyBulkTool.this.kill == false)
+                    {
+                        client.deactivate(target.topologyName);
+                    }
+                    else if (TopologyBulkTool.this.killWait >= 0)
+                    {
+                        KillOptions options = new KillOptions();
+                        options.set_wait_secs(TopologyBulkTool.this.killWait);
+                        client.killTopologyWithOpts(target.topologyName, options);
+                    }
+                    else
+                    {
+                        client.killTopology(target.topologyName);
+                    }
+
+                    return null;
+                }
+            });
+
+            target.acceptedNanos = System.nanoTime();
+            target.requestMillis = TimeUnit.NANOSECONDS.toMillis(target.acceptedNanos - requestStart);
+            target.status = "requested";
+        }
+        catch (NotAliveException ex)
+        {
+            target.status = "notAlive";
+        }
+        catch (TException ex)
+        {
+            target.status = "requestFailed";
+            String logFormat = "Topology request failed. : Topology={0}";
+            logger.error(MessageFormat.format(logFormat, target.topologyName), ex);
+        }
+    }
+
+    /**
+     * Wait until nimbus no longer reports killed topologies, or reports deactivated topologies as inactive.<br>
+     * All topologies are checked by one cluster summary each poll. Topologies not confirmed till timeout are marked as timeout.
+     * 
+     * @param targets Target topologies
+     * @throws InterruptedException Interrupted while waiting
+     */
+    private void waitConfirm(List<TopologyResult> targets) throws InterruptedException
+    {
+        List<TopologyResult> pending = new ArrayList<>();
+        for (TopologyResult target : targets)
+        {
+            if ("requested".equals(target.status))
+            {
+                pending.add(target);
+            }
+        }
+
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        int minWaitSecs = Integer.MAX_VALUE;
+        int maxWaitSecs = 0;
+        for (TopologyResult target : pending)
+        {
+            minWaitSecs = Math.min(minWaitSecs, target.killWaitSecs);
+            maxWaitSecs = Math.max(maxWaitSecs, target.killWaitSecs);
+        }
+
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(CONFIRM_POLL_INTERVAL,
+                CONFIRM_POLL_INTERVAL, CONFIRM_POLL_INTERVAL,
+                TimeUnit.SECONDS.toMillis(maxWaitSecs + this.confirmTimeout));
+
+        // Nimbus removes killed topology after kill wait time, so polling starts at shortest kill wait time.
+        TimeUnit.MILLISECONDS.sleep(Math.min(TimeUnit.SECONDS.toMillis(minWaitSecs),
+                scheduler.getRemainingMillis()));
+
+        while (true)
+        {
+            try
+            {
+                Map<String, TopologySummary> topologies = getTopologies();
+                Iterator<TopologyResult> pendingIterator = pending.iterator();
+                while (pendingIterator.hasNext())
+                {
+                    TopologyResult target = pendingIterator.next();
+                    if (isConfirmed(topologies.get(target.topologyName)))
+                    {
+                        target.confirmMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                - target.acceptedNanos);
+                        target.status = "confirmed";
+                        pendingIterator.remove();
+                    }
+                }
+            }
+            catch (TException ex)
+            {
+                // Keep polling till timeout, nimbus may be busy with removing topologies.
+                String logFormat = "Cluster summary get failed. Retry next poll. : Cause={0}";
+                logger.warn(MessageFormat.format(logFormat, ex.toString()));
+            }
+
+            if (pending.isEmpty())
+            {
+                return;
+            }
+
+            if (scheduler.isExpired())
+            {
+                for (TopologyResult target : pending)
+                {
+                    target.status = "timeout";
+                }
+                return;
+            }
+
+            scheduler.update(false);
+            scheduler.waitNextPoll();
+        }
+    }
+
+    /**
+     * Check request is confirmed by topology status.
+     * 
+     * @param topology Current topology summary(null if topology not exist)
+     * @return true if topology is removed(kill) or inactive(deactivate)
+     */
+    private boolean isConfirmed(TopologySummary topology)
+    {
+        if (this.kill)
+        {
+            return topology == null;
+        }
+
+        return topology == null || INACTIVE_STATUS.equals(topology.get_status());
+    }
+
+    /**
+     * Get message timeout of topology from topology config.
+     * 
+     * @param topologyId Topology id
+     * @return Message timeout(second)
+     * @throws TException Nimbus access failed
+     * @throws NotAliveException Topology not alive
+     */
+    private int getMessageTimeout(final String topologyId) throws TException, NotAliveException
+    {
+        String confJson = this.pool.executeReadOnly(new NimbusCall<String, NotAliveException>() {
+            @Override
+            public String call(Nimbus.Client client) throws TException, NotAliveException
+            {
+                return client.getTopologyConf(topologyId);
+            }
+        });
+
+        Object topologyConf = JSONValue.parse(confJson);
+        if (topologyConf instanceof Map)
+        {
+            Object timeout = ((Map<?, ?>) topologyConf).get(Config.TOPOLOGY_MESSAGE_TIMEOUT_SECS);
+            if (timeout instanceof Number)
+            {
+                return ((Number) timeout).intValue();
+            }
+        }
+
+        return DEFAULT_MESSAGE_TIMEOUT;
+    }
+
+    /**
+     * Get summary of all topologies. Cluster summary is always got from nimbus, because cached summary may be old.
+     * 
+     * @return Map of topology name and summary
+     * @throws TException Nimbus access failed
+     */
+    private Map<String, TopologySummary> getTopologies() throws TException
+    {
+        ClusterSummary clusterSummary = this.pool.executeReadOnly(new NimbusCall<ClusterSummary, TException>() {
+            @Override
+            public ClusterSummary call(Nimbus.Client client) throws TException
+            {
+                return client.getClusterInfo();
+            }
+        });
+
+        Map<String, TopologySummary> topologies = new HashMap<>();
+        for (TopologySummary topology : clusterSummary.get_topologies())
+        {
+            topologies.put(topology.get_name(), topology);
+        }
+
+        return topologies;
+    }
+
+    /**
+     * Convert elapsed time to output text.
+     * 
+     * @param millis Elapsed time(millisecond, negative if not measured)
+     * @return Output text("-" if not measured)
+     */
+    private String toText(long millis)
+    {
+        if (millis < 0)
+        {
+            return "-";
+        }
+
+        return String.valueOf(millis);
+    }
+
+    /**
+     * Print help message.
+     * 
+     * @param cliOptions Options
+     * @param out Help output
+     */
+    private static void printHelp(Options cliOptions, PrintWriter out)
+    {
+        HelpFormatter help = new HelpFormatter();
+        help.printHelp(out, HelpFormatter.DEFAULT_WIDTH, TopologyBulkTool.class.getName(), null,
+                cliOptions, HelpFormatter.DEFAULT_LEFT_PAD, HelpFormatter.DEFAULT_DESC_PAD, null,
+                true);
+        out.flush();
+    }
+
+    /**
+     * Generate command line analyze option object.
+     * 
+     * @return command line analyze option object
+     */
+    public static Options createOptions()
+    {
+        Options cliOptions = new Options();
+
+        // Config path option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Storm config path");
+        OptionBuilder.withDescription("Storm config path");
+        OptionBuilder.isRequired(false);
+        Option configOption = OptionBuilder.create("c");
+
+        // Action option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Action");
+        OptionBuilder.withDescription("Action(kill or deactivate)");
+        OptionBuilder.isRequired(true);
+        Option actionOption = OptionBuilder.create("a");
+
+        // Target topology name
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Target topology name");
+        OptionBuilder.withDescription("Target topology name(can be specified multiple times or separated by comma)");
+        OptionBuilder.isRequired(false);
+        Option targetOption = OptionBuilder.create("t");
+
+        // Target topology name pattern
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Target topology name pattern");
+        OptionBuilder.withDescription("Target topology name pattern(regular expression)");
+        OptionBuilder.isRequired(false);
+        Option patternOption = OptionBuilder.create("tp");
+
+        // Kill wait option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Kill wait time(Sec)");
+        OptionBuilder.withDescription("Kill wait time(Sec). Default is nimbus default");
+        OptionBuilder.isRequired(false);
+        Option killWaitOption = OptionBuilder.create("w");
+
+        // Confirm wait timeout option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Confirm wait timeout(Sec)");
+        OptionBuilder.withDescription("Confirm wait timeout(Sec) after kill wait time");
+        OptionBuilder.isRequired(false);
+        Option confirmOption = OptionBuilder.create("cw");
+
+        // ヘルプオプション
+        OptionBuilder.withDescription("show help");
+        Option helpOption = OptionBuilder.create("sh");
+
+        cliOptions.addOption(configOption);
+        cliOptions.addOption(actionOption);
+        cliOptions.addOption(targetOption);
+        cliOptions.addOption(patternOption);
+        cliOptions.addOption(killWaitOption);
+        cliOptions.addOption(confirmOption);
+        cliOptions.addOption(helpOption);
+        return cliOptions;
+    }
+
+    /**
+     * Bulk operation result of one topology.
+     */
+    private static class TopologyResult
+    {
+        /** Topology name */
+        final String    topologyName;
+
+        /** Topology id. null if not alive. */
+        volatile String topologyId;
+
+        /** Kill wait time(second) of nimbus. 0 if deactivate. */
+        volatile int    killWaitSecs;
+
+        /** Result status(requested, confirmed, timeout, notAlive or requestFailed) */
+        volatile String status;
+
+        /** Elapsed time(millisecond) of kill or deactivate request. -1 if not requested. */
+        volatile long   requestMillis = -1;
+
+        /** Elapsed time(millisecond) from request accepted to confirmation. -1 if not confirmed. */
+        volatile long   confirmMillis = -1;
+
+        /** Time(nanosecond) of request accepted */
+        volatile long   acceptedNanos;
+
+        /**
+         * Constructor
+         * 
+         * @param topologyName Topology name
+         */
+        TopologyResult(String topologyName)
+        {
+            this.topologyName = topologyName;
+        }
+    }
+}
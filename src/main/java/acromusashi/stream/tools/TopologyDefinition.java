@@ -0,0 +1,200 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.thrift7.TDeserializer;
+import org.apache.thrift7.TException;
+import org.apache.thrift7.TSerializer;
+
+import backtype.storm.generated.StormTopology;
+import backtype.storm.generated.SubmitOptions;
+
+/**
+ * Topology definition built by topology main class, which is passed from {@link TopologySubmitLauncher} to {@link TopologyJarSubmitter}.<br>
+ * File format is topology name, json config and thrift binary of topology, each written as length and bytes,
+ * and flag whether submit options exist followed by thrift binary of submit options.
+ *
+ * @author kimura
+ */
+public class TopologyDefinition
+{
+    /** Topology name */
+    private final String        name;
+
+    /** Topology config in json */
+    private final String        jsonConf;
+
+    /** Topology */
+    private final StormTopology topology;
+
+    /** Submit options. null if topology is submitted without options. */
+    private final SubmitOptions options;
+
+    /**
+     * Constructor
+     *
+     * @param name Topology name
+     * @param jsonConf Topology config in json
+     * @param topology Topology
+     * @param options Submit options(null if topology is submitted without options)
+     */
+    public TopologyDefinition(String name, String jsonConf, StormTopology topology,
+            SubmitOptions options)
+    {
+        this.name = name;
+        this.jsonConf = jsonConf;
+        this.topology = topology;
+        this.options = options;
+    }
+
+    /**
+     * Read definition from file.
+     *
+     * @param file Definition file
+     * @return Definition
+     * @throws IOException Read failed or file is broken
+     */
+    public static TopologyDefinition readFrom(File file) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file))))
+        {
+            String name = new String(readBytes(input), StandardCharsets.UTF_8);
+            String jsonConf = new String(readBytes(input), StandardCharsets.UTF_8);
+            TDeserializer deserializer = new TDeserializer();
+            StormTopology topology = new StormTopology();
+            deserializer.deserialize(topology, readBytes(input));
+
+            SubmitOptions options = null;
+            if (input.readBoolean())
+            {
+                options = new SubmitOptions();
+                deserializer.deserialize(options, readBytes(input));
+            }
+
+            return new TopologyDefinition(name, jsonConf, topology, options);
+        }
+        catch (TException ex)
+        {
+            throw new IOException("Topology deserialize failed. : File=" + file.getAbsolutePath(),
+                    ex);
+        }
+    }
+
+    /**
+     * Write definition to file.
+     *
+     * @param file Definition file
+     * @throws IOException Write failed
+     */
+    public void writeTo(File file) throws IOException
+    {
+        byte[] topologyBytes;
+        byte[] optionsBytes = null;
+        try
+        {
+            TSerializer serializer = new TSerializer();
+            topologyBytes = serializer.serialize(this.topology);
+            if (this.options != null)
+            {
+                optionsBytes = serializer.serialize(this.options);
+            }
+        }
+        catch (TException ex)
+        {
+            throw new IOException("Topology serialize failed. : Topology=" + this.name, ex);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file))))
+        {
+            writeBytes(output, this.name.getBytes(StandardCharsets.UTF_8));
+            writeBytes(output, this.jsonConf.getBytes(StandardCharsets.UTF_8));
+            writeBytes(output, topologyBytes);
+            output.writeBoolean(optionsBytes != null);
+            if (optionsBytes != null)
+            {
+                writeBytes(output, optionsBytes);
+            }
+        }
+    }
+
+    /**
+     * Read length and bytes.
+     *
+     * @param input Input
+     * @return Bytes
+     * @throws IOException Read failed
+     */
+    private static byte[] readBytes(DataInputStream input) throws IOException
+    {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write length and bytes.
+     *
+     * @param output Output
+     * @param bytes Bytes
+     * @throws IOException Write failed
+     */
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException
+    {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the jsonConf
+     */
+    public String getJsonConf()
+    {
+        return this.jsonConf;
+    }
+
+    /**
+     * @return the topology
+     */
+    public StormTopology getTopology()
+    {
+        return this.topology;
+    }
+
+    /**
+     * @return the options
+     */
+    public SubmitOptions getOptions()
+    {
+        return this.options;
+    }
+}
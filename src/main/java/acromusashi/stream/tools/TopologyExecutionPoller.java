@@ -0,0 +1,252 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.thrift7.TException;
+
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.Nimbus;
+import backtype.storm.generated.ExecutorSpecificStats;
+import backtype.storm.generated.ExecutorStats;
+import backtype.storm.generated.ExecutorSummary;
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.generated.NotAliveException;
+import backtype.storm.generated.TopologyInfo;
+import backtype.storm.generated.TopologySummary;
+import backtype.storm.utils.Utils;
+
+/**
+ * Poll tuple counters of multiple topologies from nimbus.<br>
+ * One polling round uses one getClusterInfo call shared by all topologies and one getTopologyInfo call for each topology,
+ * over nimbus connections reused from {@link NimbusClientPool}.
+ *
+ * @author kimura
+ */
+public class TopologyExecutionPoller
+{
+    /** Statistics window of all time */
+    private static final String    ALL_TIME_WINDOW = ":all-time";
+
+    /** Nimbus client pool */
+    private final NimbusClientPool pool;
+
+    /** Nimbus thrift call count */
+    private int                    callCount;
+
+    /**
+     * Constructor
+     *
+     * @param pool Nimbus client pool
+     */
+    public TopologyExecutionPoller(NimbusClientPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Find alive topologies whose name matches pattern.
+     *
+     * @param namePattern Topology name pattern(regular expression)
+     * @return Matched topology names
+     * @throws TException Nimbus access failed
+     */
+    public List<String> findTopologies(String namePattern) throws TException
+    {
+        Pattern pattern = Pattern.compile(namePattern);
+        List<String> topologyNames = new ArrayList<>();
+        for (TopologySummary topology : getClusterInfo().get_topologies())
+        {
+            if (pattern.matcher(topology.get_name()).matches())
+            {
+                topologyNames.add(topology.get_name());
+            }
+        }
+
+        return topologyNames;
+    }
+
+    /**
+     * Poll tuple counters of topologies.
+     *
+     * @param topologyNames Topology names
+     * @return Map of topology name and sample(same order as topology names)
+     * @throws TException Nimbus access failed
+     */
+    public Map<String, TopologyExecutionSample> poll(Collection<String> topologyNames)
+            throws TException
+    {
+        Map<String, String> topologyIds = new HashMap<>();
+        for (TopologySummary topology : getClusterInfo().get_topologies())
+        {
+            topologyIds.put(topology.get_name(), topology.get_id());
+        }
+
+        Map<String, TopologyExecutionSample> samples = new LinkedHashMap<>();
+        for (String topologyName : topologyNames)
+        {
+            String topologyId = topologyIds.get(topologyName);
+            if (topologyId == null)
+            {
+                samples.put(topologyName, TopologyExecutionSample.notAlive(topologyName));
+                continue;
+            }
+
+            samples.put(topologyName, sample(topologyName, topologyId));
+        }
+
+        return samples;
+    }
+
+    /**
+     * @return the callCount
+     */
+    public int getCallCount()
+    {
+        return this.callCount;
+    }
+
+    /**
+     * Get cluster summary.
+     *
+     * @return Cluster summary
+     * @throws TException Nimbus access failed
+     */
+    private ClusterSummary getClusterInfo() throws TException
+    {
+        this.callCount++;
+        return this.pool.executeReadOnly(new NimbusCall<ClusterSummary, TException>() {
+            @Override
+            public ClusterSummary call(Nimbus.Client client) throws TException
+            {
+                return client.getClusterInfo();
+            }
+        });
+    }
+
+    /**
+     * Sample tuple counters of one topology.
+     *
+     * @param topologyName Topology name
+     * @param topologyId Topology id
+     * @return Sample
+     * @throws TException Nimbus access failed
+     */
+    private TopologyExecutionSample sample(String topologyName, final String topologyId)
+            throws TException
+    {
+        TopologyInfo topologyInfo = null;
+        this.callCount++;
+        try
+        {
+            topologyInfo = this.pool.executeReadOnly(new NimbusCall<TopologyInfo, NotAliveException>() {
+                @Override
+                public TopologyInfo call(Nimbus.Client client) throws TException,
+                        NotAliveException
+                {
+                    return client.getTopologyInfo(topologyId);
+                }
+            });
+        }
+        catch (NotAliveException ex)
+        {
+            // Topology is killed after getClusterInfo.
+            return TopologyExecutionSample.notAlive(topologyName);
+        }
+
+        TopologyExecutionSample sample = new TopologyExecutionSample(topologyName, true);
+        for (ExecutorSummary executor : topologyInfo.get_executors())
+        {
+            // System components(ex. acker, system bolt) keep emitting tick and metrics tuples after topology stopped.
+            if (Utils.isSystemId(executor.get_component_id()))
+            {
+                continue;
+            }
+
+            ExecutorStats stats = executor.get_stats();
+            if (stats == null)
+            {
+                continue;
+            }
+
+            long emitted = sumWindow(stats.get_emitted());
+            ExecutorSpecificStats specific = stats.get_specific();
+            if (specific != null && specific.is_set_spout())
+            {
+                sample.addSpoutCounters(emitted, sumWindow(specific.get_spout().get_acked()),
+                        sumWindow(specific.get_spout().get_failed()));
+            }
+            else if (specific != null && specific.is_set_bolt())
+            {
+                sample.addBoltCounters(emitted, sumWindow(specific.get_bolt().get_acked()),
+                        sumWindow(specific.get_bolt().get_failed()));
+            }
+            else
+            {
+                sample.addBoltCounters(emitted, 0, 0);
+            }
+        }
+
+        return sample;
+    }
+
+    /**
+     * Sum all-time window counters of all streams except system streams.
+     *
+     * @param windowStats Map of window and counters of each stream
+     * @return Summed counter
+     */
+    private long sumWindow(Map<String, ? extends Map<?, Long>> windowStats)
+    {
+        if (windowStats == null || windowStats.get(ALL_TIME_WINDOW) == null)
+        {
+            return 0;
+        }
+
+        long sum = 0;
+        for (Map.Entry<?, Long> streamCount : windowStats.get(ALL_TIME_WINDOW).entrySet())
+        {
+            if (isSystemStream(streamCount.getKey()) == false && streamCount.getValue() != null)
+            {
+                sum += streamCount.getValue().longValue();
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Judge whether counter key is system stream(ex. __ack_ack, __metrics) or stream from system component.
+     *
+     * @param streamKey Stream id, or global stream id of acked and failed counters of bolt
+     * @return true if system stream
+     */
+    private boolean isSystemStream(Object streamKey)
+    {
+        if (streamKey instanceof GlobalStreamId)
+        {
+            GlobalStreamId globalStreamId = (GlobalStreamId) streamKey;
+            return Utils.isSystemId(globalStreamId.get_componentId())
+                    || Utils.isSystemId(globalStreamId.get_streamId());
+        }
+
+        return streamKey instanceof String && Utils.isSystemId((String) streamKey);
+    }
+}
@@ -0,0 +1,189 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+/**
+ * Tuple counters of one topology sampled from nimbus at one time.<br>
+ * Counters are sum of all-time statistics of all executors.
+ *
+ * @author kimura
+ */
+public class TopologyExecutionSample
+{
+    /** Topology name */
+    private final String  topologyName;
+
+    /** Topology is alive or not */
+    private final boolean alive;
+
+    /** Sampled time(System.nanoTime base) */
+    private final long    sampledNanos;
+
+    /** Emitted tuple count of all executors */
+    private long          emitted;
+
+    /** Acked tuple count of all executors */
+    private long          acked;
+
+    /** Failed tuple count of all executors */
+    private long          failed;
+
+    /** Emitted tuple count of spouts */
+    private long          spoutEmitted;
+
+    /** Acked tuple count of spouts(completed tuple trees) */
+    private long          spoutAcked;
+
+    /** Failed tuple count of spouts(failed tuple trees) */
+    private long          spoutFailed;
+
+    /**
+     * Constructor
+     *
+     * @param topologyName Topology name
+     * @param alive Topology is alive or not
+     */
+    public TopologyExecutionSample(String topologyName, boolean alive)
+    {
+        this.topologyName = topologyName;
+        this.alive = alive;
+        this.sampledNanos = System.nanoTime();
+    }
+
+    /**
+     * Create sample of not alive topology.
+     *
+     * @param topologyName Topology name
+     * @return Sample
+     */
+    public static TopologyExecutionSample notAlive(String topologyName)
+    {
+        return new TopologyExecutionSample(topologyName, false);
+    }
+
+    /**
+     * Add counters of spout executor.
+     *
+     * @param executorEmitted Emitted tuple count
+     * @param executorAcked Acked tuple count
+     * @param executorFailed Failed tuple count
+     */
+    public void addSpoutCounters(long executorEmitted, long executorAcked, long executorFailed)
+    {
+        addBoltCounters(executorEmitted, executorAcked, executorFailed);
+        this.spoutEmitted += executorEmitted;
+        this.spoutAcked += executorAcked;
+        this.spoutFailed += executorFailed;
+    }
+
+    /**
+     * Add counters of bolt executor.
+     *
+     * @param executorEmitted Emitted tuple count
+     * @param executorAcked Acked tuple count
+     * @param executorFailed Failed tuple count
+     */
+    public void addBoltCounters(long executorEmitted, long executorAcked, long executorFailed)
+    {
+        this.emitted += executorEmitted;
+        this.acked += executorAcked;
+        this.failed += executorFailed;
+    }
+
+    /**
+     * Check counters are same as other sample.
+     *
+     * @param other Other sample
+     * @return true if all counters are same
+     */
+    public boolean hasSameCounters(TopologyExecutionSample other)
+    {
+        return this.emitted == other.emitted && this.acked == other.acked
+                && this.failed == other.failed;
+    }
+
+    /**
+     * Get pending tuple count, which is emitted from spouts and not completed yet.<br>
+     * Value is estimated from sampled statistics, and is 0 if topology does not use acking.
+     *
+     * @return Pending tuple count
+     */
+    public long getPendingTuples()
+    {
+        return Math.max(0L, this.spoutEmitted - this.spoutAcked - this.spoutFailed);
+    }
+
+    /**
+     * @return Processed(acked or failed) tuple count of all executors
+     */
+    public long getProcessed()
+    {
+        return this.acked + this.failed;
+    }
+
+    /**
+     * @return Completed(acked or failed) tuple tree count of spouts
+     */
+    public long getSpoutCompleted()
+    {
+        return this.spoutAcked + this.spoutFailed;
+    }
+
+    /**
+     * @return the topologyName
+     */
+    public String getTopologyName()
+    {
+        return this.topologyName;
+    }
+
+    /**
+     * @return the alive
+     */
+    public boolean isAlive()
+    {
+        return this.alive;
+    }
+
+    /**
+     * @return the sampledNanos
+     */
+    public long getSampledNanos()
+    {
+        return this.sampledNanos;
+    }
+
+    /**
+     * @return the emitted
+     */
+    public long getEmitted()
+    {
+        return this.emitted;
+    }
+
+    /**
+     * @return the acked
+     */
+    public long getAcked()
+    {
+        return this.acked;
+    }
+
+    /**
+     * @return the failed
+     */
+    public long getFailed()
+    {
+        return this.failed;
+    }
+}
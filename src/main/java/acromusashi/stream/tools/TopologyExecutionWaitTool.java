@@ -14,6 +14,14 @@ package acromusashi.stream.tools;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
@@ -24,13 +32,13 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang.StringUtils;
+import org.apache.thrift7.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import acromusashi.stream.config.StormConfigGenerator;
 import acromusashi.stream.config.StormConfigUtil;
-import acromusashi.stream.exception.ConnectFailException;
-import acromusashi.stream.topology.state.TopologyExecutionGetter;
 import acromusashi.stream.topology.state.TopologyExecutionStatus;
 import backtype.storm.Config;
 
@@ -38,11 +46,14 @@ import backtype.storm.Config;
  * Topology tuple execution stop wait tool's main class.<br>
  * This tool execute following procedure.<br>
  * <ol>
- * <li>Get topology statistics from nimbus interval.</li>
- * <li>If topology statistics does not mutate in intervals, exit with ReturnCode 0.</li>
- * <li>If topology statistics mutates till timeout, exit with ReturnCode 1.</li>
- * <li>If topology not exist, or other error occured, exit with ReturnCode 2.</li>
+ * <li>Get statistics of all target topologies from nimbus interval.</li>
+ * <li>If statistics of all topologies does not mutate in intervals, exit with ReturnCode 0.</li>
+ * <li>If statistics of some topologies mutates till timeout, exit with ReturnCode 1.</li>
+ * <li>If some topologies not exist, or other error occured, exit with ReturnCode 2.</li>
  * </ol>
+ * Statistics of all target topologies are got by shared nimbus calls in each interval,
+ * so nimbus load and wait time does not grow with the number of topologies.
+ * If multiple config paths are specified, clusters are waited concurrently and ReturnCode is highest of all clusters.
  * 
  * @author kimura
  */
@@ -54,13 +65,16 @@ public class TopologyExecutionWaitTool
     /** Default check interval */
     private static final int    DEFAULT_INTERVAL           = 1;
 
+    /** Default minimum poll interval(millisecond) */
+    private static final long   DEFAULT_MIN_INTERVAL       = 500L;
+
     /** Default wait timeout */
     private static final int    DEFAULT_WAIT_TIMEOUT       = 30;
 
     /** Default nimbus thrift port */
     private static final int    DEFAULT_NIMBUS_THRIFT_PORT = 6627;
 
-    /** Check count */
+    /** Check count. Topology is judged as stopped when statistics does not mutate in (check count - 1) intervals. */
     private static final int    CHECK_COUNT                = 5;
 
     /** Return code Topology execution not stopped. */
@@ -85,19 +99,39 @@ public class TopologyExecutionWaitTool
      * <br>
      * Use following arguments.<br>
      * <ul>
-     * <li>-c Config path(optional, default /opt/storm/conf/storm.yaml)</li>
+     * <li>-c Config path(optional, default /opt/storm/conf/storm.yaml, can be specified multiple times to wait at multiple clusters)</li>
+     * <li>-cp Cluster parallelism. Max clusters waited at once(optional, default is all clusters)</li>
      * <li>-i Topology statistics check interval(optional, default 3sec)</li>
-     * <li>-t Check target topology name(requred)</li>
+     * <li>-t Check target topology name(-t or -tp is required, can be specified multiple times or separated by comma)</li>
+     * <li>-tp Check target topology name pattern(regular expression, -t or -tp is required)</li>
      * <li>-w Wait time out(optional, default 30sec)</li>
+     * <li>-mi Minimum poll interval(optional, default 500msec)</li>
+     * <li>-sw Stable window. Judge stopped when processed tuple rate stays zero over this window(optional, default (5 - 1) * interval sec)</li>
+     * <li>-dr Report drain progress(processed tuple rate, pending tuples and estimated drain time) each poll(optional)</li>
      * <li>-sh Show help</li>
      * </ul>
      * 
      * @param args Argments
      */
     public static void main(String... args)
+    {
+        int returnCode = execute(args);
+        if (returnCode != 0)
+        {
+            Runtime.getRuntime().exit(returnCode);
+        }
+    }
+
+    /**
+     * Execute wait tool in current process, and return ReturnCode instead of exit.
+     * 
+     * @param args Argments
+     * @return ReturnCode
+     */
+    public static int execute(String... args)
     {
         TopologyExecutionWaitTool waitTool = new TopologyExecutionWaitTool();
-        waitTool.startWaitTool(args);
+        return waitTool.startWaitTool(args);
     }
 
     /**
@@ -105,8 +139,9 @@ public class TopologyExecutionWaitTool
      * Check arguments and start tool.
      * 
      * @param args Argments
+     * @return ReturnCode
      */
-    private void startWaitTool(String[] args)
+    private int startWaitTool(String[] args)
     {
         Options cliOptions = createOptions();
         CommandLineParser parser = new PosixParser();
@@ -119,19 +154,44 @@ public class TopologyExecutionWaitTool
         }
         catch (ParseException pex)
         {
-            printHelpAndExit(help, cliOptions);
-            return;
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
         }
 
         if (commandLine.hasOption("sh"))
         {
-            printHelpAndExit(help, cliOptions);
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
         }
 
-        String configPath = DEFAULT_CONFIG_PATH;
+        List<String> configPaths = new ArrayList<>();
         if (commandLine.hasOption("c") == true)
         {
-            configPath = commandLine.getOptionValue("c");
+            configPaths.addAll(Arrays.asList(commandLine.getOptionValues("c")));
+        }
+        else
+        {
+            configPaths.add(DEFAULT_CONFIG_PATH);
+        }
+
+        int clusterParallelism = configPaths.size();
+        if (commandLine.hasOption("cp") == true)
+        {
+            try
+            {
+                clusterParallelism = Integer.parseInt(commandLine.getOptionValue("cp"));
+            }
+            catch (NumberFormatException ex)
+            {
+                printHelp(help, cliOptions);
+                return RETURN_FAILURE;
+            }
+        }
+
+        if (clusterParallelism < 1)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
         }
 
         int interval = DEFAULT_INTERVAL;
@@ -143,10 +203,17 @@ public class TopologyExecutionWaitTool
             }
             catch (NumberFormatException ex)
             {
-                printHelpAndExit(help, cliOptions);
+                printHelp(help, cliOptions);
+                return RETURN_FAILURE;
             }
         }
 
+        if (interval < 1)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
         int wait = DEFAULT_WAIT_TIMEOUT;
         if (commandLine.hasOption("w") == true)
         {
@@ -156,24 +223,132 @@ public class TopologyExecutionWaitTool
             }
             catch (NumberFormatException ex)
             {
-                printHelpAndExit(help, cliOptions);
+                printHelp(help, cliOptions);
+                return RETURN_FAILURE;
+            }
+        }
+
+        if (wait < 1)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
+        long minInterval = DEFAULT_MIN_INTERVAL;
+        if (commandLine.hasOption("mi") == true)
+        {
+            try
+            {
+                minInterval = Long.parseLong(commandLine.getOptionValue("mi"));
+            }
+            catch (NumberFormatException ex)
+            {
+                printHelp(help, cliOptions);
+                return RETURN_FAILURE;
             }
         }
 
-        String targetTopology = commandLine.getOptionValue("t");
+        if (minInterval < 1)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
+        long stableWindow = 0;
+        if (commandLine.hasOption("sw") == true)
+        {
+            try
+            {
+                stableWindow = TimeUnit.SECONDS.toMillis(Long.parseLong(commandLine
+                        .getOptionValue("sw")));
+            }
+            catch (NumberFormatException ex)
+            {
+                printHelp(help, cliOptions);
+                return RETURN_FAILURE;
+            }
+        }
+
+        Set<String> targetTopologies = new LinkedHashSet<>();
+        if (commandLine.hasOption("t") == true)
+        {
+            for (String optionValue : commandLine.getOptionValues("t"))
+            {
+                for (String topologyName : StringUtils.split(optionValue, ","))
+                {
+                    targetTopologies.add(topologyName.trim());
+                }
+            }
+        }
 
-        executeWaitTool(configPath, interval, targetTopology, wait);
+        String topologyPattern = null;
+        if (commandLine.hasOption("tp") == true)
+        {
+            topologyPattern = commandLine.getOptionValue("tp");
+        }
+
+        if (targetTopologies.isEmpty() && topologyPattern == null)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
+        final TopologyWaitSetting setting = new TopologyWaitSetting();
+        setting.setMinInterval(minInterval);
+        setting.setInterval(TimeUnit.SECONDS.toMillis(interval));
+        setting.setWaitTimeout(TimeUnit.SECONDS.toMillis(wait));
+        setting.setStableWindow(stableWindow);
+        setting.setDrainReport(commandLine.hasOption("dr"));
+
+        final Set<String> topologies = targetTopologies;
+        final String pattern = topologyPattern;
+        MultiClusterRunner runner = new MultiClusterRunner(clusterParallelism);
+        Map<String, Integer> returnCodes = runner.run(configPaths, new ClusterTask<Integer>() {
+            @Override
+            public Integer execute(String configPath)
+            {
+                return executeWaitTool(configPath, setting, topologies, pattern);
+            }
+        }, RETURN_FAILURE);
+
+        return mergeReturnCodes(returnCodes);
+    }
+
+    /**
+     * Merge return codes of clusters.<br>
+     * If multiple clusters are waited, log return code of each cluster.
+     * 
+     * @param returnCodes Map of config path and return code
+     * @return Return code(highest return code of all clusters)
+     */
+    private int mergeReturnCodes(Map<String, Integer> returnCodes)
+    {
+        int returnCode = 0;
+        for (Map.Entry<String, Integer> clusterCode : returnCodes.entrySet())
+        {
+            returnCode = Math.max(returnCode, clusterCode.getValue());
+            if (returnCodes.size() > 1)
+            {
+                String logFormat = "Cluster wait finished. : ConfigPath={0}, ReturnCode={1}";
+                logger.info(MessageFormat.format(logFormat, clusterCode.getKey(),
+                        clusterCode.getValue()));
+            }
+        }
+
+        return returnCode;
     }
 
     /**
      * Execute wait tool.
      * 
      * @param configPath configPath
-     * @param interval interval
-     * @param targetTopology targetTopology
-     * @param wait wait
+     * @param setting wait setting
+     * @param targetTopologies target topologies
+     * @param topologyPattern target topology name pattern(null if not specified)
+     * @return ReturnCode
      */
-    private void executeWaitTool(String configPath, int interval, String targetTopology, int wait)
+    private int executeWaitTool(String configPath, TopologyWaitSetting setting,
+            Set<String> targetTopologies, String topologyPattern)
     {
         Config config = null;
         try
@@ -184,72 +359,206 @@ public class TopologyExecutionWaitTool
         {
             String logFormat = "Config file load failed. Exit wait tool. : ConfigPath={0}";
             logger.error(MessageFormat.format(logFormat, configPath), ex);
-            Runtime.getRuntime().exit(RETURN_FAILURE);
-            return;
+            return RETURN_FAILURE;
         }
 
         String nimbusHost = StormConfigUtil.getStringValue(config, Config.NIMBUS_HOST, "");
         int nimbusPort = StormConfigUtil.getIntValue(config, Config.NIMBUS_THRIFT_PORT,
                 DEFAULT_NIMBUS_THRIFT_PORT);
 
-        long startTime = System.currentTimeMillis();
+        NimbusClientPool pool = NimbusClientPool.getShared(nimbusHost, nimbusPort);
+        TopologyExecutionPoller poller = new TopologyExecutionPoller(pool);
+        int returnCode = RETURN_FAILURE;
+        try
+        {
+            returnCode = waitTopologies(poller, setting, targetTopologies, topologyPattern);
+        }
+        catch (TException ex)
+        {
+            String logFormat = "Nimbus connect failed. Exit wait tool. : NimbusHost={0}, NimbusPort={1}";
+            logger.error(MessageFormat.format(logFormat, nimbusHost, nimbusPort), ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            String logFormat = "Topology wait interrupted. Exit wait tool.";
+            logger.error(logFormat, ex);
+        }
+        finally
+        {
+            String logFormat = "Nimbus call count. : NimbusCalls={0}";
+            logger.info(MessageFormat.format(logFormat, poller.getCallCount()));
+        }
+
+        return returnCode;
+    }
+
+    /**
+     * Wait execution stop of all target topologies.<br>
+     * Poll interval is adapted by {@link AdaptivePollScheduler}, and wait never exceeds timeout.
+     * 
+     * @param poller Topology execution poller
+     * @param setting wait setting
+     * @param targetTopologies target topologies
+     * @param topologyPattern target topology name pattern(null if not specified)
+     * @return Return code(highest return code of all topologies)
+     * @throws TException Nimbus access failed
+     * @throws InterruptedException Interrupted while waiting
+     */
+    private int waitTopologies(TopologyExecutionPoller poller, TopologyWaitSetting setting,
+            Set<String> targetTopologies, String topologyPattern) throws TException,
+            InterruptedException
+    {
+        long stableWindow = setting.getStableWindow();
+        if (stableWindow <= 0)
+        {
+            stableWindow = setting.getInterval() * (CHECK_COUNT - 1);
+        }
+
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(setting.getMinInterval(),
+                setting.getInterval(), stableWindow, setting.getWaitTimeout());
 
-        TopologyExecutionGetter getter = new TopologyExecutionGetter();
-        TopologyExecutionStatus result = null;
+        Set<String> topologyNames = new LinkedHashSet<>(targetTopologies);
+        if (topologyPattern != null)
+        {
+            topologyNames.addAll(poller.findTopologies(topologyPattern));
+        }
+
+        if (topologyNames.isEmpty())
+        {
+            String logFormat = "Topology not exist. Exit wait tool. : TopologyPattern={0}";
+            logger.error(MessageFormat.format(logFormat, topologyPattern));
+            return RETURN_FAILURE;
+        }
+
+        Map<String, TopologyWaitState> pendingStates = new LinkedHashMap<>();
+        for (String topologyName : topologyNames)
+        {
+            pendingStates.put(topologyName, new TopologyWaitState(topologyName, stableWindow));
+        }
+
+        Map<String, TopologyExecutionStatus> results = new LinkedHashMap<>();
 
         while (true)
         {
-            try
-            {
-                result = getter.getExecution(targetTopology, nimbusHost, nimbusPort,
-                        (int) TimeUnit.SECONDS.toMillis(interval), CHECK_COUNT);
-            }
-            catch (ConnectFailException ex)
+            Map<String, TopologyExecutionSample> samples = poller.poll(pendingStates.keySet());
+
+            boolean moving = false;
+            Iterator<TopologyWaitState> stateIterator = pendingStates.values().iterator();
+            while (stateIterator.hasNext())
             {
-                String logFormat = "Nimbus connect failed. Exit wait tool. : NimbusHost={0}, NimbusPort={1}";
-                logger.error(MessageFormat.format(logFormat, nimbusHost, nimbusPort), ex);
-                Runtime.getRuntime().exit(RETURN_FAILURE);
-                return;
+                TopologyWaitState state = stateIterator.next();
+                TopologyExecutionStatus status = state.update(samples.get(state.getTopologyName()));
+                moving = moving || state.isMoving();
+                if (setting.isDrainReport() && status == TopologyExecutionStatus.EXECUTING)
+                {
+                    logDrainProgress(state);
+                }
+                if (status == TopologyExecutionStatus.STOP)
+                {
+                    String logFormat = "Topology execution stopped. : Topology={0}";
+                    logger.info(MessageFormat.format(logFormat, state.getTopologyName()));
+                    results.put(state.getTopologyName(), status);
+                    stateIterator.remove();
+                }
+                else if (status == TopologyExecutionStatus.NOT_ALIVED)
+                {
+                    String logFormat = "Topology not exist. : Topology={0}";
+                    logger.error(MessageFormat.format(logFormat, state.getTopologyName()));
+                    results.put(state.getTopologyName(), status);
+                    stateIterator.remove();
+                }
             }
 
-            if (result == TopologyExecutionStatus.STOP)
+            if (pendingStates.isEmpty())
             {
                 break;
             }
 
-            if (result == TopologyExecutionStatus.NOT_ALIVED)
+            if (scheduler.isExpired())
             {
-                String logFormat = "Topology not exist. Exit wait tool. : Topology={0}";
-                logger.error(MessageFormat.format(logFormat, targetTopology));
-                Runtime.getRuntime().exit(RETURN_FAILURE);
+                for (String topologyName : pendingStates.keySet())
+                {
+                    String logFormat = "Topology wait timeout. : Topology={0}";
+                    logger.error(MessageFormat.format(logFormat, topologyName));
+                    results.put(topologyName, TopologyExecutionStatus.EXECUTING);
+                }
                 break;
             }
 
-            if (result == TopologyExecutionStatus.EXECUTING)
+            scheduler.update(moving);
+            scheduler.waitNextPoll();
+        }
+
+        return logResults(topologyNames, results);
+    }
+
+    /**
+     * Log drain progress of topology.
+     * 
+     * @param state wait state of topology
+     */
+    private void logDrainProgress(TopologyWaitState state)
+    {
+        String logFormat = "Topology drain progress. : Topology={0}, ProcessedRate={1}tuple/s, PendingTuples={2}, EstimatedDrain={3}";
+        long estimated = state.getEstimatedDrainMillis();
+        String estimatedStr = "unknown";
+        if (estimated >= 0)
+        {
+            estimatedStr = estimated + "ms";
+        }
+
+        logger.info(MessageFormat.format(logFormat, state.getTopologyName(),
+                String.format("%.1f", state.getProcessedRate()),
+                String.valueOf(state.getLastSample().getPendingTuples()), estimatedStr));
+    }
+
+    /**
+     * Log wait results of all topologies, and decide return code.
+     * 
+     * @param topologyNames target topologies
+     * @param results wait result of each topology
+     * @return Return code(highest return code of all topologies)
+     */
+    private int logResults(Set<String> topologyNames, Map<String, TopologyExecutionStatus> results)
+    {
+        int returnCode = 0;
+        List<String> stopped = new ArrayList<>();
+        List<String> notStopped = new ArrayList<>();
+        List<String> notExist = new ArrayList<>();
+        for (String topologyName : topologyNames)
+        {
+            TopologyExecutionStatus status = results.get(topologyName);
+            if (status == TopologyExecutionStatus.STOP)
             {
-                long nowTime = System.currentTimeMillis();
-                if ((nowTime - startTime) > TimeUnit.SECONDS.toMillis(wait))
-                {
-                    String logFormat = "Topology wait timeout. Exit wait tool. : Topology={0}";
-                    logger.error(MessageFormat.format(logFormat, targetTopology));
-                    Runtime.getRuntime().exit(RETURN_NOT_STOPPED);
-                    break;
-                }
+                stopped.add(topologyName);
+            }
+            else if (status == TopologyExecutionStatus.EXECUTING)
+            {
+                notStopped.add(topologyName);
+                returnCode = Math.max(returnCode, RETURN_NOT_STOPPED);
+            }
+            else
+            {
+                notExist.add(topologyName);
+                returnCode = Math.max(returnCode, RETURN_FAILURE);
             }
         }
 
+        String logFormat = "Topology wait finished. : Stopped={0}, NotStopped={1}, NotExist={2}";
+        logger.info(MessageFormat.format(logFormat, stopped, notStopped, notExist));
+        return returnCode;
     }
 
     /**
-     * Print help message and exit.
+     * Print help message.
      * 
      * @param help HelpFormatter
      * @param cliOptions Options
      */
-    private void printHelpAndExit(HelpFormatter help, Options cliOptions)
+    private void printHelp(HelpFormatter help, Options cliOptions)
     {
         help.printHelp(TopologyExecutionWaitTool.class.getName(), cliOptions, true);
-        Runtime.getRuntime().exit(RETURN_FAILURE);
     }
 
     /**
@@ -264,10 +573,17 @@ public class TopologyExecutionWaitTool
         // Config path option
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Storm config path");
-        OptionBuilder.withDescription("Storm config path");
+        OptionBuilder.withDescription("Storm config path(can be specified multiple times to wait at multiple clusters)");
         OptionBuilder.isRequired(false);
         Option configOption = OptionBuilder.create("c");
 
+        // Cluster parallelism option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Cluster parallelism");
+        OptionBuilder.withDescription("Max clusters waited at once(default is all clusters)");
+        OptionBuilder.isRequired(false);
+        Option clusterParallelismOption = OptionBuilder.create("cp");
+
         // Check interval option
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Check interval(Sec)");
@@ -278,10 +594,17 @@ public class TopologyExecutionWaitTool
         // Check target topology name
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Check target topology name");
-        OptionBuilder.withDescription("Check target topology name");
-        OptionBuilder.isRequired(true);
+        OptionBuilder.withDescription("Check target topology name(can be specified multiple times or separated by comma)");
+        OptionBuilder.isRequired(false);
         Option targetOption = OptionBuilder.create("t");
 
+        // Check target topology name pattern
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Check target topology name pattern");
+        OptionBuilder.withDescription("Check target topology name pattern(regular expression)");
+        OptionBuilder.isRequired(false);
+        Option patternOption = OptionBuilder.create("tp");
+
         // Wait timeout option
         OptionBuilder.hasArg(true);
         OptionBuilder.withArgName("Wait timeout(Sec)");
@@ -289,14 +612,38 @@ public class TopologyExecutionWaitTool
         OptionBuilder.isRequired(false);
         Option waitOption = OptionBuilder.create("w");
 
+        // Minimum poll interval option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Minimum poll interval(MilliSec)");
+        OptionBuilder.withDescription("Minimum poll interval(MilliSec). Poll interval starts from it and backs off while topology is executing");
+        OptionBuilder.isRequired(false);
+        Option minIntervalOption = OptionBuilder.create("mi");
+
+        // Stable window option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Stable window(Sec)");
+        OptionBuilder.withDescription("Judge stopped when processed tuple rate stays zero over this window(Sec)");
+        OptionBuilder.isRequired(false);
+        Option stableWindowOption = OptionBuilder.create("sw");
+
+        // Drain report option
+        OptionBuilder.withDescription("Report processed tuple rate and estimated drain time each poll");
+        OptionBuilder.isRequired(false);
+        Option drainReportOption = OptionBuilder.create("dr");
+
         // Help option
         OptionBuilder.withDescription("show help");
         Option helpOption = OptionBuilder.create("sh");
 
         cliOptions.addOption(configOption);
+        cliOptions.addOption(clusterParallelismOption);
         cliOptions.addOption(intervalOption);
         cliOptions.addOption(targetOption);
+        cliOptions.addOption(patternOption);
         cliOptions.addOption(waitOption);
+        cliOptions.addOption(minIntervalOption);
+        cliOptions.addOption(stableWindowOption);
+        cliOptions.addOption(drainReportOption);
         cliOptions.addOption(helpOption);
         return cliOptions;
     }
@@ -0,0 +1,245 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import org.apache.thrift7.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.generated.AlreadyAliveException;
+import backtype.storm.generated.InvalidTopologyException;
+import backtype.storm.generated.Nimbus;
+
+/**
+ * Upload topology jar to nimbus, and submit topology with uploaded jar.<br>
+ * Jar is uploaded and topology is built before topology is submitted, so both can be executed while old topology is draining.<br>
+ * Topology main class is executed in child JVM by {@link TopologySubmitLauncher}, so main class can not affect this process(ex. System.exit).
+ * Topology built by main class is submitted with uploaded jar location, so submit only sends topology definition to nimbus.
+ *
+ * @author kimura
+ */
+public class TopologyJarSubmitter
+{
+    /** Upload chunk size(byte). Same as storm command. */
+    private static final int       UPLOAD_CHUNK_SIZE  = 307200;
+
+    /** Logger */
+    private static final Logger    logger             = LoggerFactory.getLogger(TopologyJarSubmitter.class);
+
+    /** System properties forwarded to child JVM to read same storm config */
+    private static final String[]  FORWARD_PROPERTIES = { "storm.conf.file", "storm.options", "storm.home" };
+
+    /** Nimbus client pool */
+    private final NimbusClientPool pool;
+
+    /**
+     * Constructor
+     *
+     * @param pool Nimbus client pool
+     */
+    public TopologyJarSubmitter(NimbusClientPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Validate topology jar contains main class.
+     *
+     * @param jarFile Topology jar
+     * @param mainClass Topology main class
+     * @throws IOException Jar is not readable or main class not exist
+     */
+    public void validate(File jarFile, String mainClass) throws IOException
+    {
+        String classEntry = mainClass.replace('.', '/') + ".class";
+        try (ZipFile zipFile = new ZipFile(jarFile))
+        {
+            if (zipFile.getEntry(classEntry) == null)
+            {
+                String errFormat = "Main class not exist in jar. : Jar={0}, MainClass={1}";
+                throw new IOException(MessageFormat.format(errFormat, jarFile.getAbsolutePath(),
+                        mainClass));
+            }
+        }
+    }
+
+    /**
+     * Upload topology jar to nimbus.
+     *
+     * @param jarFile Topology jar
+     * @return Uploaded jar location on nimbus
+     * @throws TException Nimbus access failed
+     */
+    public String upload(final File jarFile) throws TException
+    {
+        return this.pool.execute(new NimbusCall<String, TException>() {
+            @Override
+            public String call(Nimbus.Client client) throws TException
+            {
+                String location = client.beginFileUpload();
+                byte[] buffer = new byte[UPLOAD_CHUNK_SIZE];
+                try (InputStream input = new FileInputStream(jarFile))
+                {
+                    int length = input.read(buffer);
+                    while (length >= 0)
+                    {
+                        client.uploadChunk(location, ByteBuffer.wrap(buffer, 0, length));
+                        length = input.read(buffer);
+                    }
+                }
+                catch (IOException ex)
+                {
+                    String errFormat = "Jar read failed. : Jar={0}";
+                    throw new TException(MessageFormat.format(errFormat,
+                            jarFile.getAbsolutePath()), ex);
+                }
+
+                client.finishFileUpload(location);
+                return location;
+            }
+        });
+    }
+
+    /**
+     * Build topology definition by executing main class of topology jar in child JVM.<br>
+     * Child JVM is started with topology jar and classpath of this process, same as storm jar command.
+     * Main class submits topology to local nimbus set by {@link TopologySubmitLauncher}, so nothing is sent to nimbus.
+     * Output of main class is written to log.
+     *
+     * @param jarFile Topology jar
+     * @param mainClass Topology main class
+     * @param args Arguments of main class
+     * @return Topology definition
+     * @throws IOException Child JVM start failed, main class failed or main class did not submit topology
+     * @throws InterruptedException Interrupted while waiting child JVM
+     */
+    public TopologyDefinition define(File jarFile, String mainClass, String[] args)
+            throws IOException, InterruptedException
+    {
+        File definitionFile = File.createTempFile("topology-", ".def");
+        Process process = null;
+        try
+        {
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+            command.add("-Dstorm.jar=" + jarFile.getAbsolutePath());
+            for (String property : FORWARD_PROPERTIES)
+            {
+                if (System.getProperty(property) != null)
+                {
+                    command.add("-D" + property + "=" + System.getProperty(property));
+                }
+            }
+            command.add("-cp");
+            command.add(jarFile.getAbsolutePath() + File.pathSeparator
+                    + System.getProperty("java.class.path"));
+            command.add(TopologySubmitLauncher.class.getName());
+            command.add(definitionFile.getAbsolutePath());
+            command.add(mainClass);
+            command.addAll(Arrays.asList(args));
+
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            process.getOutputStream().close();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    process.getInputStream(), StandardCharsets.UTF_8)))
+            {
+                String line = reader.readLine();
+                while (line != null)
+                {
+                    logger.info(MessageFormat.format("Topology main output. : {0}", line));
+                    line = reader.readLine();
+                }
+            }
+
+            int exitStatus = process.waitFor();
+            if (exitStatus != 0)
+            {
+                String errFormat = "Topology main failed. : MainClass={0}, ExitStatus={1}";
+                throw new IOException(MessageFormat.format(errFormat, mainClass, exitStatus));
+            }
+
+            if (definitionFile.length() == 0)
+            {
+                String errFormat = "Topology main did not submit topology. : MainClass={0}";
+                throw new IOException(MessageFormat.format(errFormat, mainClass));
+            }
+
+            return TopologyDefinition.readFrom(definitionFile);
+        }
+        finally
+        {
+            if (process != null)
+            {
+                // Kill child JVM if interrupted while waiting.
+                process.destroy();
+            }
+
+            definitionFile.delete();
+        }
+    }
+
+    /**
+     * Submit topology definition with uploaded jar location.
+     *
+     * @param uploadedLocation Uploaded jar location on nimbus
+     * @param definition Topology definition
+     * @throws TException Nimbus access failed
+     * @throws InvalidTopologyException Nimbus rejected topology, or topology with same name is alive
+     */
+    public void submit(final String uploadedLocation, final TopologyDefinition definition)
+            throws TException, InvalidTopologyException
+    {
+        this.pool.execute(new NimbusCall<Void, InvalidTopologyException>() {
+            @Override
+            public Void call(Nimbus.Client client) throws TException, InvalidTopologyException
+            {
+                try
+                {
+                    if (definition.getOptions() != null)
+                    {
+                        client.submitTopologyWithOpts(definition.getName(), uploadedLocation,
+                                definition.getJsonConf(), definition.getTopology(),
+                                definition.getOptions());
+                    }
+                    else
+                    {
+                        client.submitTopology(definition.getName(), uploadedLocation,
+                                definition.getJsonConf(), definition.getTopology());
+                    }
+                }
+                catch (AlreadyAliveException ex)
+                {
+                    String errFormat = "Topology already alive. : Topology={0}";
+                    throw new InvalidTopologyException(MessageFormat.format(errFormat,
+                            definition.getName()));
+                }
+
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,202 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+
+/**
+ * Setting of topology restart.
+ *
+ * @author kimura
+ */
+public class TopologyRestartSetting
+{
+    /** Storm config path */
+    private String   configPath;
+
+    /** Topology jar */
+    private File     jarFile;
+
+    /** Topology main class */
+    private String   mainClass;
+
+    /** Topology name */
+    private String   topologyName;
+
+    /** Arguments of topology main class */
+    private String[] topologyArgs;
+
+    /** Topology statistics check interval(second) while draining */
+    private int      interval;
+
+    /** Drain wait timeout(second) */
+    private int      waitTimeout;
+
+    /** Kill wait time(second) passed to nimbus */
+    private int      killWait;
+
+    /** Topology removal wait timeout(second) */
+    private int      removalTimeout;
+
+    /**
+     * Constructor
+     */
+    public TopologyRestartSetting()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * @return the configPath
+     */
+    public String getConfigPath()
+    {
+        return this.configPath;
+    }
+
+    /**
+     * @param configPath the configPath to set
+     */
+    public void setConfigPath(String configPath)
+    {
+        this.configPath = configPath;
+    }
+
+    /**
+     * @return the jarFile
+     */
+    public File getJarFile()
+    {
+        return this.jarFile;
+    }
+
+    /**
+     * @param jarFile the jarFile to set
+     */
+    public void setJarFile(File jarFile)
+    {
+        this.jarFile = jarFile;
+    }
+
+    /**
+     * @return the mainClass
+     */
+    public String getMainClass()
+    {
+        return this.mainClass;
+    }
+
+    /**
+     * @param mainClass the mainClass to set
+     */
+    public void setMainClass(String mainClass)
+    {
+        this.mainClass = mainClass;
+    }
+
+    /**
+     * @return the topologyName
+     */
+    public String getTopologyName()
+    {
+        return this.topologyName;
+    }
+
+    /**
+     * @param topologyName the topologyName to set
+     */
+    public void setTopologyName(String topologyName)
+    {
+        this.topologyName = topologyName;
+    }
+
+    /**
+     * @return the topologyArgs
+     */
+    public String[] getTopologyArgs()
+    {
+        return this.topologyArgs;
+    }
+
+    /**
+     * @param topologyArgs the topologyArgs to set
+     */
+    public void setTopologyArgs(String[] topologyArgs)
+    {
+        this.topologyArgs = topologyArgs;
+    }
+
+    /**
+     * @return the interval
+     */
+    public int getInterval()
+    {
+        return this.interval;
+    }
+
+    /**
+     * @param interval the interval to set
+     */
+    public void setInterval(int interval)
+    {
+        this.interval = interval;
+    }
+
+    /**
+     * @return the waitTimeout
+     */
+    public int getWaitTimeout()
+    {
+        return this.waitTimeout;
+    }
+
+    /**
+     * @param waitTimeout the waitTimeout to set
+     */
+    public void setWaitTimeout(int waitTimeout)
+    {
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * @return the killWait
+     */
+    public int getKillWait()
+    {
+        return this.killWait;
+    }
+
+    /**
+     * @param killWait the killWait to set
+     */
+    public void setKillWait(int killWait)
+    {
+        this.killWait = killWait;
+    }
+
+    /**
+     * @return the removalTimeout
+     */
+    public int getRemovalTimeout()
+    {
+        return this.removalTimeout;
+    }
+
+    /**
+     * @param removalTimeout the removalTimeout to set
+     */
+    public void setRemovalTimeout(int removalTimeout)
+    {
+        this.removalTimeout = removalTimeout;
+    }
+}
@@ -0,0 +1,615 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang.StringUtils;
+import org.apache.thrift7.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.stream.config.StormConfigGenerator;
+import acromusashi.stream.config.StormConfigUtil;
+import backtype.storm.Config;
+import backtype.storm.generated.InvalidTopologyException;
+import backtype.storm.generated.KillOptions;
+import backtype.storm.generated.Nimbus;
+import backtype.storm.generated.NotAliveException;
+import backtype.storm.generated.TopologySummary;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Topology restart tool's main class.<br>
+ * This tool execute following procedure, and overlaps jar upload with drain of old topology.<br>
+ * <ol>
+ * <li>Check target topology exists.</li>
+ * <li>Start validating and uploading new jar to nimbus, and building new topology by main class in child JVM in background.</li>
+ * <li>Deactivate topology, and wait tuple execution stop by {@link TopologyExecutionWaitTool}.</li>
+ * <li>Wait jar upload and topology build. If either failed or topology did not stop, activate topology again and exit with ReturnCode 1.</li>
+ * <li>Kill topology, and poll nimbus at short interval from kill wait time until topology name is removed.</li>
+ * <li>Submit topology with uploaded jar immediately. If submit failed, exit with ReturnCode 2.</li>
+ * </ol>
+ * Elapsed time of each step and downtime(from deactivate to submit) are logged.
+ *
+ * @author kimura
+ */
+public class TopologyRestartTool
+{
+    /** Default config path */
+    private static final String DEFAULT_CONFIG_PATH        = "/opt/storm/conf/storm.yaml";
+
+    /** Default check interval */
+    private static final int    DEFAULT_INTERVAL           = 1;
+
+    /** Default drain wait timeout */
+    private static final int    DEFAULT_WAIT_TIMEOUT       = 30;
+
+    /** Default kill wait time */
+    private static final int    DEFAULT_KILL_WAIT          = 1;
+
+    /** Default topology removal wait timeout */
+    private static final int    DEFAULT_REMOVAL_TIMEOUT    = 30;
+
+    /** Default nimbus thrift port */
+    private static final int    DEFAULT_NIMBUS_THRIFT_PORT = 6627;
+
+    /** Poll interval(millisecond) while waiting topology removal */
+    private static final long   REMOVAL_POLL_INTERVAL      = 100L;
+
+    /** Return code Restart succeeded. */
+    private static final int    RETURN_SUCCESS             = 0;
+
+    /** Return code Restart failed, old topology is kept. */
+    private static final int    RETURN_FAILURE             = 1;
+
+    /** Return code Old topology is killed, but new topology submit failed. */
+    private static final int    RETURN_SUBMIT_FAILURE      = 2;
+
+    /** Logger */
+    private static final Logger logger                     = LoggerFactory.getLogger(TopologyRestartTool.class);
+
+    /**
+     * Constructor
+     */
+    private TopologyRestartTool()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * Program Entry Point<br>
+     * <br>
+     * Use following arguments.<br>
+     * <ul>
+     * <li>-c Storm config path(optional, default /opt/storm/conf/storm.yaml)</li>
+     * <li>-j Topology jar path(required)</li>
+     * <li>-m Topology main class(required)</li>
+     * <li>-n Topology name(optional, default simple name of main class)</li>
+     * <li>-i Topology statistics check interval while draining(optional, default 1sec)</li>
+     * <li>-w Drain wait timeout(optional, default 30sec)</li>
+     * <li>-kw Kill wait time(optional, default 1sec)</li>
+     * <li>-rw Topology removal wait timeout(optional, default 30sec)</li>
+     * <li>-sh Show help</li>
+     * </ul>
+     * Remaining arguments are passed to topology main class.
+     * 
+     * @param args Argments
+     */
+    public static void main(String... args)
+    {
+        int returnCode = execute(args);
+        if (returnCode != 0)
+        {
+            Runtime.getRuntime().exit(returnCode);
+        }
+    }
+
+    /**
+     * Execute restart tool in current process, and return ReturnCode instead of exit.
+     * 
+     * @param args Argments
+     * @return ReturnCode
+     */
+    public static int execute(String... args)
+    {
+        TopologyRestartTool restartTool = new TopologyRestartTool();
+        return restartTool.startRestartTool(args);
+    }
+
+    /**
+     * Start restart tool.<br>
+     * Check arguments and start tool.
+     * 
+     * @param args Argments
+     * @return ReturnCode
+     */
+    private int startRestartTool(String[] args)
+    {
+        Options cliOptions = createOptions();
+        CommandLineParser parser = new PosixParser();
+        CommandLine commandLine = null;
+        HelpFormatter help = new HelpFormatter();
+
+        try
+        {
+            commandLine = parser.parse(cliOptions, args);
+        }
+        catch (ParseException pex)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
+        if (commandLine.hasOption("sh"))
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
+        TopologyRestartSetting setting = new TopologyRestartSetting();
+        setting.setConfigPath(DEFAULT_CONFIG_PATH);
+        if (commandLine.hasOption("c") == true)
+        {
+            setting.setConfigPath(commandLine.getOptionValue("c"));
+        }
+
+        setting.setJarFile(new File(commandLine.getOptionValue("j")));
+        setting.setMainClass(commandLine.getOptionValue("m"));
+        setting.setTopologyName(StringUtils.substringAfterLast("." + setting.getMainClass(), "."));
+        if (commandLine.hasOption("n") == true)
+        {
+            setting.setTopologyName(commandLine.getOptionValue("n"));
+        }
+        setting.setTopologyArgs(commandLine.getArgs());
+
+        try
+        {
+            setting.setInterval(Integer.parseInt(commandLine.getOptionValue("i",
+                    String.valueOf(DEFAULT_INTERVAL))));
+            setting.setWaitTimeout(Integer.parseInt(commandLine.getOptionValue("w",
+                    String.valueOf(DEFAULT_WAIT_TIMEOUT))));
+            setting.setKillWait(Integer.parseInt(commandLine.getOptionValue("kw",
+                    String.valueOf(DEFAULT_KILL_WAIT))));
+            setting.setRemovalTimeout(Integer.parseInt(commandLine.getOptionValue("rw",
+                    String.valueOf(DEFAULT_REMOVAL_TIMEOUT))));
+        }
+        catch (NumberFormatException ex)
+        {
+            printHelp(help, cliOptions);
+            return RETURN_FAILURE;
+        }
+
+        Config config = null;
+        try
+        {
+            config = StormConfigGenerator.loadStormConfig(setting.getConfigPath());
+        }
+        catch (IOException ex)
+        {
+            String logFormat = "Config file load failed. Exit restart tool. : ConfigPath={0}";
+            logger.error(MessageFormat.format(logFormat, setting.getConfigPath()), ex);
+            return RETURN_FAILURE;
+        }
+
+        String nimbusHost = StormConfigUtil.getStringValue(config, Config.NIMBUS_HOST, "");
+        int nimbusPort = StormConfigUtil.getIntValue(config, Config.NIMBUS_THRIFT_PORT,
+                DEFAULT_NIMBUS_THRIFT_PORT);
+        NimbusClientPool pool = NimbusClientPool.getShared(nimbusHost, nimbusPort);
+        ClusterSummaryCache clusterCache = ClusterSummaryCache.getShared(config, pool);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder().setNameFormat(
+                "TopologyJarPrepare-%d").setDaemon(true).build());
+        try
+        {
+            return restartTopology(setting, pool, executor);
+        }
+        catch (NotAliveException ex)
+        {
+            String logFormat = "Topology not alived. Exit restart tool. : Topology={0}";
+            logger.error(MessageFormat.format(logFormat, setting.getTopologyName()), ex);
+            return RETURN_FAILURE;
+        }
+        catch (TException ex)
+        {
+            String logFormat = "Nimbus access failed. Exit restart tool. : NimbusHost={0}, NimbusPort={1}";
+            logger.error(MessageFormat.format(logFormat, nimbusHost, nimbusPort), ex);
+            return RETURN_FAILURE;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            logger.error("Topology restart interrupted. Exit restart tool.", ex);
+            return RETURN_FAILURE;
+        }
+        finally
+        {
+            executor.shutdownNow();
+            clusterCache.invalidate();
+        }
+    }
+
+    /**
+     * Restart topology.
+     * 
+     * @param setting restart setting
+     * @param pool nimbus client pool
+     * @param executor executor of jar upload and topology build
+     * @return ReturnCode
+     * @throws TException Nimbus access failed
+     * @throws NotAliveException Topology is killed by other while restarting
+     * @throws InterruptedException Interrupted while waiting
+     */
+    private int restartTopology(final TopologyRestartSetting setting, NimbusClientPool pool,
+            ExecutorService executor) throws TException, NotAliveException, InterruptedException
+    {
+        final String topologyName = setting.getTopologyName();
+        if (existsTopology(pool, topologyName) == false)
+        {
+            String logFormat = "Topology not alived. : Topology={0}";
+            logger.error(MessageFormat.format(logFormat, topologyName));
+            return RETURN_FAILURE;
+        }
+
+        // Upload new jar and build new topology while old topology is draining.
+        final TopologyJarSubmitter submitter = new TopologyJarSubmitter(pool);
+        long uploadStart = System.nanoTime();
+        Future<String> uploadFuture = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException, TException
+            {
+                submitter.validate(setting.getJarFile(), setting.getMainClass());
+                return submitter.upload(setting.getJarFile());
+            }
+        });
+        Future<TopologyDefinition> defineFuture = executor.submit(new Callable<TopologyDefinition>() {
+            @Override
+            public TopologyDefinition call() throws IOException, InterruptedException
+            {
+                return submitter.define(setting.getJarFile(), setting.getMainClass(),
+                        setting.getTopologyArgs());
+            }
+        });
+
+        long downtimeStart = System.nanoTime();
+        setActive(pool, topologyName, false);
+        logger.info(MessageFormat.format("Topology deactivated. Wait stop. : Topology={0}",
+                topologyName));
+
+        long drainStart = System.nanoTime();
+        int waitResult = TopologyExecutionWaitTool.execute("-c", setting.getConfigPath(), "-t",
+                topologyName, "-i", String.valueOf(setting.getInterval()), "-w",
+                String.valueOf(setting.getWaitTimeout()));
+        long drainMillis = elapsedMillis(drainStart);
+        if (waitResult != 0)
+        {
+            String logFormat = "Topology stop wait failed. Activate topology. : Topology={0}, WaitResult={1}";
+            logger.error(MessageFormat.format(logFormat, topologyName, waitResult));
+            uploadFuture.cancel(true);
+            defineFuture.cancel(true);
+            setActive(pool, topologyName, true);
+            return RETURN_FAILURE;
+        }
+
+        String uploadedLocation = null;
+        try
+        {
+            uploadedLocation = uploadFuture.get();
+        }
+        catch (ExecutionException ex)
+        {
+            String logFormat = "Topology jar upload failed. Activate topology. : Topology={0}, Jar={1}";
+            logger.error(MessageFormat.format(logFormat, topologyName,
+                    setting.getJarFile().getAbsolutePath()), ex.getCause());
+            setActive(pool, topologyName, true);
+            return RETURN_FAILURE;
+        }
+        long uploadMillis = elapsedMillis(uploadStart);
+
+        TopologyDefinition definition = null;
+        try
+        {
+            definition = defineFuture.get();
+        }
+        catch (ExecutionException ex)
+        {
+            String logFormat = "Topology build failed. Activate topology. : Topology={0}, MainClass={1}";
+            logger.error(MessageFormat.format(logFormat, topologyName, setting.getMainClass()),
+                    ex.getCause());
+            setActive(pool, topologyName, true);
+            return RETURN_FAILURE;
+        }
+
+        // Old topology must not be killed if main class built topology of other name.
+        if (topologyName.equals(definition.getName()) == false)
+        {
+            String logFormat = "Built topology name is different. Activate topology. : Topology={0}, BuiltTopology={1}, MainClass={2}";
+            logger.error(MessageFormat.format(logFormat, topologyName, definition.getName(),
+                    setting.getMainClass()));
+            setActive(pool, topologyName, true);
+            return RETURN_FAILURE;
+        }
+
+        long killStart = System.nanoTime();
+        killTopology(pool, topologyName, setting.getKillWait());
+        if (waitRemoval(pool, topologyName, setting) == false)
+        {
+            String logFormat = "Topology removal wait timeout. : Topology={0}, Timeout={1}sec";
+            logger.error(MessageFormat.format(logFormat, topologyName,
+                    setting.getRemovalTimeout()));
+            return RETURN_SUBMIT_FAILURE;
+        }
+        long killMillis = elapsedMillis(killStart);
+
+        long submitStart = System.nanoTime();
+        try
+        {
+            submitter.submit(uploadedLocation, definition);
+        }
+        catch (TException | InvalidTopologyException ex)
+        {
+            String logFormat = "Topology submit failed. : Topology={0}, MainClass={1}";
+            logger.error(MessageFormat.format(logFormat, topologyName, setting.getMainClass()),
+                    ex);
+            return RETURN_SUBMIT_FAILURE;
+        }
+        long submitMillis = elapsedMillis(submitStart);
+
+        String logFormat = "Topology restarted. : Topology={0}, Downtime={1}ms, Drain={2}ms, Upload={3}ms, KillAndRemoval={4}ms, Submit={5}ms";
+        logger.info(MessageFormat.format(logFormat, topologyName,
+                String.valueOf(elapsedMillis(downtimeStart)), String.valueOf(drainMillis),
+                String.valueOf(uploadMillis), String.valueOf(killMillis),
+                String.valueOf(submitMillis)));
+        return RETURN_SUCCESS;
+    }
+
+    /**
+     * Wait until topology name is removed from nimbus.<br>
+     * Nimbus removes topology after kill wait time, so polling starts at kill wait time and continues at short interval.
+     * 
+     * @param pool nimbus client pool
+     * @param topologyName topology name
+     * @param setting restart setting
+     * @return true if topology is removed, false if timeout
+     * @throws TException Nimbus access failed
+     * @throws InterruptedException Interrupted while waiting
+     */
+    private boolean waitRemoval(NimbusClientPool pool, String topologyName,
+            TopologyRestartSetting setting) throws TException, InterruptedException
+    {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(REMOVAL_POLL_INTERVAL,
+                REMOVAL_POLL_INTERVAL, REMOVAL_POLL_INTERVAL,
+                TimeUnit.SECONDS.toMillis(setting.getKillWait() + setting.getRemovalTimeout()));
+        TimeUnit.MILLISECONDS.sleep(Math.min(TimeUnit.SECONDS.toMillis(setting.getKillWait()),
+                scheduler.getRemainingMillis()));
+
+        while (existsTopology(pool, topologyName))
+        {
+            if (scheduler.isExpired())
+            {
+                return false;
+            }
+
+            scheduler.update(false);
+            scheduler.waitNextPoll();
+        }
+
+        return true;
+    }
+
+    /**
+     * Check topology exists. Cluster summary is always got from nimbus, because cached summary may be old.
+     * 
+     * @param pool nimbus client pool
+     * @param topologyName topology name
+     * @return true if topology exists
+     * @throws TException Nimbus access failed
+     */
+    private boolean existsTopology(NimbusClientPool pool, final String topologyName)
+            throws TException
+    {
+        return pool.executeReadOnly(new NimbusCall<Boolean, TException>() {
+            @Override
+            public Boolean call(Nimbus.Client client) throws TException
+            {
+                for (TopologySummary topology : client.getClusterInfo().get_topologies())
+                {
+                    if (topologyName.equals(topology.get_name()))
+                    {
+                        return Boolean.TRUE;
+                    }
+                }
+
+                return Boolean.FALSE;
+            }
+        }).booleanValue();
+    }
+
+    /**
+     * Activate or deactivate topology.
+     * 
+     * @param pool nimbus client pool
+     * @param topologyName topology name
+     * @param activate true if activate, false if deactivate
+     * @throws TException Nimbus access failed
+     * @throws NotAliveException Topology not alive
+     */
+    private void setActive(NimbusClientPool pool, final String topologyName,
+            final boolean activate) throws TException, NotAliveException
+    {
+        pool.execute(new NimbusCall<Void, NotAliveException>() {
+            @Override
+            public Void call(Nimbus.Client client) throws TException, NotAliveException
+            {
+                if (activate)
+                {
+                    client.activate(topologyName);
+                }
+                else
+                {
+                    client.deactivate(topologyName);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Kill topology.
+     * 
+     * @param pool nimbus client pool
+     * @param topologyName topology name
+     * @param killWait kill wait time(second)
+     * @throws TException Nimbus access failed
+     * @throws NotAliveException Topology not alive
+     */
+    private void killTopology(NimbusClientPool pool, final String topologyName,
+            final int killWait) throws TException, NotAliveException
+    {
+        pool.execute(new NimbusCall<Void, NotAliveException>() {
+            @Override
+            public Void call(Nimbus.Client client) throws TException, NotAliveException
+            {
+                KillOptions options = new KillOptions();
+                options.set_wait_secs(killWait);
+                client.killTopologyWithOpts(topologyName, options);
+                return null;
+            }
+        });
+
+        String logFormat = "Topology killed. Wait removal. : Topology={0}, KillWait={1}sec";
+        logger.info(MessageFormat.format(logFormat, topologyName, killWait));
+    }
+
+    /**
+     * Get elapsed time from start.
+     * 
+     * @param startNanos start time(System.nanoTime base)
+     * @return elapsed time(millisecond)
+     */
+    private long elapsedMillis(long startNanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Print help message.
+     * 
+     * @param help HelpFormatter
+     * @param cliOptions Options
+     */
+    private void printHelp(HelpFormatter help, Options cliOptions)
+    {
+        help.printHelp(TopologyRestartTool.class.getName() + " [Topology arguments]", cliOptions,
+                true);
+    }
+
+    /**
+     * Generate command line analyze option object.
+     * 
+     * @return command line analyze option object
+     */
+    public static Options createOptions()
+    {
+        Options cliOptions = new Options();
+
+        // Config path option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Storm config path");
+        OptionBuilder.withDescription("Storm config path");
+        OptionBuilder.isRequired(false);
+        Option configOption = OptionBuilder.create("c");
+
+        // Topology jar option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Topology jar path");
+        OptionBuilder.withDescription("Topology jar path");
+        OptionBuilder.isRequired(true);
+        Option jarOption = OptionBuilder.create("j");
+
+        // Topology main class option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Topology main class");
+        OptionBuilder.withDescription("Topology main class");
+        OptionBuilder.isRequired(true);
+        Option mainClassOption = OptionBuilder.create("m");
+
+        // Topology name option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Topology name");
+        OptionBuilder.withDescription("Topology name(default simple name of main class)");
+        OptionBuilder.isRequired(false);
+        Option nameOption = OptionBuilder.create("n");
+
+        // Check interval option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Check interval(Sec)");
+        OptionBuilder.withDescription("Check interval(Sec) while draining");
+        OptionBuilder.isRequired(false);
+        Option intervalOption = OptionBuilder.create("i");
+
+        // Drain wait timeout option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Drain wait timeout(Sec)");
+        OptionBuilder.withDescription("Drain wait timeout(Sec)");
+        OptionBuilder.isRequired(false);
+        Option waitOption = OptionBuilder.create("w");
+
+        // Kill wait option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Kill wait time(Sec)");
+        OptionBuilder.withDescription("Kill wait time(Sec) passed to nimbus");
+        OptionBuilder.isRequired(false);
+        Option killWaitOption = OptionBuilder.create("kw");
+
+        // Removal wait timeout option
+        OptionBuilder.hasArg(true);
+        OptionBuilder.withArgName("Removal wait timeout(Sec)");
+        OptionBuilder.withDescription("Topology removal wait timeout(Sec) after kill wait time");
+        OptionBuilder.isRequired(false);
+        Option removalOption = OptionBuilder.create("rw");
+
+        // Help option
+        OptionBuilder.withDescription("show help");
+        Option helpOption = OptionBuilder.create("sh");
+
+        cliOptions.addOption(configOption);
+        cliOptions.addOption(jarOption);
+        cliOptions.addOption(mainClassOption);
+        cliOptions.addOption(nameOption);
+        cliOptions.addOption(intervalOption);
+        cliOptions.addOption(waitOption);
+        cliOptions.addOption(killWaitOption);
+        cliOptions.addOption(removalOption);
+        cliOptions.addOption(helpOption);
+        return cliOptions;
+    }
+}
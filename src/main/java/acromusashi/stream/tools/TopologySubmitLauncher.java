@@ -0,0 +1,158 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.StormSubmitter;
+import backtype.storm.generated.Nimbus;
+import backtype.storm.generated.StormTopology;
+import backtype.storm.generated.SubmitOptions;
+
+/**
+ * Launcher of topology main class, which is executed in child JVM by {@link TopologyJarSubmitter}.<br>
+ * Launcher sets local nimbus of StormSubmitter, so topology submitted by main class is not sent to nimbus
+ * but written to definition file. Parent process submits the definition with jar uploaded beforehand.<br>
+ * Usage : TopologySubmitLauncher DefinitionFile MainClass [Args...]<br>
+ * ReturnCode 0 : main class finished(definition file is empty if main class did not submit topology), 1 : main class failed
+ *
+ * @author kimura
+ */
+public class TopologySubmitLauncher
+{
+    /** Logger */
+    private static final Logger logger             = LoggerFactory.getLogger(TopologySubmitLauncher.class);
+
+    /** Return code success */
+    private static final int    RETURN_SUCCESS     = 0;
+
+    /** Return code failure */
+    private static final int    RETURN_FAILURE     = 1;
+
+    /** Nimbus method name of submit */
+    private static final String SUBMIT_METHOD      = "submitTopology";
+
+    /** Nimbus method name of submit with options */
+    private static final String SUBMIT_OPTS_METHOD = "submitTopologyWithOpts";
+
+    /**
+     * Constructor
+     */
+    private TopologySubmitLauncher()
+    {}
+
+    /**
+     * Program entry point.<br>
+     * JVM is exited after main class finished, so threads left by main class do not keep child JVM alive.
+     *
+     * @param args DefinitionFile MainClass [Args...]
+     */
+    public static void main(String... args)
+    {
+        if (args.length < 2)
+        {
+            logger.error("Usage : TopologySubmitLauncher DefinitionFile MainClass [Args...]");
+            System.exit(RETURN_FAILURE);
+        }
+
+        File definitionFile = new File(args[0]);
+        String mainClass = args[1];
+        String[] mainArgs = Arrays.copyOfRange(args, 2, args.length);
+
+        StormSubmitter.setLocalNimbus(createCapturingNimbus(definitionFile));
+        try
+        {
+            Method mainMethod = Class.forName(mainClass).getMethod("main", String[].class);
+            mainMethod.invoke(null, (Object) mainArgs);
+        }
+        catch (InvocationTargetException ex)
+        {
+            String logFormat = "Topology main failed. : MainClass={0}";
+            logger.error(MessageFormat.format(logFormat, mainClass), ex.getCause());
+            System.exit(RETURN_FAILURE);
+        }
+        catch (ReflectiveOperationException ex)
+        {
+            String logFormat = "Topology main load failed. : MainClass={0}";
+            logger.error(MessageFormat.format(logFormat, mainClass), ex);
+            System.exit(RETURN_FAILURE);
+        }
+
+        System.exit(RETURN_SUCCESS);
+    }
+
+    /**
+     * Create nimbus which writes first submitted topology to definition file.
+     * Other nimbus operations are not supported.
+     *
+     * @param definitionFile Definition file
+     * @return Nimbus
+     */
+    private static Nimbus.Iface createCapturingNimbus(final File definitionFile)
+    {
+        InvocationHandler handler = new InvocationHandler() {
+            /** true if topology is written */
+            private boolean captured = false;
+
+            @Override
+            public synchronized Object invoke(Object proxy, Method method, Object[] args)
+                    throws Throwable
+            {
+                if (method.getDeclaringClass() == Object.class)
+                {
+                    return method.invoke(this, args);
+                }
+
+                String methodName = method.getName();
+                if (SUBMIT_METHOD.equals(methodName) == false
+                        && SUBMIT_OPTS_METHOD.equals(methodName) == false)
+                {
+                    String errFormat = "Nimbus operation is not supported while submitting. : Operation={0}";
+                    throw new UnsupportedOperationException(MessageFormat.format(errFormat,
+                            methodName));
+                }
+
+                if (this.captured)
+                {
+                    String logFormat = "Only first topology is submitted. Ignore topology. : Topology={0}";
+                    logger.warn(MessageFormat.format(logFormat, args[0]));
+                    return null;
+                }
+
+                // Arguments : name, uploadedJarLocation(null), jsonConf, topology[, options]
+                SubmitOptions options = null;
+                if (SUBMIT_OPTS_METHOD.equals(methodName))
+                {
+                    options = (SubmitOptions) args[4];
+                }
+
+                new TopologyDefinition((String) args[0], (String) args[2],
+                        (StormTopology) args[3], options).writeTo(definitionFile);
+                this.captured = true;
+                return null;
+            }
+        };
+
+        return (Nimbus.Iface) Proxy.newProxyInstance(Nimbus.Iface.class.getClassLoader(),
+                new Class<?>[] { Nimbus.Iface.class }, handler);
+    }
+}
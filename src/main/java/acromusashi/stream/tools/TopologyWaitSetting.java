@@ -0,0 +1,124 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+/**
+ * Setting of topology execution stop wait.
+ *
+ * @author kimura
+ */
+public class TopologyWaitSetting
+{
+    /** Minimum poll interval(millisecond) */
+    private long    minInterval;
+
+    /** Check interval(millisecond) */
+    private long    interval;
+
+    /** Wait timeout(millisecond) */
+    private long    waitTimeout;
+
+    /** Unchanged time(millisecond) to judge stopped. 0 means (check count - 1) intervals. */
+    private long    stableWindow;
+
+    /** Report drain progress(tuple rate and estimated drain time) each poll */
+    private boolean drainReport;
+
+    /**
+     * Constructor
+     */
+    public TopologyWaitSetting()
+    {
+        // Do nothing.
+    }
+
+    /**
+     * @return the minInterval
+     */
+    public long getMinInterval()
+    {
+        return this.minInterval;
+    }
+
+    /**
+     * @param minInterval the minInterval to set
+     */
+    public void setMinInterval(long minInterval)
+    {
+        this.minInterval = minInterval;
+    }
+
+    /**
+     * @return the interval
+     */
+    public long getInterval()
+    {
+        return this.interval;
+    }
+
+    /**
+     * @param interval the interval to set
+     */
+    public void setInterval(long interval)
+    {
+        this.interval = interval;
+    }
+
+    /**
+     * @return the waitTimeout
+     */
+    public long getWaitTimeout()
+    {
+        return this.waitTimeout;
+    }
+
+    /**
+     * @param waitTimeout the waitTimeout to set
+     */
+    public void setWaitTimeout(long waitTimeout)
+    {
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * @return the stableWindow
+     */
+    public long getStableWindow()
+    {
+        return this.stableWindow;
+    }
+
+    /**
+     * @param stableWindow the stableWindow to set
+     */
+    public void setStableWindow(long stableWindow)
+    {
+        this.stableWindow = stableWindow;
+    }
+
+    /**
+     * @return the drainReport
+     */
+    public boolean isDrainReport()
+    {
+        return this.drainReport;
+    }
+
+    /**
+     * @param drainReport the drainReport to set
+     */
+    public void setDrainReport(boolean drainReport)
+    {
+        this.drainReport = drainReport;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import acromusashi.stream.topology.state.TopologyExecutionStatus;
+
+/**
+ * Execution stop wait state of one topology.<br>
+ * Topology is judged as stopped when tuple counters are unchanged over stable window.<br>
+ * Window is judged by sampled time, so polling interval does not change the judgement.<br>
+ * Processed tuple rate and estimated drain time are calculated from deltas between last two samples.
+ *
+ * @author kimura
+ */
+public class TopologyWaitState
+{
+    /** Topology name */
+    private final String            topologyName;
+
+    /** Unchanged time(nanosecond) to judge stopped */
+    private final long              stableWindowNanos;
+
+    /** Last sample(null if not sampled yet) */
+    private TopologyExecutionSample lastSample;
+
+    /** Sampled time of first sample which has same counters as last sample */
+    private long                    unchangedSinceNanos;
+
+    /** Counters moved at last update */
+    private boolean                 moving;
+
+    /** Processed(acked or failed) tuple rate(tuple/sec) of all executors in last interval */
+    private double                  processedRate;
+
+    /** Completed tuple tree rate(tree/sec) of spouts in last interval */
+    private double                  completionRate;
+
+    /** Current status(null if not sampled yet) */
+    private TopologyExecutionStatus status;
+
+    /**
+     * Constructor
+     *
+     * @param topologyName Topology name
+     * @param stableWindow Unchanged time(millisecond) to judge stopped
+     */
+    public TopologyWaitState(String topologyName, long stableWindow)
+    {
+        this.topologyName = topologyName;
+        this.stableWindowNanos = TimeUnit.MILLISECONDS.toNanos(stableWindow);
+    }
+
+    /**
+     * Update state by new sample.
+     *
+     * @param sample New sample
+     * @return Updated status
+     */
+    public TopologyExecutionStatus update(TopologyExecutionSample sample)
+    {
+        if (sample.isAlive() == false)
+        {
+            this.status = TopologyExecutionStatus.NOT_ALIVED;
+            return this.status;
+        }
+
+        updateRates(sample);
+
+        if (this.lastSample != null && this.lastSample.hasSameCounters(sample))
+        {
+            this.moving = false;
+        }
+        else
+        {
+            this.moving = true;
+            this.unchangedSinceNanos = sample.getSampledNanos();
+        }
+
+        this.lastSample = sample;
+        if (this.moving == false
+                && sample.getSampledNanos() - this.unchangedSinceNanos >= this.stableWindowNanos)
+        {
+            this.status = TopologyExecutionStatus.STOP;
+        }
+        else
+        {
+            this.status = TopologyExecutionStatus.EXECUTING;
+        }
+
+        return this.status;
+    }
+
+    /**
+     * Update tuple rates by delta from last sample.
+     *
+     * @param sample New sample
+     */
+    private void updateRates(TopologyExecutionSample sample)
+    {
+        if (this.lastSample == null)
+        {
+            return;
+        }
+
+        long elapsedNanos = sample.getSampledNanos() - this.lastSample.getSampledNanos();
+        if (elapsedNanos <= 0)
+        {
+            return;
+        }
+
+        double elapsedSec = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        this.processedRate = Math.max(0L, sample.getProcessed() - this.lastSample.getProcessed())
+                / elapsedSec;
+        this.completionRate = Math.max(0L,
+                sample.getSpoutCompleted() - this.lastSample.getSpoutCompleted()) / elapsedSec;
+    }
+
+    /**
+     * Get estimated time to complete pending tuples at current completion rate.
+     *
+     * @return Estimated drain time(millisecond). 0 if no pending tuple, -1 if unknown(not completing now).
+     */
+    public long getEstimatedDrainMillis()
+    {
+        if (this.lastSample == null)
+        {
+            return -1L;
+        }
+
+        long pending = this.lastSample.getPendingTuples();
+        if (pending == 0)
+        {
+            return 0L;
+        }
+
+        if (this.completionRate <= 0)
+        {
+            return -1L;
+        }
+
+        return (long) (pending * 1000L / this.completionRate);
+    }
+
+    /**
+     * @return the processedRate
+     */
+    public double getProcessedRate()
+    {
+        return this.processedRate;
+    }
+
+    /**
+     * @return the topologyName
+     */
+    public String getTopologyName()
+    {
+        return this.topologyName;
+    }
+
+    /**
+     * @return the lastSample
+     */
+    public TopologyExecutionSample getLastSample()
+    {
+        return this.lastSample;
+    }
+
+    /**
+     * @return the moving
+     */
+    public boolean isMoving()
+    {
+        return this.moving;
+    }
+
+    /**
+     * @return the status
+     */
+    public TopologyExecutionStatus getStatus()
+    {
+        return this.status;
+    }
+}
@@ -0,0 +1,432 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.stream.config.StormConfigUtil;
+import backtype.storm.Config;
+import backtype.storm.utils.Utils;
+
+/**
+ * Inventory of supervisor hosts read from storm's zookeeper supervisors path.<br>
+ * <ul>
+ * <li>Supervisor hosts are got without nimbus, so config can be put while nimbus is down or busy.</li>
+ * <li>Supervisor list is kept in process, and refreshed incrementally by children watch of supervisors path.
+ * Only data of newly joined supervisors is read from zookeeper.</li>
+ * <li>If zookeeper session is expired, inventory reconnects and reloads all supervisors at next read.</li>
+ * </ul>
+ * Connect string is given to constructor, so inventory can be pointed to any zookeeper(ex. in-process test server).<br>
+ * If zookeeper auth is configured in storm config, auth info is added to each session, so supervisors path protected by ACL can be read.
+ *
+ * @author kimura
+ */
+public class ZookeeperSupervisorInventory implements Watcher
+{
+    /** Supervisors path under storm zookeeper root */
+    private static final String                                              SUPERVISORS_PATH        = "/supervisors";
+
+    /** Default storm zookeeper root */
+    private static final String                                              DEFAULT_ROOT            = "/storm";
+
+    /** Default zookeeper port */
+    private static final int                                                 DEFAULT_ZOOKEEPER_PORT  = 2181;
+
+    /** Default zookeeper session timeout(millisecond) */
+    private static final int                                                 DEFAULT_SESSION_TIMEOUT = 20000;
+
+    /** Default zookeeper connect timeout(millisecond) */
+    private static final int                                                 DEFAULT_CONNECT_TIMEOUT = 15000;
+
+    /** Shared inventories of each zookeeper address and root */
+    private static final ConcurrentMap<String, ZookeeperSupervisorInventory> SHARED_INVENTORIES      = new ConcurrentHashMap<>();
+
+    /** Logger */
+    private static final Logger                                              logger                  = LoggerFactory.getLogger(ZookeeperSupervisorInventory.class);
+
+    /** Zookeeper connect string */
+    private final String                                                     connectString;
+
+    /** Zookeeper supervisors path */
+    private final String                                                     supervisorsPath;
+
+    /** Zookeeper session timeout(millisecond) */
+    private final int                                                        sessionTimeout;
+
+    /** Zookeeper connect timeout(millisecond) */
+    private final int                                                        connectTimeout;
+
+    /** Zookeeper auth scheme(null if no auth) */
+    private final String                                                     authScheme;
+
+    /** Zookeeper auth payload(null if no auth) */
+    private final String                                                     authPayload;
+
+    /** Map of supervisor id and host(sorted by supervisor id) */
+    private final Map<String, String>                                        supervisorHosts         = new TreeMap<>();
+
+    /** Zookeeper client(null if not connected) */
+    private ZooKeeper                                                        zooKeeper;
+
+    /** true if zookeeper session is connected */
+    private boolean                                                          connected;
+
+    /** true if supervisor hosts are loaded and watched */
+    private boolean                                                          loaded;
+
+    /**
+     * Constructor
+     *
+     * @param connectString Zookeeper connect string(host:port,host:port,...)
+     * @param rootPath Storm zookeeper root
+     * @param sessionTimeout Zookeeper session timeout(millisecond)
+     * @param connectTimeout Zookeeper connect timeout(millisecond)
+     */
+    public ZookeeperSupervisorInventory(String connectString, String rootPath, int sessionTimeout,
+            int connectTimeout)
+    {
+        this(connectString, rootPath, sessionTimeout, connectTimeout, null, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connectString Zookeeper connect string(host:port,host:port,...)
+     * @param rootPath Storm zookeeper root
+     * @param sessionTimeout Zookeeper session timeout(millisecond)
+     * @param connectTimeout Zookeeper connect timeout(millisecond)
+     * @param authScheme Zookeeper auth scheme(null if no auth)
+     * @param authPayload Zookeeper auth payload(null if no auth)
+     */
+    public ZookeeperSupervisorInventory(String connectString, String rootPath, int sessionTimeout,
+            int connectTimeout, String authScheme, String authPayload)
+    {
+        this.connectString = connectString;
+        this.supervisorsPath = StringUtils.removeEnd(rootPath, "/") + SUPERVISORS_PATH;
+        this.sessionTimeout = sessionTimeout;
+        this.connectTimeout = connectTimeout;
+        this.authScheme = authScheme;
+        this.authPayload = authPayload;
+    }
+
+    /**
+     * Get inventory shared in this process for zookeeper servers and root in storm config. If not exist, create inventory.
+     *
+     * @param config Storm config
+     * @return Shared inventory
+     */
+    public static ZookeeperSupervisorInventory getShared(Map<?, ?> config)
+    {
+        int port = StormConfigUtil.getIntValue(config, Config.STORM_ZOOKEEPER_PORT,
+                DEFAULT_ZOOKEEPER_PORT);
+        List<String> servers = new ArrayList<>();
+        Object serverValue = config.get(Config.STORM_ZOOKEEPER_SERVERS);
+        if (serverValue instanceof List)
+        {
+            for (Object server : (List<?>) serverValue)
+            {
+                servers.add(server + ":" + port);
+            }
+        }
+        else
+        {
+            servers.add("localhost:" + port);
+        }
+
+        String connectString = StringUtils.join(servers, ',');
+        String rootPath = StormConfigUtil.getStringValue(config, Config.STORM_ZOOKEEPER_ROOT,
+                DEFAULT_ROOT);
+        String authScheme = StormConfigUtil.getStringValue(config,
+                Config.STORM_ZOOKEEPER_AUTH_SCHEME, null);
+        String authPayload = StormConfigUtil.getStringValue(config,
+                Config.STORM_ZOOKEEPER_AUTH_PAYLOAD, null);
+        // Sessions with different auth can read different nodes, so inventory is shared for same auth only.
+        String key = connectString + rootPath + "#" + authScheme + ":" + authPayload;
+        ZookeeperSupervisorInventory inventory = SHARED_INVENTORIES.get(key);
+        if (inventory != null)
+        {
+            return inventory;
+        }
+
+        int sessionTimeout = StormConfigUtil.getIntValue(config,
+                Config.STORM_ZOOKEEPER_SESSION_TIMEOUT, DEFAULT_SESSION_TIMEOUT);
+        int connectTimeout = StormConfigUtil.getIntValue(config,
+                Config.STORM_ZOOKEEPER_CONNECTION_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+        ZookeeperSupervisorInventory created = new ZookeeperSupervisorInventory(connectString,
+                rootPath, sessionTimeout, connectTimeout, authScheme, authPayload);
+        inventory = SHARED_INVENTORIES.putIfAbsent(key, created);
+        if (inventory == null)
+        {
+            inventory = created;
+        }
+
+        return inventory;
+    }
+
+    /**
+     * Get supervisor hosts.<br>
+     * If supervisors are not loaded yet, connect to zookeeper and load them. Otherwise return inventory refreshed by watch.
+     *
+     * @return Supervisor hosts(sorted by supervisor id, duplicated host is removed)
+     * @throws IOException Zookeeper access failed
+     */
+    public synchronized List<String> getSupervisorHosts() throws IOException
+    {
+        if (this.loaded == false)
+        {
+            connect();
+            try
+            {
+                // Supervisors may be changed while not watched, so reload all supervisors.
+                this.supervisorHosts.clear();
+                refresh();
+            }
+            catch (KeeperException ex)
+            {
+                String errFormat = "Supervisors get failed. : ConnectString={0}, Path={1}";
+                throw new IOException(MessageFormat.format(errFormat, this.connectString,
+                        this.supervisorsPath), ex);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Supervisors get interrupted.", ex);
+            }
+        }
+
+        return new ArrayList<>(new LinkedHashSet<>(this.supervisorHosts.values()));
+    }
+
+    /**
+     * Close zookeeper session and discard inventory.
+     */
+    public synchronized void close()
+    {
+        closeSession();
+        this.supervisorHosts.clear();
+    }
+
+    /**
+     * Receive zookeeper session state and children watch event.
+     *
+     * @param event Watched event
+     */
+    @Override
+    public synchronized void process(WatchedEvent event)
+    {
+        if (event.getType() == Event.EventType.None)
+        {
+            if (event.getState() == Event.KeeperState.SyncConnected)
+            {
+                this.connected = true;
+                notifyAll();
+            }
+            else if (event.getState() == Event.KeeperState.Disconnected)
+            {
+                // Zookeeper client reconnects automatically, and watch is kept while session is alive.
+                this.connected = false;
+            }
+            else if (event.getState() == Event.KeeperState.Expired)
+            {
+                logger.warn("Zookeeper session expired. Supervisors are reloaded at next read.");
+                closeSession();
+            }
+            return;
+        }
+
+        if (event.getType() == Event.EventType.NodeChildrenChanged
+                && this.supervisorsPath.equals(event.getPath()) && this.zooKeeper != null)
+        {
+            try
+            {
+                refresh();
+            }
+            catch (KeeperException ex)
+            {
+                this.loaded = false;
+                String logFormat = "Supervisors refresh failed. Reload at next read. : Path={0}";
+                logger.warn(MessageFormat.format(logFormat, this.supervisorsPath), ex);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                this.loaded = false;
+            }
+        }
+    }
+
+    /**
+     * Connect to zookeeper if not connected, and wait until session is established.
+     *
+     * @throws IOException Connect failed or timeout
+     */
+    private void connect() throws IOException
+    {
+        if (this.zooKeeper == null)
+        {
+            this.zooKeeper = new ZooKeeper(this.connectString, this.sessionTimeout, this);
+            if (StringUtils.isNotEmpty(this.authScheme) && this.authPayload != null)
+            {
+                this.zooKeeper.addAuthInfo(this.authScheme,
+                        this.authPayload.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.connectTimeout);
+        try
+        {
+            while (this.connected == false)
+            {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0)
+                {
+                    String errFormat = "Zookeeper connect timeout. : ConnectString={0}, Timeout={1}ms";
+                    throw new IOException(MessageFormat.format(errFormat, this.connectString,
+                            String.valueOf(this.connectTimeout)));
+                }
+
+                wait(remaining);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Zookeeper connect interrupted.", ex);
+        }
+    }
+
+    /**
+     * Get supervisor ids with children watch, and read hosts of only newly joined supervisors.
+     *
+     * @throws KeeperException Zookeeper access failed
+     * @throws InterruptedException Interrupted while accessing
+     */
+    private void refresh() throws KeeperException, InterruptedException
+    {
+        Set<String> supervisorIds = new HashSet<>(this.zooKeeper.getChildren(this.supervisorsPath,
+                this));
+
+        Iterator<String> idIterator = this.supervisorHosts.keySet().iterator();
+        while (idIterator.hasNext())
+        {
+            if (supervisorIds.contains(idIterator.next()) == false)
+            {
+                idIterator.remove();
+            }
+        }
+
+        for (String supervisorId : supervisorIds)
+        {
+            if (this.supervisorHosts.containsKey(supervisorId))
+            {
+                continue;
+            }
+
+            try
+            {
+                byte[] data = this.zooKeeper.getData(this.supervisorsPath + "/" + supervisorId,
+                        false, null);
+                String host = readHostname(data);
+                if (host != null)
+                {
+                    this.supervisorHosts.put(supervisorId, host);
+                }
+            }
+            catch (KeeperException.NoNodeException ex)
+            {
+                // Supervisor left after children are got. Removed by next children watch.
+                continue;
+            }
+        }
+
+        this.loaded = true;
+    }
+
+    /**
+     * Read hostname from serialized supervisor info.<br>
+     * Supervisor info is clojure record written by supervisor, so hostname is read by its public field.
+     *
+     * @param data Serialized supervisor info
+     * @return Hostname(null if data can not be read)
+     */
+    private String readHostname(byte[] data)
+    {
+        if (data == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            Object info = Utils.deserialize(data);
+            Object hostname = info.getClass().getField("hostname").get(info);
+            if (hostname != null)
+            {
+                return hostname.toString();
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            logger.warn("Supervisor info read failed. Supervisor is skipped.", ex);
+        }
+
+        return null;
+    }
+
+    /**
+     * Close zookeeper session, and mark inventory as not loaded.
+     */
+    private void closeSession()
+    {
+        this.connected = false;
+        this.loaded = false;
+        if (this.zooKeeper == null)
+        {
+            return;
+        }
+
+        try
+        {
+            this.zooKeeper.close();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            this.zooKeeper = null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link AdaptivePollScheduler}.
+ *
+ * @author kimura
+ */
+public class AdaptivePollSchedulerTest
+{
+    /** Timeout(millisecond) long enough not to expire in test */
+    private static final long LONG_TIMEOUT = 60000L;
+
+    /**
+     * Interval starts from minimum interval, doubles while moving up to maximum interval, and resets to base interval when unchanged.
+     */
+    @Test
+    public void testUpdate_BackoffAndReset()
+    {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(100, 200, 1000, LONG_TIMEOUT);
+        assertEquals(100L, scheduler.getCurrentInterval());
+
+        scheduler.update(true);
+        assertEquals(200L, scheduler.getCurrentInterval());
+        scheduler.update(true);
+        assertEquals(400L, scheduler.getCurrentInterval());
+        scheduler.update(true);
+        assertEquals(800L, scheduler.getCurrentInterval());
+        scheduler.update(true);
+        assertEquals(1000L, scheduler.getCurrentInterval());
+        scheduler.update(true);
+        assertEquals(1000L, scheduler.getCurrentInterval());
+
+        scheduler.update(false);
+        assertEquals(200L, scheduler.getCurrentInterval());
+    }
+
+    /**
+     * Zero intervals are raised to floor, so doubled interval grows and never stays zero.
+     */
+    @Test
+    public void testUpdate_ZeroInterval()
+    {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(0, 0, 100, LONG_TIMEOUT);
+        assertEquals(1L, scheduler.getCurrentInterval());
+
+        scheduler.update(true);
+        assertEquals(2L, scheduler.getCurrentInterval());
+        scheduler.update(true);
+        assertEquals(4L, scheduler.getCurrentInterval());
+
+        scheduler.update(false);
+        assertEquals(1L, scheduler.getCurrentInterval());
+    }
+
+    /**
+     * Scheduler with zero timeout is expired at once, and does not wait.
+     *
+     * @throws InterruptedException Interrupted while waiting
+     */
+    @Test
+    public void testIsExpired_ZeroTimeout() throws InterruptedException
+    {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1000, 1000, 1000, 0);
+
+        long start = System.nanoTime();
+        scheduler.waitNextPoll();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(scheduler.isExpired());
+        assertEquals(0L, scheduler.getRemainingMillis());
+        assertTrue(elapsed < 1000L);
+    }
+
+    /**
+     * Wait before next poll is cut at deadline, and scheduler is expired after it.
+     *
+     * @throws InterruptedException Interrupted while waiting
+     */
+    @Test
+    public void testWaitNextPoll_CutAtDeadline() throws InterruptedException
+    {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(5000, 5000, 5000, 100);
+        assertFalse(scheduler.isExpired());
+        assertTrue(scheduler.getRemainingMillis() <= 100L);
+
+        long start = System.nanoTime();
+        scheduler.waitNextPoll();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsed < 5000L);
+        // Sleep may wake up slightly before deadline on coarse clocks.
+        TimeUnit.MILLISECONDS.sleep(10);
+        assertTrue(scheduler.isExpired());
+    }
+}
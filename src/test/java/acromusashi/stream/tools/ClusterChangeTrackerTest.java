@@ -0,0 +1,223 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.json.simple.JSONValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import backtype.storm.generated.ClusterSummary;
+import backtype.storm.generated.SupervisorSummary;
+import backtype.storm.generated.TopologySummary;
+
+/**
+ * Test of {@link ClusterChangeTracker}.
+ *
+ * @author kimura
+ */
+public class ClusterChangeTrackerTest
+{
+    /** Event output */
+    private StringWriter         out;
+
+    /** Tracker under test */
+    private ClusterChangeTracker tracker;
+
+    /**
+     * Create tracker writing to string.
+     */
+    @Before
+    public void setUp()
+    {
+        this.out = new StringWriter();
+        this.tracker = new ClusterChangeTracker(this.out);
+    }
+
+    /**
+     * First poll writes added topologies and joined supervisors, and same summary writes nothing.
+     *
+     * @throws IOException Write failed
+     */
+    @Test
+    public void testUpdate_AddedAndUnchanged() throws IOException
+    {
+        this.tracker.update(createSummary(
+                Arrays.asList(createTopology("TopologyA-1", "TopologyA", "ACTIVE", 2)),
+                Arrays.asList(createSupervisor("sv-1", "host1"))));
+
+        List<Map<?, ?>> events = readEvents();
+        assertEquals(2, events.size());
+        assertEquals("topologyAdded", events.get(0).get("event"));
+        assertEquals("TopologyA", events.get(0).get("name"));
+        assertEquals("ACTIVE", events.get(0).get("status"));
+        assertEquals(2L, events.get(0).get("workers"));
+        assertEquals("supervisorJoined", events.get(1).get("event"));
+        assertEquals("host1", events.get(1).get("host"));
+
+        this.tracker.update(createSummary(
+                Arrays.asList(createTopology("TopologyA-1", "TopologyA", "ACTIVE", 2)),
+                Arrays.asList(createSupervisor("sv-1", "host1"))));
+
+        assertTrue(readEvents().isEmpty());
+    }
+
+    /**
+     * Changed topology writes current values and previous values of changed fields only.
+     *
+     * @throws IOException Write failed
+     */
+    @Test
+    public void testUpdate_Changed() throws IOException
+    {
+        this.tracker.update(createSummary(
+                Arrays.asList(createTopology("TopologyA-1", "TopologyA", "ACTIVE", 2)),
+                Collections.<SupervisorSummary> emptyList()));
+        readEvents();
+
+        this.tracker.update(createSummary(
+                Arrays.asList(createTopology("TopologyA-1", "TopologyA", "INACTIVE", 4)),
+                Collections.<SupervisorSummary> emptyList()));
+
+        List<Map<?, ?>> events = readEvents();
+        assertEquals(1, events.size());
+        Map<?, ?> event = events.get(0);
+        assertEquals("topologyChanged", event.get("event"));
+        assertEquals("INACTIVE", event.get("status"));
+        assertEquals("ACTIVE", event.get("prevStatus"));
+        assertEquals(4L, event.get("workers"));
+        assertEquals(2L, event.get("prevWorkers"));
+        assertFalse(event.containsKey("prevTasks"));
+        assertFalse(event.containsKey("prevExecutors"));
+    }
+
+    /**
+     * Topologies and supervisors missing from summary are written as removed and left.
+     *
+     * @throws IOException Write failed
+     */
+    @Test
+    public void testUpdate_RemovedAndLeft() throws IOException
+    {
+        this.tracker.update(createSummary(Arrays.asList(
+                createTopology("TopologyA-1", "TopologyA", "ACTIVE", 2),
+                createTopology("TopologyB-2", "TopologyB", "ACTIVE", 2)), Arrays.asList(
+                createSupervisor("sv-1", "host1"), createSupervisor("sv-2", "host2"))));
+        readEvents();
+
+        this.tracker.update(createSummary(
+                Arrays.asList(createTopology("TopologyB-2", "TopologyB", "ACTIVE", 2)),
+                Arrays.asList(createSupervisor("sv-2", "host2"))));
+
+        List<Map<?, ?>> events = readEvents();
+        assertEquals(2, events.size());
+        assertEquals("topologyRemoved", events.get(0).get("event"));
+        assertEquals("TopologyA-1", events.get(0).get("id"));
+        assertEquals("TopologyA", events.get(0).get("name"));
+        assertEquals("supervisorLeft", events.get(1).get("event"));
+        assertEquals("host1", events.get(1).get("host"));
+    }
+
+    /**
+     * Consecutive poll failures are written once, and next successful poll writes recovered.
+     *
+     * @throws IOException Write failed
+     */
+    @Test
+    public void testPollFailed_Recovered() throws IOException
+    {
+        this.tracker.pollFailed(new IOException("connection refused"));
+        this.tracker.pollFailed(new IOException("connection refused"));
+
+        List<Map<?, ?>> events = readEvents();
+        assertEquals(1, events.size());
+        assertEquals("pollFailed", events.get(0).get("event"));
+        assertTrue(((String) events.get(0).get("cause")).contains("connection refused"));
+
+        this.tracker.update(createSummary(Collections.<TopologySummary> emptyList(),
+                Collections.<SupervisorSummary> emptyList()));
+
+        events = readEvents();
+        assertEquals(1, events.size());
+        assertEquals("pollRecovered", events.get(0).get("event"));
+    }
+
+    /**
+     * Read events written after last read.
+     *
+     * @return Events
+     */
+    private List<Map<?, ?>> readEvents()
+    {
+        List<Map<?, ?>> events = new ArrayList<>();
+        for (String line : StringUtils.split(this.out.toString(), '\n'))
+        {
+            events.add((Map<?, ?>) JSONValue.parse(line));
+        }
+
+        this.out.getBuffer().setLength(0);
+        return events;
+    }
+
+    /**
+     * Create cluster summary.
+     *
+     * @param topologies Topology summaries
+     * @param supervisors Supervisor summaries
+     * @return Cluster summary
+     */
+    private static ClusterSummary createSummary(List<TopologySummary> topologies,
+            List<SupervisorSummary> supervisors)
+    {
+        return new ClusterSummary(supervisors, 0, topologies);
+    }
+
+    /**
+     * Create topology summary with 8 tasks and 8 executors.
+     *
+     * @param id Topology id
+     * @param name Topology name
+     * @param status Status
+     * @param workers Worker count
+     * @return Topology summary
+     */
+    private static TopologySummary createTopology(String id, String name, String status,
+            int workers)
+    {
+        return new TopologySummary(id, name, 8, 8, workers, 0, status);
+    }
+
+    /**
+     * Create supervisor summary with 4 slots.
+     *
+     * @param id Supervisor id
+     * @param host Supervisor host
+     * @return Supervisor summary
+     */
+    private static SupervisorSummary createSupervisor(String id, String host)
+    {
+        return new SupervisorSummary(host, 0, 4, 0, id);
+    }
+}
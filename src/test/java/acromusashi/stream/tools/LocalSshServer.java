@@ -0,0 +1,314 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.CommandFactory;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.PasswordAuthenticator;
+import org.apache.sshd.server.command.ScpCommandFactory;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+
+/**
+ * In-process ssh server which stands in for a supervisor host in tests.<br>
+ * Each server listens on its own loopback address(127.0.0.x) with the same port,
+ * so hosts of one cluster are distinguished by address like real supervisors.<br>
+ * All commands are recorded. Scp is handled by sshd, and other commands are executed by local bash.
+ * Relay commands("tar | ssh") are only recorded and answered with configured exit status,
+ * because ssh between stand-ins is not available.
+ *
+ * @author kimura
+ */
+public class LocalSshServer
+{
+    /** Ssh user account accepted by stand-ins */
+    public static final String      USER_ACCOUNT  = "storm";
+
+    /** Ssh user password accepted by stand-ins */
+    public static final String      USER_PASSWORD = "storm";
+
+    /** Host address */
+    private final String            host;
+
+    /** Sshd */
+    private final SshServer         sshd;
+
+    /** Received commands */
+    private final List<String>      commands      = new CopyOnWriteArrayList<>();
+
+    /** Exit status of relay command */
+    private volatile int            relayExitStatus;
+
+    /**
+     * Constructor
+     *
+     * @param host Host address(127.0.0.x)
+     * @param port Listen port
+     */
+    public LocalSshServer(String host, int port)
+    {
+        this.host = host;
+        this.sshd = SshServer.setUpDefaultServer();
+        this.sshd.setHost(host);
+        this.sshd.setPort(port);
+        this.sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(null, "RSA", 2048));
+        this.sshd.setPasswordAuthenticator(new PasswordAuthenticator() {
+            @Override
+            public boolean authenticate(String username, String password, ServerSession session)
+            {
+                return USER_ACCOUNT.equals(username) && USER_PASSWORD.equals(password);
+            }
+        });
+        final CommandFactory scpFactory = new ScpCommandFactory();
+        this.sshd.setCommandFactory(new CommandFactory() {
+            @Override
+            public Command createCommand(String command)
+            {
+                LocalSshServer.this.commands.add(command);
+                if (command.startsWith("scp "))
+                {
+                    return scpFactory.createCommand(command);
+                }
+
+                return new LocalCommand(command);
+            }
+        });
+    }
+
+    /**
+     * Start stand-ins on 127.0.0.2, 127.0.0.3, ... with one free port.
+     *
+     * @param count Server count
+     * @return Started servers
+     * @throws IOException Start failed
+     */
+    public static List<LocalSshServer> startServers(int count) throws IOException
+    {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1")))
+        {
+            port = socket.getLocalPort();
+        }
+
+        List<LocalSshServer> servers = new ArrayList<>();
+        for (int index = 0; index < count; index++)
+        {
+            LocalSshServer server = new LocalSshServer("127.0.0." + (index + 2), port);
+            server.start();
+            servers.add(server);
+        }
+
+        return servers;
+    }
+
+    /**
+     * Stop all stand-ins.
+     *
+     * @param servers Servers
+     */
+    public static void stopServers(List<LocalSshServer> servers)
+    {
+        for (LocalSshServer server : servers)
+        {
+            server.stop();
+        }
+    }
+
+    /**
+     * Start server.
+     *
+     * @throws IOException Start failed
+     */
+    public void start() throws IOException
+    {
+        this.sshd.start();
+    }
+
+    /**
+     * Stop server.
+     */
+    public void stop()
+    {
+        try
+        {
+            this.sshd.stop(true);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Count received commands which contain keyword.
+     *
+     * @param keyword Keyword
+     * @return Command count
+     */
+    public int countCommands(String keyword)
+    {
+        int count = 0;
+        for (String command : this.commands)
+        {
+            if (command.contains(keyword))
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the host
+     */
+    public String getHost()
+    {
+        return this.host;
+    }
+
+    /**
+     * @return the port
+     */
+    public int getPort()
+    {
+        return this.sshd.getPort();
+    }
+
+    /**
+     * @return the commands
+     */
+    public List<String> getCommands()
+    {
+        return this.commands;
+    }
+
+    /**
+     * @param relayExitStatus the relayExitStatus to set
+     */
+    public void setRelayExitStatus(int relayExitStatus)
+    {
+        this.relayExitStatus = relayExitStatus;
+    }
+
+    /**
+     * Command executed by local bash. Relay command is not executed.
+     */
+    private class LocalCommand implements Command, Runnable
+    {
+        /** Command line */
+        private final String command;
+
+        /** Stdout */
+        private OutputStream out;
+
+        /** Stderr */
+        private OutputStream err;
+
+        /** Exit callback */
+        private ExitCallback callback;
+
+        /**
+         * Constructor
+         *
+         * @param command Command line
+         */
+        LocalCommand(String command)
+        {
+            this.command = command;
+        }
+
+        @Override
+        public void setInputStream(InputStream in)
+        {
+            // Commands of tools do not read stdin.
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err)
+        {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback)
+        {
+            this.callback = callback;
+        }
+
+        @Override
+        public void start(Environment env)
+        {
+            Thread thread = new Thread(this, "LocalSshServer-" + LocalSshServer.this.host);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run()
+        {
+            if (this.command.contains("| ssh "))
+            {
+                this.callback.onExit(LocalSshServer.this.relayExitStatus);
+                return;
+            }
+
+            int exitStatus = 255;
+            try
+            {
+                Process process = new ProcessBuilder("bash", "-c", this.command).start();
+                process.getOutputStream().close();
+                IOUtils.copy(process.getInputStream(), this.out);
+                IOUtils.copy(process.getErrorStream(), this.err);
+                exitStatus = process.waitFor();
+                this.out.flush();
+                this.err.flush();
+            }
+            catch (IOException ex)
+            {
+                exitStatus = 255;
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            this.callback.onExit(exitStatus);
+        }
+
+        @Override
+        public void destroy()
+        {
+            // Do nothing.
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test of {@link RelayDistributor} with local ssh server stand-ins of supervisors.
+ *
+ * @author kimura
+ */
+public class RelayDistributorTest
+{
+    /** Stand-in host count */
+    private static final int     HOST_COUNT = 5;
+
+    /** Temporary folder */
+    @Rule
+    public TemporaryFolder       folder     = new TemporaryFolder();
+
+    /** Stand-ins of supervisors */
+    private List<LocalSshServer> servers;
+
+    /** Target hosts */
+    private List<String>         targetHosts;
+
+    /** Put setting */
+    private ConfigPutSetting     setting;
+
+    /** Put file entries */
+    private List<PutFileEntry>   entries;
+
+    /**
+     * Start stand-ins and create put file.
+     *
+     * @throws Exception Start failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.servers = LocalSshServer.startServers(HOST_COUNT);
+        this.targetHosts = new ArrayList<>();
+        for (LocalSshServer server : this.servers)
+        {
+            this.targetHosts.add(server.getHost());
+        }
+
+        this.setting = new ConfigPutSetting();
+        this.setting.setUserAccount(LocalSshServer.USER_ACCOUNT);
+        this.setting.setUserPassword(LocalSshServer.USER_PASSWORD);
+        this.setting.setSshPort(this.servers.get(0).getPort());
+        this.setting.setConnectTimeout(10000);
+        this.setting.setRelayFanout(2);
+
+        File srcFile = this.folder.newFile("storm.yaml");
+        FileUtils.writeStringToFile(srcFile, "nimbus.host: \"localhost\"\n", "UTF-8");
+        File dstFile = new File(this.folder.newFolder("conf"), "storm.yaml");
+        this.entries = Arrays.asList(new PutFileEntry(srcFile, dstFile.getAbsolutePath()));
+    }
+
+    /**
+     * Stop stand-ins.
+     */
+    @After
+    public void tearDown()
+    {
+        LocalSshServer.stopServers(this.servers);
+    }
+
+    /**
+     * First wave is put from this host, and following waves are relayed by fan-out from holder hosts.
+     */
+    @Test
+    public void testDistribute_RelayTree()
+    {
+        List<ConfigPutResult> results = distribute();
+
+        assertEquals(HOST_COUNT, results.size());
+        for (int index = 0; index < HOST_COUNT; index++)
+        {
+            assertEquals(this.targetHosts.get(index), results.get(index).getTargetHost());
+            assertTrue(results.get(index).isSuccess());
+        }
+
+        // Wave 0: 127.0.0.2, 127.0.0.3 by scp. Wave 1: 127.0.0.2 -> .4, .5, 127.0.0.3 -> .6
+        assertEquals(1, this.servers.get(0).countCommands("scp -t"));
+        assertEquals(1, this.servers.get(1).countCommands("scp -t"));
+        assertEquals(1, this.servers.get(0).countCommands("@127.0.0.4"));
+        assertEquals(1, this.servers.get(0).countCommands("@127.0.0.5"));
+        assertEquals(1, this.servers.get(1).countCommands("@127.0.0.6"));
+        for (LocalSshServer server : this.servers.subList(2, HOST_COUNT))
+        {
+            assertTrue(server.getCommands().isEmpty());
+        }
+    }
+
+    /**
+     * If relay failed, files are put to target host from this host directly.
+     */
+    @Test
+    public void testDistribute_RelayFailed()
+    {
+        this.servers.get(0).setRelayExitStatus(255);
+
+        List<ConfigPutResult> results = distribute();
+
+        for (ConfigPutResult result : results)
+        {
+            assertTrue(result.isSuccess());
+        }
+
+        assertEquals(1, this.servers.get(2).countCommands("scp -t"));
+        assertEquals(1, this.servers.get(3).countCommands("scp -t"));
+        assertTrue(this.servers.get(4).getCommands().isEmpty());
+    }
+
+    /**
+     * Relay pipeline is executed by bash, and host key is checked by default.
+     */
+    @Test
+    public void testCreateRelayCommand_Default()
+    {
+        RelayDistributor distributor = new RelayDistributor(this.setting, null);
+
+        String command = distributor.createRelayCommand("127.0.0.4", this.entries, 0);
+
+        assertThat(command, containsString("bash -c 'set -o pipefail; tar -cPf - "));
+        assertThat(command, not(containsString("pv ")));
+        assertThat(command, containsString("ssh -o BatchMode=yes -p "));
+        assertThat(command, not(containsString("StrictHostKeyChecking")));
+    }
+
+    /**
+     * Host key check is skipped only if setting is enabled.
+     */
+    @Test
+    public void testCreateRelayCommand_HostKeyCheckSkip()
+    {
+        this.setting.setRelayHostKeyCheckSkip(true);
+        RelayDistributor distributor = new RelayDistributor(this.setting, null);
+
+        String command = distributor.createRelayCommand("127.0.0.4", this.entries, 0);
+
+        assertThat(command, containsString("ssh -o BatchMode=yes -o StrictHostKeyChecking=no -p "));
+    }
+
+    /**
+     * Relay stream is limited by pv if bandwidth is limited.
+     */
+    @Test
+    public void testCreateRelayCommand_Bandwidth()
+    {
+        RelayDistributor distributor = new RelayDistributor(this.setting, null);
+
+        String command = distributor.createRelayCommand("127.0.0.4", this.entries, 1024);
+
+        assertThat(command, containsString(" | pv -q -L 1024 | ssh -o BatchMode=yes"));
+    }
+
+    /**
+     * Host bandwidth limits each relay stream, and global bandwidth is divided by relay streams.
+     */
+    @Test
+    public void testDecideRelayBandwidth()
+    {
+        RelayDistributor distributor = new RelayDistributor(this.setting, null);
+        assertEquals(0L, distributor.decideRelayBandwidth(4));
+
+        this.setting.setHostBandwidth(1000L);
+        assertEquals(1000L, distributor.decideRelayBandwidth(4));
+
+        this.setting.setGlobalBandwidth(2000L);
+        assertEquals(500L, distributor.decideRelayBandwidth(4));
+        assertEquals(1000L, distributor.decideRelayBandwidth(1));
+    }
+
+    /**
+     * Distribute entries to all stand-ins.
+     *
+     * @return Put results
+     */
+    private List<ConfigPutResult> distribute()
+    {
+        RemoteFilePutter putter = new RemoteFilePutter(this.setting, null,
+                new HostAddressResolver(60000L, 10000L));
+        try
+        {
+            return new RelayDistributor(this.setting, putter).distribute(this.targetHosts,
+                    this.entries);
+        }
+        finally
+        {
+            putter.close();
+        }
+    }
+}
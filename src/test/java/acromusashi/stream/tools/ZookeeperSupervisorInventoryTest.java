@@ -0,0 +1,305 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.stream.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.server.NIOServerCnxn;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerCnxn;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import backtype.storm.Config;
+import backtype.storm.utils.Utils;
+
+/**
+ * Test of {@link ZookeeperSupervisorInventory} with in-process zookeeper server.
+ *
+ * @author kimura
+ */
+public class ZookeeperSupervisorInventoryTest
+{
+    /** Storm zookeeper root */
+    private static final String          ROOT_PATH        = "/storm";
+
+    /** Supervisors path */
+    private static final String          SUPERVISORS_PATH = ROOT_PATH + "/supervisors";
+
+    /** Zookeeper timeout(millisecond) */
+    private static final int             TIMEOUT          = 10000;
+
+    /** Temporary folder */
+    @Rule
+    public TemporaryFolder               folder           = new TemporaryFolder();
+
+    /** Zookeeper server */
+    private ZooKeeperServer              server;
+
+    /** Zookeeper server connection factory */
+    private NIOServerCnxnFactory         factory;
+
+    /** Client to create and remove supervisor nodes */
+    private ZooKeeper                    adminClient;
+
+    /** Inventory under test */
+    private ZookeeperSupervisorInventory inventory;
+
+    /**
+     * Start in-process zookeeper server and admin client.
+     *
+     * @throws Exception Start failed
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.server = new ZooKeeperServer(this.folder.newFolder("snap"),
+                this.folder.newFolder("log"), 500);
+        this.factory = new NIOServerCnxnFactory();
+        this.factory.configure(new InetSocketAddress("127.0.0.1", 0), 100);
+        this.factory.startup(this.server);
+        this.adminClient = connect();
+    }
+
+    /**
+     * Stop inventory, admin client and zookeeper server.
+     *
+     * @throws Exception Stop failed
+     */
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.inventory != null)
+        {
+            this.inventory.close();
+        }
+
+        this.adminClient.close();
+        this.factory.shutdown();
+        this.server.shutdown();
+    }
+
+    /**
+     * Joined and left supervisors are reflected by children watch, and only new supervisors are read.
+     *
+     * @throws Exception Test failed
+     */
+    @Test
+    public void testGetSupervisorHosts_IncrementalRefresh() throws Exception
+    {
+        createSupervisorsPath(Ids.OPEN_ACL_UNSAFE);
+        createSupervisor("sv1", "host1");
+        createSupervisor("sv2", "host2");
+        this.inventory = new ZookeeperSupervisorInventory(getConnectString(), ROOT_PATH,
+                TIMEOUT, TIMEOUT);
+
+        assertEquals(Arrays.asList("host1", "host2"), this.inventory.getSupervisorHosts());
+
+        // Data of known supervisor is not read again by incremental refresh.
+        this.adminClient.setData(SUPERVISORS_PATH + "/sv2", serialize("host2-changed"), -1);
+        createSupervisor("sv3", "host3");
+        this.adminClient.delete(SUPERVISORS_PATH + "/sv1", -1);
+
+        assertEquals(Arrays.asList("host2", "host3"), waitHosts(Arrays.asList("host2", "host3")));
+    }
+
+    /**
+     * After zookeeper session expired, inventory reconnects and reloads all supervisors.
+     *
+     * @throws Exception Test failed
+     */
+    @Test
+    public void testGetSupervisorHosts_ReloadAfterExpired() throws Exception
+    {
+        createSupervisorsPath(Ids.OPEN_ACL_UNSAFE);
+        createSupervisor("sv1", "host1");
+        this.inventory = new ZookeeperSupervisorInventory(getConnectString(), ROOT_PATH,
+                TIMEOUT, TIMEOUT);
+        assertEquals(Arrays.asList("host1"), this.inventory.getSupervisorHosts());
+
+        this.adminClient.setData(SUPERVISORS_PATH + "/sv1", serialize("host1-changed"), -1);
+        expireInventorySessions();
+
+        assertEquals(Arrays.asList("host1-changed"), waitHosts(Arrays.asList("host1-changed")));
+    }
+
+    /**
+     * Shared inventory adds auth info in storm config, so supervisors path protected by ACL can be read.
+     *
+     * @throws Exception Test failed
+     */
+    @Test
+    public void testGetShared_Auth() throws Exception
+    {
+        this.adminClient.addAuthInfo("digest", "storm:secret".getBytes(StandardCharsets.UTF_8));
+        createSupervisorsPath(Ids.CREATOR_ALL_ACL);
+        createSupervisor("sv1", "host1");
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(Config.STORM_ZOOKEEPER_SERVERS, Arrays.asList("127.0.0.1"));
+        config.put(Config.STORM_ZOOKEEPER_PORT, this.factory.getLocalPort());
+        config.put(Config.STORM_ZOOKEEPER_ROOT, ROOT_PATH);
+        config.put(Config.STORM_ZOOKEEPER_AUTH_SCHEME, "digest");
+        config.put(Config.STORM_ZOOKEEPER_AUTH_PAYLOAD, "storm:secret");
+        this.inventory = ZookeeperSupervisorInventory.getShared(config);
+
+        assertEquals(Arrays.asList("host1"), this.inventory.getSupervisorHosts());
+    }
+
+    /**
+     * Connect admin client and wait until session is established.
+     *
+     * @return Connected client
+     * @throws Exception Connect failed
+     */
+    private ZooKeeper connect() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        ZooKeeper client = new ZooKeeper(getConnectString(), TIMEOUT, new Watcher() {
+            @Override
+            public void process(WatchedEvent event)
+            {
+                if (event.getState() == Event.KeeperState.SyncConnected)
+                {
+                    latch.countDown();
+                }
+            }
+        });
+
+        assertTrue(latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        return client;
+    }
+
+    /**
+     * Create storm root and supervisors path.
+     *
+     * @param acl ACL of supervisors path
+     * @throws Exception Create failed
+     */
+    private void createSupervisorsPath(List<ACL> acl) throws Exception
+    {
+        this.adminClient.create(ROOT_PATH, new byte[0], Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT);
+        this.adminClient.create(SUPERVISORS_PATH, new byte[0], acl, CreateMode.PERSISTENT);
+    }
+
+    /**
+     * Create supervisor node like supervisor heartbeat.
+     *
+     * @param supervisorId Supervisor id
+     * @param hostname Supervisor host
+     * @throws Exception Create failed
+     */
+    private void createSupervisor(String supervisorId, String hostname) throws Exception
+    {
+        this.adminClient.create(SUPERVISORS_PATH + "/" + supervisorId, serialize(hostname),
+                Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+    }
+
+    /**
+     * Expire all sessions except admin client from server side.
+     */
+    private void expireInventorySessions()
+    {
+        for (ServerCnxn cnxn : this.factory.getConnections())
+        {
+            long sessionId = ((NIOServerCnxn) cnxn).getSessionId();
+            if (sessionId != this.adminClient.getSessionId())
+            {
+                this.server.closeSession(sessionId);
+            }
+        }
+    }
+
+    /**
+     * Wait until inventory returns expected hosts.
+     *
+     * @param expected Expected hosts
+     * @return Last hosts got from inventory
+     * @throws Exception Get failed
+     */
+    private List<String> waitHosts(List<String> expected) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        List<String> hosts = this.inventory.getSupervisorHosts();
+        while (expected.equals(hosts) == false && System.currentTimeMillis() < deadline)
+        {
+            TimeUnit.MILLISECONDS.sleep(50);
+            hosts = this.inventory.getSupervisorHosts();
+        }
+
+        return hosts;
+    }
+
+    /**
+     * @return Connect string of in-process server
+     */
+    private String getConnectString()
+    {
+        return "127.0.0.1:" + this.factory.getLocalPort();
+    }
+
+    /**
+     * Serialize supervisor info stand-in.
+     *
+     * @param hostname Supervisor host
+     * @return Serialized data
+     */
+    private static byte[] serialize(String hostname)
+    {
+        return Utils.serialize(new SupervisorInfo(hostname));
+    }
+
+    /**
+     * Stand-in of supervisor info record, which has public hostname field.
+     */
+    public static class SupervisorInfo implements Serializable
+    {
+        /** serialVersionUID */
+        private static final long serialVersionUID = -2617437081328458563L;
+
+        /** Supervisor host */
+        public final String       hostname;
+
+        /**
+         * Constructor
+         *
+         * @param hostname Supervisor host
+         */
+        public SupervisorInfo(String hostname)
+        {
+            this.hostname = hostname;
+        }
+    }
+}